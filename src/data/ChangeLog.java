@@ -0,0 +1,259 @@
+package data;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * The ChangeLog class reads the changeLog table, where triggers record
+ * every insert, update and delete on the students, enrollment and
+ * incompatibleStudents tables. Each entry has a sequence number that only
+ * ever increases, so a consumer remembers the last number it handled and
+ * asks for the changes after it, then updates only the classrooms those
+ * changes touch instead of reloading everything.
+ * 
+ * Entries are written by the same transaction as the change, so a rolled
+ * back change leaves no entry. SQLite allows one writer at a time, so
+ * entries become visible in sequence order and a reader never skips one.
+ *
+ * @author Joseph Stewart
+ */
+public class ChangeLog {
+
+	/** Connection object provides a connection to the database. */
+	private Connection connection;
+
+	/**
+	 * The Change class is one entry of the change log. Ids that do not
+	 * apply to the changed table are zero.
+	 */
+	public static class Change {
+
+		/** The entry's sequence number. */
+		private final long sequence;
+
+		/** The table that changed. */
+		private final String table;
+
+		/** INSERT, UPDATE or DELETE. */
+		private final String operation;
+
+		/** The classroom of an enrollment row, or zero. */
+		private final int classroomId;
+
+		/** The student, or the first student of an incompatible pair. */
+		private final int studentId;
+
+		/** The second student of an incompatible pair, or zero. */
+		private final int otherStudentId;
+
+		/** When the change was made. */
+		private final String changedAt;
+
+		/**
+		 * Constructor which sets every field.
+		 *
+		 * @param sequence The entry's sequence number.
+		 * @param table The table that changed.
+		 * @param operation INSERT, UPDATE or DELETE.
+		 * @param classroomId The classroom of an enrollment row, or zero.
+		 * @param studentId The student, or the first student of an incompatible pair.
+		 * @param otherStudentId The second student of an incompatible pair, or zero.
+		 * @param changedAt When the change was made.
+		 */
+		Change(long sequence, String table, String operation, int classroomId, int studentId,
+				int otherStudentId, String changedAt) {
+			this.sequence = sequence;
+			this.table = table;
+			this.operation = operation;
+			this.classroomId = classroomId;
+			this.studentId = studentId;
+			this.otherStudentId = otherStudentId;
+			this.changedAt = changedAt;
+		}
+
+		/**
+		 * Returns the entry's sequence number.
+		 *
+		 * @return The sequence number.
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Returns the table that changed.
+		 *
+		 * @return The table name.
+		 */
+		public String getTable() {
+			return table;
+		}
+
+		/**
+		 * Returns what kind of change was made.
+		 *
+		 * @return INSERT, UPDATE or DELETE.
+		 */
+		public String getOperation() {
+			return operation;
+		}
+
+		/**
+		 * Returns the classroom of a changed enrollment row.
+		 *
+		 * @return The classroom id, or zero.
+		 */
+		public int getClassroomId() {
+			return classroomId;
+		}
+
+		/**
+		 * Returns the changed student, or the first student of a changed
+		 * incompatible pair.
+		 *
+		 * @return The student id.
+		 */
+		public int getStudentId() {
+			return studentId;
+		}
+
+		/**
+		 * Returns the second student of a changed incompatible pair.
+		 *
+		 * @return The student id, or zero.
+		 */
+		public int getOtherStudentId() {
+			return otherStudentId;
+		}
+
+		/**
+		 * Returns when the change was made.
+		 *
+		 * @return The date and time of the change.
+		 */
+		public String getChangedAt() {
+			return changedAt;
+		}
+	}
+
+	/** Default constructor which uses the shared database connection. */
+	public ChangeLog() {
+		this(Database.getInstance().getConnection());
+	}
+
+	/**
+	 * Constructor which sets the connection to read through.
+	 *
+	 * @param connection The database connection.
+	 */
+	public ChangeLog(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Returns the changes made after a sequence number, oldest first.
+	 *
+	 * @param sequence The last sequence number already handled, or zero for all.
+	 * @param limit The maximum number of changes returned.
+	 * @return The changes.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public List<Change> readSince(long sequence, int limit) throws SQLException {
+		String query = "SELECT " + Database.CHANGE_SEQUENCE + ", " + Database.CHANGED_TABLE + ", " +
+				Database.OPERATION + ", " + Database.CLASSROOM_ID + ", " + Database.STUDENT_ID + ", " +
+				Database.OTHER_STUDENT_ID + ", " + Database.CHANGED_AT +
+				" FROM " + Database.CHANGE_LOG_TABLE +
+				" WHERE " + Database.CHANGE_SEQUENCE + " > ?" +
+				" ORDER BY " + Database.CHANGE_SEQUENCE + " LIMIT ?;";
+
+		List<Change> changes = new ArrayList<>();
+		try(PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setLong(1, sequence);
+			statement.setInt(2, limit);
+			try(ResultSet results = statement.executeQuery()) {
+				while(results.next())
+					changes.add(new Change(results.getLong(1), results.getString(2), results.getString(3),
+							results.getInt(4), results.getInt(5), results.getInt(6), results.getString(7)));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Returns the sequence number of the latest change, so a new consumer
+	 * can start from the current state instead of the whole log.
+	 *
+	 * @return The latest sequence number, or zero if nothing was logged.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public long getLatestSequence() throws SQLException {
+		String query = "SELECT MAX(" + Database.CHANGE_SEQUENCE + ") FROM " + Database.CHANGE_LOG_TABLE + ";";
+
+		try(Statement statement = connection.createStatement();
+				ResultSet results = statement.executeQuery(query)) {
+			return results.next() ? results.getLong(1) : 0;
+		}
+	}
+
+	/**
+	 * Returns the classrooms whose rosters are affected by a list of
+	 * changes: the classroom of every changed enrollment row, and every
+	 * classroom a changed student is still enrolled in. A deleted student's
+	 * classrooms are found through the enrollment rows deleted with them.
+	 *
+	 * @param changes The changes.
+	 * @return The ids of the affected classrooms in ascending order.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public SortedSet<Integer> getAffectedClassrooms(Collection<Change> changes) throws SQLException {
+		SortedSet<Integer> classroomIds = new TreeSet<>();
+		Set<Integer> studentIds = new TreeSet<>();
+
+		for(Change c: changes) {
+			if(c.getClassroomId() != 0)
+				classroomIds.add(c.getClassroomId());
+			if(c.getStudentId() != 0)
+				studentIds.add(c.getStudentId());
+			if(c.getOtherStudentId() != 0)
+				studentIds.add(c.getOtherStudentId());
+		}
+
+		if(studentIds.isEmpty())
+			return classroomIds;
+
+		StringBuilder ids = new StringBuilder();
+		for(int id: studentIds) {
+			if(ids.length() > 0)
+				ids.append(", ");
+			ids.append(id);
+		}
+
+		String query = "SELECT DISTINCT " + Database.CLASSROOM_ID + " FROM " + Database.ENROLLMENT_TABLE +
+				" WHERE " + Database.STUDENT_ID + " IN (" + ids + ");";
+
+		try(Statement statement = connection.createStatement();
+				ResultSet results = statement.executeQuery(query)) {
+			while(results.next())
+				classroomIds.add(results.getInt(1));
+		}
+		return classroomIds;
+	}
+
+	/**
+	 * Deletes the changes every consumer has handled. Sequence numbers are
+	 * never reused, so the entries left keep their numbers.
+	 *
+	 * @param sequence The last sequence number deleted, no later than the
+	 * 				   last one handled by the consumer furthest behind.
+	 * @return The number of changes deleted.
+	 * @throws SQLException Thrown if there is a problem executing the statement.
+	 */
+	public int purgeThrough(long sequence) throws SQLException {
+		String delete = "DELETE FROM " + Database.CHANGE_LOG_TABLE + " WHERE " + Database.CHANGE_SEQUENCE + " <= ?;";
+
+		try(PreparedStatement statement = connection.prepareStatement(delete)) {
+			statement.setLong(1, sequence);
+			return statement.executeUpdate();
+		}
+	}
+}
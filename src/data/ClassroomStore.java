@@ -0,0 +1,280 @@
+package data;
+
+import java.sql.*;
+import java.util.*;
+
+import model.*;
+
+/**
+ * The ClassroomStore class loads classrooms and their rosters from the
+ * database. A loaded classroom holds its enrolled students, and each
+ * student holds the enrolled students it is incompatible with.
+ *
+ * @author Joseph Stewart
+ */
+public class ClassroomStore {
+
+	/** Connection object provides a connection to the database. */
+	private Connection connection;
+
+	/** Default constructor which uses the shared database connection. */
+	public ClassroomStore() {
+		this(Database.getInstance().getConnection());
+	}
+
+	/**
+	 * Constructor which sets the connection to load through.
+	 *
+	 * @param connection The database connection.
+	 */
+	public ClassroomStore(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Provides access to the database connection.
+	 *
+	 * @return The database Connection.
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Loads a classroom with its roster and incompatible students. Its
+	 * saved groupings are paged in through its grouping history when asked for.
+	 *
+	 * @param classroomId The id of the classroom.
+	 * @return The classroom, or null if there is no classroom with that id.
+	 * @throws SQLException Thrown if there is a problem executing the queries.
+	 */
+	public Classroom loadClassroom(int classroomId) throws SQLException {
+		String classroomQuery = "SELECT " + Database.CLASSROOM_TITLE + ", " + Database.MAXIMUM_FRONT_GROUPS +
+				" FROM " + Database.CLASSROOM_TABLE + " WHERE " + Database.CLASSROOM_ID + " = ?;";
+
+		Classroom classroom = null;
+		try(PreparedStatement statement = connection.prepareStatement(classroomQuery)) {
+			statement.setInt(1, classroomId);
+			try(ResultSet results = statement.executeQuery()) {
+				if(results.next()) {
+					classroom = new Classroom(results.getString(1), results.getInt(2));
+					classroom.setId(classroomId);
+				}
+			}
+		}
+
+		if(classroom != null) {
+			classroom.setStudents(loadRoster(classroomId));
+			classroom.getHistory().setLoader(new GroupStore(connection).getLoader(classroom));
+		}
+
+		return classroom;
+	}
+
+	/**
+	 * Returns the ids of all classrooms.
+	 *
+	 * @return The classroom ids in ascending order.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public List<Integer> loadClassroomIds() throws SQLException {
+		String query = "SELECT " + Database.CLASSROOM_ID + " FROM " + Database.CLASSROOM_TABLE +
+				" ORDER BY " + Database.CLASSROOM_ID + ";";
+
+		List<Integer> ids = new ArrayList<>();
+		try(Statement statement = connection.createStatement();
+				ResultSet results = statement.executeQuery(query)) {
+			while(results.next())
+				ids.add(results.getInt(1));
+		}
+		return ids;
+	}
+
+	/**
+	 * Loads the students enrolled in a classroom and links the incompatible
+	 * pairs among them.
+	 *
+	 * @param classroomId The id of the classroom.
+	 * @return The enrolled students.
+	 * @throws SQLException Thrown if there is a problem executing the queries.
+	 */
+	public Collection<Student> loadRoster(int classroomId) throws SQLException {
+		String studentQuery = "SELECT s." + Database.STUDENT_ID + ", s." + Database.NAME + ", s." +
+				Database.GENDER + ", s." + Database.ABILITY_LEVEL + ", s." + Database.FRONT_SEAT_NEEDED +
+				", s." + Database.PREFERRED_GROUP_OF_FIVE +
+				" FROM " + Database.STUDENT_TABLE + " s JOIN " + Database.ENROLLMENT_TABLE + " e ON s." +
+				Database.STUDENT_ID + " = e." + Database.STUDENT_ID +
+				" WHERE e." + Database.CLASSROOM_ID + " = ? ORDER BY s." + Database.STUDENT_ID + ";";
+
+		String incompatibleQuery = "SELECT i." + Database.STUDENT_1_ID + ", i." + Database.STUDENT_2_ID +
+				" FROM " + Database.INCOMPATIBLE_STUDENT_TABLE + " i" +
+				" JOIN " + Database.ENROLLMENT_TABLE + " e1 ON i." + Database.STUDENT_1_ID + " = e1." + Database.STUDENT_ID +
+				" JOIN " + Database.ENROLLMENT_TABLE + " e2 ON i." + Database.STUDENT_2_ID + " = e2." + Database.STUDENT_ID +
+				" WHERE e1." + Database.CLASSROOM_ID + " = ? AND e2." + Database.CLASSROOM_ID + " = ?;";
+
+		Map<Integer, Student> roster = new LinkedHashMap<>();
+		try(PreparedStatement statement = connection.prepareStatement(studentQuery)) {
+			statement.setInt(1, classroomId);
+			try(ResultSet results = statement.executeQuery()) {
+				while(results.next()) {
+					Student s = readStudent(results);
+					roster.put(s.getId(), s);
+				}
+			}
+		}
+
+		try(PreparedStatement statement = connection.prepareStatement(incompatibleQuery)) {
+			statement.setInt(1, classroomId);
+			statement.setInt(2, classroomId);
+			try(ResultSet results = statement.executeQuery()) {
+				while(results.next()) {
+					Student s1 = roster.get(results.getInt(1));
+					Student s2 = roster.get(results.getInt(2));
+					if(s1 != null && s2 != null) {
+						s1.getStudents().add(s2);
+						s2.getStudents().add(s1);
+					}
+				}
+			}
+		}
+		return new ArrayList<>(roster.values());
+	}
+
+	/**
+	 * Saves a new classroom with its students, their enrollment, and the
+	 * incompatible pairs among them in one transaction. The generated ids
+	 * are set on the classroom and students.
+	 *
+	 * @param classroom The classroom to save.
+	 * @throws SQLException Thrown if the classroom could not be saved. Nothing
+	 * 						is written in that case.
+	 */
+	public void saveClassroom(Classroom classroom) throws SQLException {
+		saveClassrooms(Collections.singletonList(classroom), 1);
+	}
+
+	/**
+	 * Saves a stream of new classrooms, committing after every batch so a
+	 * large stream never has to be held in memory or in one transaction.
+	 * The generated ids are set on the classrooms and students.
+	 *
+	 * @param classrooms The classrooms to save.
+	 * @param batchSize The number of classrooms saved in each transaction.
+	 * @return The number of classrooms saved.
+	 * @throws SQLException Thrown if a batch could not be saved. Batches
+	 * 						committed before it are kept.
+	 */
+	public int saveClassrooms(Iterable<Classroom> classrooms, int batchSize) throws SQLException {
+		int saved = 0;
+		synchronized(connection) {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+
+			try {
+				for(Classroom c: classrooms) {
+					writeClassroom(c);
+					if(++saved % batchSize == 0)
+						connection.commit();
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+		return saved;
+	}
+
+	/**
+	 * Writes a classroom and its roster without any transaction handling.
+	 *
+	 * @param classroom The classroom to write.
+	 * @throws SQLException Thrown if there is a problem executing the statements.
+	 */
+	private void writeClassroom(Classroom classroom) throws SQLException {
+		String insertClassroom = "INSERT INTO " + Database.CLASSROOM_TABLE + " (" + Database.CLASSROOM_TITLE + ", " +
+				Database.MAXIMUM_FRONT_GROUPS + ") VALUES (?, ?);";
+
+		String insertStudent = "INSERT INTO " + Database.STUDENT_TABLE + " (" + Database.NAME + ", " +
+				Database.GENDER + ", " + Database.ABILITY_LEVEL + ", " + Database.FRONT_SEAT_NEEDED + ", " +
+				Database.PREFERRED_GROUP_OF_FIVE + ") VALUES (?, ?, ?, ?, ?);";
+
+		String insertEnrollment = "INSERT INTO " + Database.ENROLLMENT_TABLE + " (" + Database.CLASSROOM_ID + ", " +
+				Database.STUDENT_ID + ") VALUES (?, ?);";
+
+		String insertIncompatible = "INSERT OR IGNORE INTO " + Database.INCOMPATIBLE_STUDENT_TABLE + " (" +
+				Database.STUDENT_1_ID + ", " + Database.STUDENT_2_ID + ") VALUES (?, ?);";
+
+		try(PreparedStatement classroomStatement = connection.prepareStatement(insertClassroom, Statement.RETURN_GENERATED_KEYS);
+				PreparedStatement studentStatement = connection.prepareStatement(insertStudent, Statement.RETURN_GENERATED_KEYS);
+				PreparedStatement enrollmentStatement = connection.prepareStatement(insertEnrollment);
+				PreparedStatement incompatibleStatement = connection.prepareStatement(insertIncompatible)) {
+
+			classroomStatement.setString(1, classroom.getTitle());
+			classroomStatement.setInt(2, classroom.getMaximumFrontGroups());
+			classroomStatement.executeUpdate();
+			try(ResultSet keys = classroomStatement.getGeneratedKeys()) {
+				if(keys.next())
+					classroom.setId(keys.getInt(1));
+			}
+
+			for(Student s: classroom.getStudents()) {
+				studentStatement.setString(1, s.getName());
+				studentStatement.setString(2, s.getGender() == null ? null : s.getGender().name());
+				studentStatement.setString(3, s.getAbilityLevel() == null ? null : s.getAbilityLevel().name());
+				studentStatement.setInt(4, s.getFrontSeatNeeded() ? 1 : 0);
+				studentStatement.setInt(5, s.getPreferredGroupOfFive() ? 1 : 0);
+				studentStatement.executeUpdate();
+				try(ResultSet keys = studentStatement.getGeneratedKeys()) {
+					if(keys.next())
+						s.setId(keys.getInt(1));
+				}
+
+				enrollmentStatement.setInt(1, classroom.getId());
+				enrollmentStatement.setInt(2, s.getId());
+				enrollmentStatement.addBatch();
+			}
+			enrollmentStatement.executeBatch();
+
+			// Each pair is written once, smaller id first, once both ids are known
+			for(Student s: classroom.getStudents()) {
+				for(Student other: s.getStudents()) {
+					if(s.getId() < other.getId()) {
+						incompatibleStatement.setInt(1, s.getId());
+						incompatibleStatement.setInt(2, other.getId());
+						incompatibleStatement.addBatch();
+					}
+				}
+			}
+			incompatibleStatement.executeBatch();
+		}
+	}
+
+	/**
+	 * Reads a student from the current row of a student query. The columns
+	 * must be id, name, gender, ability level, front seat, and group of five.
+	 *
+	 * @param results The result set positioned on a student row.
+	 * @return The student.
+	 * @throws SQLException Thrown if a column cannot be read.
+	 */
+	static Student readStudent(ResultSet results) throws SQLException {
+		Student s = new Student();
+		s.setId(results.getInt(1));
+		s.setName(results.getString(2));
+
+		String gender = results.getString(3);
+		if(gender != null)
+			s.setGender(Gender.valueOf(gender.toUpperCase()));
+
+		String abilityLevel = results.getString(4);
+		if(abilityLevel != null)
+			s.setAbilityLevel(AbilityLevel.valueOf(abilityLevel.toUpperCase()));
+
+		s.setFrontSeatNeeded(results.getInt(5) == 1);
+		s.setPreferredGroupOfFive(results.getInt(6) == 1);
+		return s;
+	}
+}
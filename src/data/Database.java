@@ -1,7 +1,11 @@
 package data;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * The Database class creates the database and tables upon construction if
@@ -10,7 +14,30 @@ import java.util.*;
  * 
  * This class implements the singleton pattern so only one instance is ever
  * created. The class is marked final so it cannot be sub-classed. The getInstance
- * method is synchronized to make it thread-safe.
+ * method is synchronized to make it thread-safe. Other database files, such
+ * as the per-school shards of a ShardedDatabase, each get one instance of
+ * their own from getInstance(String).
+ * 
+ * In MEMORY storage mode the database file is restored into an in-memory
+ * database at startup, so batch jobs are not bound by file I/O. The memory
+ * copy is backed up to a temporary file next to the database file, which
+ * then replaces it in one rename, at every checkpoint and on shutdown. The
+ * database file therefore always holds a complete checkpoint, and a crash
+ * loses at most the writes made since the last one.
+ * 
+ * Transactions hold the connection's monitor from the first statement to
+ * the commit or rollback, and a checkpoint takes the same monitor, so a
+ * checkpoint never runs while a transaction is open. A single shutdown
+ * hook first runs the tasks registered with addShutdownTask, such as
+ * draining a GroupWriteQueue, and only then writes the final checkpoint.
+ * 
+ * Triggers record every change to the students, enrollment and
+ * incompatibleStudents tables in the changeLog table, which ChangeLog
+ * reads, so derived state can follow roster edits.
+ * 
+ * The connection handed out is instrumented: each instance keeps
+ * QueryMetrics with its statement latencies, rows read and written,
+ * transaction durations and busy retries, and logs slow statements.
  * 
  * @author Joseph Stewart
  */
@@ -19,9 +46,48 @@ public final class Database {
 	/** Provides an instance of this database. */
 	private static Database instance = null;
 	
+	/** The instances of other database files, keyed by path. */
+	private static Map<String, Database> fileInstances = new HashMap<>();
+	
 	/** Connection object provides a connection to the database. */
 	private Connection connection;		
 	
+	/** The file this database is kept in. */
+	private final String file;
+	
+	/** Where the working copy of this database is kept. */
+	private final StorageMode mode;
+	
+	/** The database file. */
+	public final static String DATABASE_FILE = "classroom.db";
+	
+	/** Default number of milliseconds between checkpoints in MEMORY mode. */
+	public final static long DEFAULT_CHECKPOINT_INTERVAL = 60000;
+	
+	/** Where the working copy of the database is kept. */
+	private static StorageMode storageMode = StorageMode.FILE;
+	
+	/** The number of milliseconds between checkpoints in MEMORY mode. */
+	private static long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+	
+	/** Runs the checkpoints in MEMORY mode, or null. */
+	private ScheduledExecutorService checkpointer;
+	
+	/** The longest time in milliseconds the final checkpoint waits for an open transaction. */
+	public final static long SHUTDOWN_CHECKPOINT_MILLIS = 5000;
+	
+	/** The milliseconds between the final checkpoint's attempts. */
+	private final static long SHUTDOWN_RETRY_MILLIS = 50;
+	
+	/** The tasks run at shutdown before the final checkpoint, in order. */
+	private static List<Runnable> shutdownTasks = new ArrayList<>();
+	
+	/** Runs the shutdown tasks and the final checkpoint, or null until needed. */
+	private static Thread shutdownHook = null;
+	
+	/** What the connection spends its time on. */
+	private final QueryMetrics metrics = new QueryMetrics();
+	
 	/** Classroom table and columns. */
 	public final static String CLASSROOM_TABLE = "classrooms";
 	public final static String CLASSROOM_ID = "classroomId";
@@ -43,6 +109,7 @@ public final class Database {
 	public final static String GROUP_NUMBER = "groupNumber";
 	public final static String DATE_CREATED = "dateCreated";
 	public final static String IS_FRONT_GROUP = "isFrontGroup";
+	public final static String GROUPING_ID = "groupingId";
 	
 	/** Enrollment table */	
 	public final static String ENROLLMENT_TABLE = "enrollment";
@@ -54,17 +121,48 @@ public final class Database {
 	
 	/** Group assignments table */
 	public final static String GROUP_ASSIGNMENT_TABLE = "groupAssignments";
+	
+	/** Pair history table and columns. Uses STUDENT_1_ID and STUDENT_2_ID with STUDENT_1_ID < STUDENT_2_ID. */
+	public final static String PAIR_HISTORY_TABLE = "pairHistory";
+	public final static String PAIR_COUNT = "pairCount";
+	public final static String LAST_GROUPED_AT = "lastGroupedAt";
+	
+	/** 
+	 * Change log table and columns, filled by triggers. Uses CLASSROOM_ID and 
+	 * STUDENT_ID; OTHER_STUDENT_ID is the second student of an incompatible pair.
+	 */
+	public final static String CHANGE_LOG_TABLE = "changeLog";
+	public final static String CHANGE_SEQUENCE = "seq";
+	public final static String CHANGED_TABLE = "changedTable";
+	public final static String OPERATION = "operation";
+	public final static String OTHER_STUDENT_ID = "otherStudentId";
+	public final static String CHANGED_AT = "changedAt";
 		
 	/**
 	 * Database Constructor creates database and tables if they don't
 	 * already exist and sets the Connection object. It is private to
 	 * prevent instantiation from outside of this class. 
+	 * 
+	 * @param file The database file.
+	 * @param mode Where the working copy is kept.
 	 */
-	private Database() {						
+	private Database(String file, StorageMode mode) {						
+		this.file = file;
+		this.mode = mode;
+		
 		try {
 			Class.forName("org.sqlite.JDBC");
-			connection = DriverManager.getConnection("jdbc:sqlite:classroom.db");			
+			
+			if(mode == StorageMode.MEMORY) {
+				connection = InstrumentedConnection.wrap(DriverManager.getConnection("jdbc:sqlite::memory:"), metrics);
+				restore();
+			} else {
+				connection = InstrumentedConnection.wrap(DriverManager.getConnection("jdbc:sqlite:" + file), metrics);
+			}
 			createDatabaseTables();
+			
+			if(mode == StorageMode.MEMORY)
+				startCheckpoints();
 		} catch (Exception e) {
 			e.printStackTrace();
 		} 		
@@ -79,13 +177,224 @@ public final class Database {
 	 */
 	public synchronized static Database getInstance() {
 		if(instance == null) {
-			instance = new Database();
+			instance = new Database(DATABASE_FILE, storageMode);
 		}
 		return instance;
 	}
 	
 	/**
-	 * Provides access to the database connection.
+	 * This method returns the single instance of another database file,
+	 * creating the file and its tables if needed. These instances always
+	 * work directly on their file.
+	 * 
+	 * @param file The path of the database file.
+	 * @return The Database instance for the file.
+	 */
+	public synchronized static Database getInstance(String file) {
+		String path = new File(file).getAbsolutePath();
+		if(instance != null && new File(instance.file).getAbsolutePath().equals(path))
+			return instance;
+		
+		Database database = fileInstances.get(path);
+		if(database == null) {
+			database = new Database(file, StorageMode.FILE);
+			fileInstances.put(path, database);
+		}
+		return database;
+	}
+	
+	/**
+	 * Returns the file this database is kept in.
+	 * 
+	 * @return The path of the database file.
+	 */
+	public String getFile() {
+		return file;
+	}
+	
+	/**
+	 * Selects where the working copy of the database is kept. Must be
+	 * called before the first call to getInstance.
+	 * 
+	 * @param mode The storage mode.
+	 * @param checkpointIntervalMillis The milliseconds between checkpoints
+	 * 								   in MEMORY mode, or zero for checkpoints
+	 * 								   only when checkpoint is called and on shutdown.
+	 * @throws IllegalStateException Thrown if the database is already open.
+	 */
+	public synchronized static void setStorageMode(StorageMode mode, long checkpointIntervalMillis) {
+		if(instance != null)
+			throw new IllegalStateException("The database is already open in " + storageMode + " mode.");
+		storageMode = mode;
+		checkpointInterval = checkpointIntervalMillis;
+	}
+	
+	/**
+	 * Returns where the working copy of the database is kept.
+	 * 
+	 * @return The storage mode.
+	 */
+	public synchronized static StorageMode getStorageMode() {
+		return storageMode;
+	}
+	
+	/**
+	 * Loads the database file into the in-memory database, if there is one.
+	 * 
+	 * @throws SQLException Thrown if the file cannot be restored.
+	 */
+	private void restore() throws SQLException {
+		if(!new File(file).exists())
+			return;
+		
+		try(Statement statement = connection.createStatement()) {
+			statement.executeUpdate("restore from " + toLiteral(file));
+		}
+	}
+	
+	/**
+	 * Starts the periodic checkpoints and registers the final one on shutdown.
+	 */
+	private void startCheckpoints() {
+		if(checkpointInterval > 0) {
+			checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "database-checkpoint");
+				thread.setDaemon(true);
+				return thread;
+			});
+			
+			checkpointer.scheduleWithFixedDelay(() -> {
+				try {
+					checkpoint();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+		}
+		
+		installShutdownHook();
+	}
+	
+	/**
+	 * Registers a task to run when the JVM shuts down, before the final
+	 * checkpoint, so writes it completes are included in that checkpoint.
+	 * 
+	 * @param task The task.
+	 */
+	public synchronized static void addShutdownTask(Runnable task) {
+		shutdownTasks.add(task);
+		installShutdownHook();
+	}
+	
+	/**
+	 * Removes a task registered with addShutdownTask. Does nothing if it
+	 * is not registered or the shutdown tasks are already running.
+	 * 
+	 * @param task The task.
+	 */
+	public synchronized static void removeShutdownTask(Runnable task) {
+		shutdownTasks.remove(task);
+	}
+	
+	/**
+	 * Registers the shutdown hook the first time it is needed.
+	 */
+	private synchronized static void installShutdownHook() {
+		if(shutdownHook == null) {
+			shutdownHook = new Thread(Database::shutdown, "database-shutdown");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		}
+	}
+	
+	/**
+	 * Runs the shutdown tasks in the order they were registered, then writes
+	 * the final checkpoint of the database if it is kept in memory.
+	 */
+	private static void shutdown() {
+		List<Runnable> tasks;
+		Database database;
+		synchronized(Database.class) {
+			tasks = new ArrayList<>(shutdownTasks);
+			shutdownTasks.clear();
+			database = instance;
+		}
+		
+		for(Runnable task: tasks) {
+			try {
+				task.run();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		
+		if(database != null && database.mode == StorageMode.MEMORY)
+			database.finalCheckpoint();
+	}
+	
+	/**
+	 * Stops the periodic checkpoints and writes a last one. Since a
+	 * checkpoint is skipped while a transaction is open, it is retried
+	 * until the transaction ends or SHUTDOWN_CHECKPOINT_MILLIS have passed.
+	 */
+	private void finalCheckpoint() {
+		if(checkpointer != null)
+			checkpointer.shutdownNow();
+		
+		long deadline = System.currentTimeMillis() + SHUTDOWN_CHECKPOINT_MILLIS;
+		try {
+			while(!checkpoint()) {
+				if(System.currentTimeMillis() >= deadline) {
+					System.err.println("The final checkpoint of " + file + " was skipped: a transaction is still open.");
+					return;
+				}
+				Thread.sleep(SHUTDOWN_RETRY_MILLIS);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Writes the in-memory database back to the database file with SQLite's
+	 * online backup. The backup goes to a temporary file first, which then
+	 * replaces the database file, so the file is never left half written.
+	 * Waits for a transaction held under the connection's monitor to end.
+	 * A checkpoint is skipped while a transaction opened without the monitor
+	 * is open, since the backup would include its uncommitted changes; the
+	 * next one catches up.
+	 * Does nothing in FILE mode.
+	 * 
+	 * @return True if a checkpoint was written, otherwise false.
+	 * @throws SQLException Thrown if the backup fails.
+	 * @throws IOException Thrown if the backup cannot replace the database file.
+	 */
+	public boolean checkpoint() throws SQLException, IOException {
+		if(mode != StorageMode.MEMORY)
+			return false;
+		
+		File temporary = new File(file + ".tmp");
+		synchronized(connection) {
+			if(!connection.getAutoCommit())
+				return false;
+			
+			try(Statement statement = connection.createStatement()) {
+				statement.executeUpdate("backup to " + toLiteral(temporary.getPath()));
+			}
+		}
+		
+		try {
+			Files.move(temporary.toPath(), Paths.get(file), 
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary.toPath(), Paths.get(file), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return true;
+	}
+	
+	/**
+	 * Provides access to the database connection. Code that opens a
+	 * transaction on it holds the connection's monitor until the
+	 * transaction ends, so checkpoints never see it half done.
 	 * 
 	 * @return The database Connection.
 	 */
@@ -93,6 +402,16 @@ public final class Database {
 		return connection;
 	}
 	
+	/**
+	 * Provides the metrics of the database connection, which also set
+	 * the slow-query threshold and log.
+	 * 
+	 * @return The connection's QueryMetrics.
+	 */
+	public QueryMetrics getMetrics() {
+		return metrics;
+	}
+	
 	/**
 	 * Declares statements to create the database tables if they do
 	 * not already exist.
@@ -119,7 +438,12 @@ public final class Database {
 					  CLASSROOM_ID + " INTEGER, " +
 					  GROUP_NUMBER + " INTEGER, " +
 					  IS_FRONT_GROUP + " INTEGER, " +
-					  DATE_CREATED + " TEXT);";
+					  DATE_CREATED + " TEXT, " +
+					  GROUPING_ID + " INTEGER);";
+		
+		// Created after groupingId is added to a table from before it existed
+		String createGroupingIndex = "CREATE INDEX IF NOT EXISTS groupsGrouping ON " + 
+					  GROUP_TABLE + " (" + CLASSROOM_ID + ", " + GROUPING_ID + ");";
 		
 		String createEnrollment = "CREATE TABLE IF NOT EXISTS " + ENROLLMENT_TABLE + " (" +
 						  CLASSROOM_ID + " INTEGER NOT NULL, " +
@@ -136,6 +460,31 @@ public final class Database {
 		 						STUDENT_ID + " INTEGER NOT NULL, " +
 		 						"PRIMARY KEY(" + GROUP_ID + ", " + STUDENT_ID + "));";
 		
+		String createPairHistory = "CREATE TABLE IF NOT EXISTS " + PAIR_HISTORY_TABLE + " (" +
+								STUDENT_1_ID + " INTEGER NOT NULL, " +
+								STUDENT_2_ID + " INTEGER NOT NULL, " +
+								PAIR_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+								LAST_GROUPED_AT + " TEXT, " +
+								"PRIMARY KEY(" + STUDENT_1_ID + ", " + STUDENT_2_ID + "));";
+		
+		// Lets pair lookups by the second student use an index as well
+		String createPairHistoryIndex = "CREATE INDEX IF NOT EXISTS pairHistoryStudent2 ON " + 
+								PAIR_HISTORY_TABLE + " (" + STUDENT_2_ID + ");";
+		
+		// Lets a pair's most recent shared group be found from one student's assignments
+		String createGroupAssignmentIndex = "CREATE INDEX IF NOT EXISTS groupAssignmentsStudent ON " + 
+								GROUP_ASSIGNMENT_TABLE + " (" + STUDENT_ID + ");";
+		
+		// AUTOINCREMENT never reuses a sequence number, even after the log is purged
+		String createChangeLog = "CREATE TABLE IF NOT EXISTS " + CHANGE_LOG_TABLE + " (" +
+								CHANGE_SEQUENCE + " INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT, " +
+								CHANGED_TABLE + " TEXT NOT NULL, " +
+								OPERATION + " TEXT NOT NULL, " +
+								CLASSROOM_ID + " INTEGER, " +
+								STUDENT_ID + " INTEGER, " +
+								OTHER_STUDENT_ID + " INTEGER, " +
+								CHANGED_AT + " TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP);";
+		
 		List<String> createStrings = new ArrayList<>();
 		createStrings.add(createClassrooms);
 		createStrings.add(createStudents);
@@ -143,9 +492,97 @@ public final class Database {
 		createStrings.add(createEnrollment);
 		createStrings.add(createIncompatibleStudents);
 		createStrings.add(createGroupAssignments);
+		createStrings.add(createPairHistory);
+		createStrings.add(createPairHistoryIndex);
+		createStrings.add(createGroupAssignmentIndex);
+		createStrings.add(createChangeLog);
+		
+		// An update that moves a row logs where it was and where it is now
+		createStrings.add(createChangeTrigger(STUDENT_TABLE, "INSERT", "NULL, NEW." + STUDENT_ID + ", NULL"));
+		createStrings.add(createChangeTrigger(STUDENT_TABLE, "UPDATE", "NULL, NEW." + STUDENT_ID + ", NULL"));
+		createStrings.add(createChangeTrigger(STUDENT_TABLE, "DELETE", "NULL, OLD." + STUDENT_ID + ", NULL"));
+		
+		createStrings.add(createChangeTrigger(ENROLLMENT_TABLE, "INSERT", 
+				"NEW." + CLASSROOM_ID + ", NEW." + STUDENT_ID + ", NULL"));
+		createStrings.add(createChangeTrigger(ENROLLMENT_TABLE, "UPDATE", 
+				"OLD." + CLASSROOM_ID + ", OLD." + STUDENT_ID + ", NULL",
+				"NEW." + CLASSROOM_ID + ", NEW." + STUDENT_ID + ", NULL"));
+		createStrings.add(createChangeTrigger(ENROLLMENT_TABLE, "DELETE", 
+				"OLD." + CLASSROOM_ID + ", OLD." + STUDENT_ID + ", NULL"));
+		
+		createStrings.add(createChangeTrigger(INCOMPATIBLE_STUDENT_TABLE, "INSERT", 
+				"NULL, NEW." + STUDENT_1_ID + ", NEW." + STUDENT_2_ID));
+		createStrings.add(createChangeTrigger(INCOMPATIBLE_STUDENT_TABLE, "UPDATE", 
+				"NULL, OLD." + STUDENT_1_ID + ", OLD." + STUDENT_2_ID,
+				"NULL, NEW." + STUDENT_1_ID + ", NEW." + STUDENT_2_ID));
+		createStrings.add(createChangeTrigger(INCOMPATIBLE_STUDENT_TABLE, "DELETE", 
+				"NULL, OLD." + STUDENT_1_ID + ", OLD." + STUDENT_2_ID));
 		
 		Statement statement = connection.createStatement();
 		for(String s: createStrings) 
 			statement.executeUpdate(s);
+		
+		addGroupingIds(statement);
+		statement.executeUpdate(createGroupingIndex);
+	}
+	
+	/**
+	 * Adds the groupingId column to a groups table created before it
+	 * existed. Those groupings can only be told apart by their classroom
+	 * and date created, so each such set of groups is given the id of
+	 * its first group, as new groupings are.
+	 * 
+	 * @param statement The statement to execute with.
+	 * @throws SQLException Thrown if the column cannot be added.
+	 */
+	private static void addGroupingIds(Statement statement) throws SQLException {
+		try(ResultSet columns = statement.executeQuery("PRAGMA table_info(" + GROUP_TABLE + ");")) {
+			while(columns.next()) {
+				if(GROUPING_ID.equals(columns.getString("name")))
+					return;
+			}
+		}
+		
+		statement.executeUpdate("ALTER TABLE " + GROUP_TABLE + " ADD COLUMN " + GROUPING_ID + " INTEGER;");
+		statement.executeUpdate("UPDATE " + GROUP_TABLE + " SET " + GROUPING_ID + " = (SELECT MIN(g." + GROUP_ID + 
+				") FROM " + GROUP_TABLE + " g WHERE g." + CLASSROOM_ID + " = " + GROUP_TABLE + "." + CLASSROOM_ID + 
+				" AND g." + DATE_CREATED + " IS " + GROUP_TABLE + "." + DATE_CREATED + ");");
+	}
+	
+	/**
+	 * Returns the statement creating a trigger that logs one kind of change
+	 * to a table in the change log.
+	 * 
+	 * @param table The table whose changes are logged.
+	 * @param operation INSERT, UPDATE or DELETE.
+	 * @param values The classroom id, student id and other student id of each
+	 * 				 log entry, as SQL expressions over the OLD and NEW rows.
+	 * @return The create statement.
+	 */
+	private static String createChangeTrigger(String table, String operation, String... values) {
+		StringBuilder trigger = new StringBuilder("CREATE TRIGGER IF NOT EXISTS ")
+				.append(table).append('_').append(operation.toLowerCase(Locale.ROOT)).append("_log")
+				.append(" AFTER ").append(operation).append(" ON ").append(table)
+				.append(" FOR EACH ROW BEGIN ");
+		
+		for(String v: values) {
+			trigger.append("INSERT INTO ").append(CHANGE_LOG_TABLE).append(" (")
+				.append(CHANGED_TABLE).append(", ").append(OPERATION).append(", ")
+				.append(CLASSROOM_ID).append(", ").append(STUDENT_ID).append(", ").append(OTHER_STUDENT_ID)
+				.append(") VALUES ('").append(table).append("', '").append(operation).append("', ")
+				.append(v).append("); ");
+		}
+		return trigger.append("END;").toString();
+	}
+	
+	/**
+	 * Quotes a value as an SQL string literal, so file paths with spaces or
+	 * quotes can be used in statements that take no parameters.
+	 * 
+	 * @param value The value.
+	 * @return The value in single quotes with any single quote doubled.
+	 */
+	private static String toLiteral(String value) {
+		return "'" + value.replace("'", "''") + "'";
 	}
 }
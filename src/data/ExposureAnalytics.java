@@ -0,0 +1,387 @@
+package data;
+
+import java.sql.*;
+import java.text.ParseException;
+import java.util.*;
+import java.util.stream.*;
+
+import model.*;
+
+/**
+ * The ExposureAnalytics class reports each student's exposure over their
+ * grouping history: how often they shared a group with HIGH or LOW ability
+ * peers, sat in a front group, or were in a group of five.
+ *
+ * The history is read with one query and streamed into primitive arrays,
+ * one per column, without building Group or Student objects. The groups
+ * of each classroom are then tallied in parallel on the common fork/join
+ * pool, and the small per-classroom tallies are added up at the end, so a
+ * student enrolled in several classrooms is counted once in each.
+ *
+ * Peers are judged by their current ability level, since the history
+ * does not record the level a student had when a group was made.
+ *
+ * @author Joseph Stewart
+ */
+public class ExposureAnalytics {
+
+	/** Ability codes kept in the columns. */
+	private final static byte NO_ABILITY = 0, LOW_ABILITY = 1, AVERAGE_ABILITY = 2, HIGH_ABILITY = 3;
+
+	/** The size of the groups counted as groups of five. */
+	private final static int GROUP_OF_FIVE = 5;
+
+	/** Connection object provides a connection to the database. */
+	private Connection connection;
+
+	/** The earliest date a counted group was created, or null. */
+	private java.util.Date start;
+
+	/** The latest date a counted group was created, or null. */
+	private java.util.Date end;
+
+	/**
+	 * The History class is the grouping history in columns. Groups are
+	 * stored classroom by classroom and members group by group, each range
+	 * marked by the offset of its first entry.
+	 */
+	static class History {
+		int classroomCount;
+		int[] classroomStart = new int[16];
+
+		int groupCount;
+		int[] groupStart = new int[256];
+		boolean[] front = new boolean[256];
+
+		int memberCount;
+		int[] studentIds = new int[1024];
+		byte[] abilities = new byte[1024];
+
+		/**
+		 * Starts the groups of a new classroom.
+		 */
+		void addClassroom() {
+			if(classroomCount + 1 >= classroomStart.length)
+				classroomStart = Arrays.copyOf(classroomStart, classroomStart.length * 2);
+			classroomStart[classroomCount++] = groupCount;
+			classroomStart[classroomCount] = groupCount;
+		}
+
+		/**
+		 * Starts a new group in the current classroom.
+		 *
+		 * @param isFront Whether or not it is a front group.
+		 */
+		void addGroup(boolean isFront) {
+			if(groupCount + 1 >= groupStart.length) {
+				groupStart = Arrays.copyOf(groupStart, groupStart.length * 2);
+				front = Arrays.copyOf(front, front.length * 2);
+			}
+			front[groupCount] = isFront;
+			groupStart[groupCount++] = memberCount;
+			groupStart[groupCount] = memberCount;
+			classroomStart[classroomCount] = groupCount;
+		}
+
+		/**
+		 * Adds a member to the current group.
+		 *
+		 * @param studentId The student's id.
+		 * @param ability The student's ability code.
+		 */
+		void addMember(int studentId, byte ability) {
+			if(memberCount >= studentIds.length) {
+				studentIds = Arrays.copyOf(studentIds, studentIds.length * 2);
+				abilities = Arrays.copyOf(abilities, abilities.length * 2);
+			}
+			studentIds[memberCount] = studentId;
+			abilities[memberCount++] = ability;
+			groupStart[groupCount] = memberCount;
+		}
+	}
+
+	/**
+	 * The Tally class holds the figures of the students of one classroom.
+	 */
+	private static class Tally {
+		int[] studentIds;
+		int[] groupCounts, highPeerGroups, lowPeerGroups, frontGroups, groupsOfFive;
+	}
+
+	/** Default constructor which uses the shared database connection. */
+	public ExposureAnalytics() {
+		this(Database.getInstance().getConnection());
+	}
+
+	/**
+	 * Constructor which sets the connection to read through.
+	 *
+	 * @param connection The database connection.
+	 */
+	public ExposureAnalytics(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Limits the report to groups created in a period, such as a term.
+	 * Groups whose date cannot be read are left out while a period is set.
+	 *
+	 * @param start The earliest date counted, or null for no limit.
+	 * @param end The latest date counted, or null for no limit.
+	 */
+	public void setPeriod(java.util.Date start, java.util.Date end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Reports the exposure of every student in the database.
+	 *
+	 * @return The report.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public ExposureReport analyze() throws SQLException {
+		return aggregate(load());
+	}
+
+	/**
+	 * Reports the exposure of every student in a district, reading the
+	 * schools' shards at the same time. Student ids are only unique within
+	 * a school, so each school has its own report.
+	 *
+	 * @param district The district's shards.
+	 * @param start The earliest date counted, or null for no limit.
+	 * @param end The latest date counted, or null for no limit.
+	 * @return The report of each school, keyed by school id.
+	 * @throws SQLException Thrown if any school's history cannot be read.
+	 */
+	public static Map<Integer, ExposureReport> analyze(ShardedDatabase district, 
+			final java.util.Date start, final java.util.Date end) throws SQLException {
+		return district.forEachShard((schoolId, shard) -> {
+			ExposureAnalytics analytics = new ExposureAnalytics(shard.getConnection());
+			analytics.setPeriod(start, end);
+			return analytics.analyze();
+		});
+	}
+
+	/**
+	 * Streams the grouping history into columns.
+	 *
+	 * @return The history.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	History load() throws SQLException {
+		String query = "SELECT g." + Database.CLASSROOM_ID + ", g." + Database.GROUP_ID + ", g." +
+				Database.IS_FRONT_GROUP + ", g." + Database.DATE_CREATED + ", a." + Database.STUDENT_ID +
+				", s." + Database.ABILITY_LEVEL +
+				" FROM " + Database.GROUP_TABLE + " g JOIN " + Database.GROUP_ASSIGNMENT_TABLE +
+				" a ON g." + Database.GROUP_ID + " = a." + Database.GROUP_ID +
+				" LEFT JOIN " + Database.STUDENT_TABLE + " s ON a." + Database.STUDENT_ID + " = s." + Database.STUDENT_ID +
+				" ORDER BY g." + Database.CLASSROOM_ID + ", g." + Database.GROUPING_ID + ", g." + Database.GROUP_ID + ";";
+
+		History history = new History();
+		Map<String, Boolean> inPeriod = new HashMap<>();
+		Map<String, Byte> abilityCodes = new HashMap<>();
+
+		int lastClassroom = 0, lastGroup = 0;
+		boolean counted = false;
+		boolean first = true;
+
+		try(Statement statement = connection.createStatement();
+				ResultSet results = statement.executeQuery(query)) {
+			while(results.next()) {
+				int classroomId = results.getInt(1);
+				int groupId = results.getInt(2);
+
+				if(first || groupId != lastGroup || classroomId != lastClassroom) {
+					String date = results.getString(4);
+					Boolean isInPeriod = inPeriod.get(date);
+					if(isInPeriod == null) {
+						isInPeriod = isInPeriod(date);
+						inPeriod.put(date, isInPeriod);
+					}
+
+					counted = isInPeriod;
+					if(counted) {
+						if(history.classroomCount == 0 || classroomId != lastClassroom)
+							history.addClassroom();
+						history.addGroup(results.getInt(3) == 1);
+						lastClassroom = classroomId;
+					}
+					lastGroup = groupId;
+					first = false;
+				}
+
+				if(counted) {
+					String ability = results.getString(6);
+					Byte code = abilityCodes.get(ability);
+					if(code == null) {
+						code = getAbilityCode(ability);
+						abilityCodes.put(ability, code);
+					}
+					history.addMember(results.getInt(5), code);
+				}
+			}
+		}
+		return history;
+	}
+
+	/**
+	 * Returns whether or not a date created falls in the period.
+	 *
+	 * @param date The date created.
+	 * @return True if groups created then are counted, otherwise false.
+	 */
+	private boolean isInPeriod(String date) {
+		if(start == null && end == null)
+			return true;
+		if(date == null)
+			return false;
+
+		try {
+			java.util.Date created = Group.parseDateCreated(date);
+			return (start == null || !created.before(start)) && (end == null || !created.after(end));
+		} catch (ParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the code of an ability level as stored in the database.
+	 *
+	 * @param ability The stored ability level, possibly null.
+	 * @return The ability code.
+	 */
+	private static byte getAbilityCode(String ability) {
+		if(ability == null)
+			return NO_ABILITY;
+
+		try {
+			switch(AbilityLevel.valueOf(ability.toUpperCase())) {
+			case LOW: return LOW_ABILITY;
+			case AVERAGE: return AVERAGE_ABILITY;
+			case HIGH: return HIGH_ABILITY;
+			}
+		} catch (IllegalArgumentException e) {
+			// Unknown levels count as no level
+		}
+		return NO_ABILITY;
+	}
+
+	/**
+	 * Tallies every classroom in parallel and adds the tallies up.
+	 *
+	 * @param history The history.
+	 * @return The report.
+	 */
+	static ExposureReport aggregate(final History history) {
+		List<Tally> tallies = IntStream.range(0, history.classroomCount).parallel()
+				.mapToObj(c -> tally(history, c))
+				.collect(Collectors.toList());
+
+		// Each tally already lists its students once, so only their union is sorted
+		int total = 0;
+		for(Tally t: tallies)
+			total += t.studentIds.length;
+
+		int[] studentIds = new int[total];
+		int offset = 0;
+		for(Tally t: tallies) {
+			System.arraycopy(t.studentIds, 0, studentIds, offset, t.studentIds.length);
+			offset += t.studentIds.length;
+		}
+		Arrays.parallelSort(studentIds);
+		studentIds = unique(studentIds);
+
+		int n = studentIds.length;
+		int[] groupCounts = new int[n], highPeerGroups = new int[n], lowPeerGroups = new int[n],
+				frontGroups = new int[n], groupsOfFive = new int[n];
+
+		for(Tally t: tallies) {
+			for(int i = 0; i < t.studentIds.length; i++) {
+				int s = Arrays.binarySearch(studentIds, t.studentIds[i]);
+				groupCounts[s] += t.groupCounts[i];
+				highPeerGroups[s] += t.highPeerGroups[i];
+				lowPeerGroups[s] += t.lowPeerGroups[i];
+				frontGroups[s] += t.frontGroups[i];
+				groupsOfFive[s] += t.groupsOfFive[i];
+			}
+		}
+
+		return new ExposureReport(studentIds, groupCounts, highPeerGroups, lowPeerGroups,
+				frontGroups, groupsOfFive, history.classroomCount, history.groupCount);
+	}
+
+	/**
+	 * Tallies the groups of one classroom.
+	 *
+	 * @param history The history.
+	 * @param classroom The classroom's position in the history.
+	 * @return The figures of the classroom's students.
+	 */
+	private static Tally tally(History history, int classroom) {
+		int firstGroup = history.classroomStart[classroom];
+		int lastGroup = history.classroomStart[classroom + 1];
+		int firstMember = history.groupStart[firstGroup];
+		int lastMember = history.groupStart[lastGroup];
+
+		Tally tally = new Tally();
+		int[] ids = Arrays.copyOfRange(history.studentIds, firstMember, lastMember);
+		Arrays.sort(ids);
+		tally.studentIds = unique(ids);
+
+		int n = tally.studentIds.length;
+		tally.groupCounts = new int[n];
+		tally.highPeerGroups = new int[n];
+		tally.lowPeerGroups = new int[n];
+		tally.frontGroups = new int[n];
+		tally.groupsOfFive = new int[n];
+
+		for(int g = firstGroup; g < lastGroup; g++) {
+			int from = history.groupStart[g];
+			int to = history.groupStart[g + 1];
+
+			int highs = 0, lows = 0;
+			for(int m = from; m < to; m++) {
+				if(history.abilities[m] == HIGH_ABILITY)
+					highs++;
+				else if(history.abilities[m] == LOW_ABILITY)
+					lows++;
+			}
+
+			boolean isFront = history.front[g];
+			boolean isFive = to - from == GROUP_OF_FIVE;
+
+			for(int m = from; m < to; m++) {
+				int s = Arrays.binarySearch(tally.studentIds, history.studentIds[m]);
+				byte ability = history.abilities[m];
+
+				tally.groupCounts[s]++;
+				if(highs - (ability == HIGH_ABILITY ? 1 : 0) > 0)
+					tally.highPeerGroups[s]++;
+				if(lows - (ability == LOW_ABILITY ? 1 : 0) > 0)
+					tally.lowPeerGroups[s]++;
+				if(isFront)
+					tally.frontGroups[s]++;
+				if(isFive)
+					tally.groupsOfFive[s]++;
+			}
+		}
+		return tally;
+	}
+
+	/**
+	 * Removes repeated values from a sorted array.
+	 *
+	 * @param sorted The sorted values.
+	 * @return The distinct values in order.
+	 */
+	private static int[] unique(int[] sorted) {
+		int count = 0;
+		for(int i = 0; i < sorted.length; i++) {
+			if(i == 0 || sorted[i] != sorted[i - 1])
+				sorted[count++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+}
@@ -0,0 +1,162 @@
+package data;
+
+import java.util.*;
+
+/**
+ * The ExposureReport class holds what ExposureAnalytics found about each
+ * student's groupings: how many groups they were in, how many of those
+ * had a HIGH or a LOW ability peer, were front groups, or were groups of
+ * five. The figures are kept in one array per figure, indexed by the
+ * student's position in ascending id order.
+ *
+ * @author Joseph Stewart
+ */
+public class ExposureReport {
+
+	/** The ids of the students, in ascending order. */
+	private final int[] studentIds;
+
+	/** The number of groups each student was in. */
+	private final int[] groupCounts;
+
+	/** The number of groups each student shared with a HIGH ability peer. */
+	private final int[] highPeerGroups;
+
+	/** The number of groups each student shared with a LOW ability peer. */
+	private final int[] lowPeerGroups;
+
+	/** The number of front groups each student was in. */
+	private final int[] frontGroups;
+
+	/** The number of groups of five each student was in. */
+	private final int[] groupsOfFive;
+
+	/** The number of classrooms with groups in the report. */
+	private final int classroomCount;
+
+	/** The number of groups in the report. */
+	private final int groupCount;
+
+	/**
+	 * Constructor which sets every column.
+	 *
+	 * @param studentIds The ids of the students, in ascending order.
+	 * @param groupCounts The number of groups each student was in.
+	 * @param highPeerGroups The number of groups each student shared with a HIGH peer.
+	 * @param lowPeerGroups The number of groups each student shared with a LOW peer.
+	 * @param frontGroups The number of front groups each student was in.
+	 * @param groupsOfFive The number of groups of five each student was in.
+	 * @param classroomCount The number of classrooms with groups in the report.
+	 * @param groupCount The number of groups in the report.
+	 */
+	ExposureReport(int[] studentIds, int[] groupCounts, int[] highPeerGroups, int[] lowPeerGroups,
+			int[] frontGroups, int[] groupsOfFive, int classroomCount, int groupCount) {
+		this.studentIds = studentIds;
+		this.groupCounts = groupCounts;
+		this.highPeerGroups = highPeerGroups;
+		this.lowPeerGroups = lowPeerGroups;
+		this.frontGroups = frontGroups;
+		this.groupsOfFive = groupsOfFive;
+		this.classroomCount = classroomCount;
+		this.groupCount = groupCount;
+	}
+
+	/**
+	 * Returns the number of students in the report.
+	 *
+	 * @return The number of students.
+	 */
+	public int size() {
+		return studentIds.length;
+	}
+
+	/**
+	 * Returns the position of a student in the report.
+	 *
+	 * @param studentId The id of the student.
+	 * @return The student's index, or a negative number if they were never grouped.
+	 */
+	public int indexOf(int studentId) {
+		return Arrays.binarySearch(studentIds, studentId);
+	}
+
+	/**
+	 * Returns the id of the student at an index.
+	 *
+	 * @param index The student's index.
+	 * @return The student id.
+	 */
+	public int getStudentId(int index) {
+		return studentIds[index];
+	}
+
+	/**
+	 * Returns the number of groups the student at an index was in.
+	 *
+	 * @param index The student's index.
+	 * @return The number of groups.
+	 */
+	public int getGroupCount(int index) {
+		return groupCounts[index];
+	}
+
+	/**
+	 * Returns the number of groups the student at an index shared with at
+	 * least one HIGH ability peer.
+	 *
+	 * @param index The student's index.
+	 * @return The number of groups.
+	 */
+	public int getHighPeerGroups(int index) {
+		return highPeerGroups[index];
+	}
+
+	/**
+	 * Returns the number of groups the student at an index shared with at
+	 * least one LOW ability peer.
+	 *
+	 * @param index The student's index.
+	 * @return The number of groups.
+	 */
+	public int getLowPeerGroups(int index) {
+		return lowPeerGroups[index];
+	}
+
+	/**
+	 * Returns the number of front groups the student at an index was in.
+	 *
+	 * @param index The student's index.
+	 * @return The number of front groups.
+	 */
+	public int getFrontGroups(int index) {
+		return frontGroups[index];
+	}
+
+	/**
+	 * Returns the number of groups of five the student at an index was in.
+	 *
+	 * @param index The student's index.
+	 * @return The number of groups of five.
+	 */
+	public int getGroupsOfFive(int index) {
+		return groupsOfFive[index];
+	}
+
+	/**
+	 * Returns the number of classrooms with groups in the report.
+	 *
+	 * @return The number of classrooms.
+	 */
+	public int getClassroomCount() {
+		return classroomCount;
+	}
+
+	/**
+	 * Returns the number of groups in the report.
+	 *
+	 * @return The number of groups.
+	 */
+	public int getGroupCount() {
+		return groupCount;
+	}
+}
@@ -0,0 +1,646 @@
+package data;
+
+import java.sql.*;
+import java.util.*;
+
+import model.*;
+
+/**
+ * The GroupStore class saves the groups created for a classroom. Each
+ * save writes the groups, their group assignments, and the matching
+ * pairHistory rows in a single transaction so the pair history can
+ * never disagree with the groups it was derived from: a pair's count is
+ * the number of saved groupings that put the two students in the same
+ * group, and its last grouped date is the date of the most recent one.
+ *
+ * All groups of one save share the date of the first group and a
+ * grouping id, the id of the first group, which identifies them as one
+ * grouping of the classroom. Grouping ids grow with every save, so two
+ * groupings saved in the same minute stay apart and the highest id is
+ * the current grouping. A regrouping saved with saveChangedGroups edits
+ * the current grouping instead of adding one, so it keeps the current
+ * grouping id and date, and the pairs it splits up are taken back out of
+ * the pair history along with the pairs it forms being added.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupStore {
+
+	/** Connection object provides a connection to the database. */
+	private Connection connection;
+
+	/** Default constructor which uses the shared database connection. */
+	public GroupStore() {
+		this(Database.getInstance().getConnection());
+	}
+
+	/**
+	 * Constructor which sets the connection to save through.
+	 *
+	 * @param connection The database connection.
+	 */
+	public GroupStore(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Provides access to the database connection.
+	 *
+	 * @return The database Connection.
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Saves a grouping of the classroom and updates the pair history in the
+	 * same transaction. The generated group ids are set on the groups.
+	 *
+	 * @param classroom The classroom the groups belong to.
+	 * @param groups The groups to be saved.
+	 * @throws SQLException Thrown if the grouping could not be saved. Nothing
+	 * 						is written in that case.
+	 */
+	public void saveGroups(Classroom classroom, Collection<Group> groups) throws SQLException {
+		synchronized(connection) {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+
+			try {
+				writeGroups(classroom.getId(), groups);
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Saves a grouping and records it in an already loaded pair history once
+	 * the transaction has committed.
+	 *
+	 * @param classroom The classroom the groups belong to.
+	 * @param groups The groups to be saved.
+	 * @param history The in-memory pair history to keep in step.
+	 * @throws SQLException Thrown if the grouping could not be saved.
+	 */
+	public void saveGroups(Classroom classroom, Collection<Group> groups, PairHistory history) throws SQLException {
+		saveGroups(classroom, groups);
+		history.record(groups);
+	}
+
+	/**
+	 * Loads the pair history of the classroom's students.
+	 *
+	 * @param classroom The classroom.
+	 * @return The pair history of its students.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public PairHistory loadPairHistory(Classroom classroom) throws SQLException {
+		return PairHistory.load(connection, classroom.getStudents());
+	}
+
+	/**
+	 * Loads the classroom's current grouping, which is the most recently
+	 * saved one. The students are taken from the classroom's roster.
+	 *
+	 * @param classroom The classroom.
+	 * @return The current groups with their ids, or an empty list if the
+	 * 		   classroom has never been grouped.
+	 * @throws SQLException Thrown if there is a problem executing the queries.
+	 */
+	public List<Group> loadCurrentGroups(Classroom classroom) throws SQLException {
+		return loadCurrentGroups(classroom, false);
+	}
+
+	/**
+	 * Loads the classroom's current grouping, optionally keeping the
+	 * students who have since left the roster as placeholders.
+	 *
+	 * @param classroom The classroom.
+	 * @param keepFormerStudents Whether or not students no longer on the
+	 * 							 roster are loaded as placeholders.
+	 * @return The current groups with their ids, or an empty list.
+	 * @throws SQLException Thrown if there is a problem executing the queries.
+	 */
+	private List<Group> loadCurrentGroups(Classroom classroom, boolean keepFormerStudents) throws SQLException {
+		List<Integer> latest = loadGroupingIds(classroom, 0, 1);
+		if(latest.isEmpty())
+			return new ArrayList<>();
+
+		return loadGrouping(classroom, latest.get(0), keepFormerStudents);
+	}
+
+	/**
+	 * Returns the ids of the classroom's groupings, most recent first.
+	 *
+	 * @param classroom The classroom.
+	 * @param offset The number of most recent groupings to skip.
+	 * @param limit The maximum number of ids returned.
+	 * @return The grouping ids.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public List<Integer> loadGroupingIds(Classroom classroom, int offset, int limit) throws SQLException {
+		String query = "SELECT DISTINCT " + Database.GROUPING_ID + " FROM " + Database.GROUP_TABLE +
+				" WHERE " + Database.CLASSROOM_ID + " = ? ORDER BY " + Database.GROUPING_ID +
+				" DESC LIMIT ? OFFSET ?;";
+
+		List<Integer> groupingIds = new ArrayList<>();
+		try(PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setInt(1, classroom.getId());
+			statement.setInt(2, limit);
+			statement.setInt(3, offset);
+			try(ResultSet results = statement.executeQuery()) {
+				while(results.next())
+					groupingIds.add(results.getInt(1));
+			}
+		}
+		return groupingIds;
+	}
+
+	/**
+	 * Returns a loader that pages the classroom's saved groupings in for
+	 * its GroupingHistory. SQL errors are wrapped in a GroupingLoadException.
+	 *
+	 * @param classroom The classroom.
+	 * @return The loader.
+	 */
+	public GroupingLoader getLoader(final Classroom classroom) {
+		return new GroupingLoader() {
+			@Override
+			public List<Integer> loadGroupingIds(int offset, int limit) {
+				try {
+					return GroupStore.this.loadGroupingIds(classroom, offset, limit);
+				} catch (SQLException e) {
+					throw new GroupingLoadException("Could not load the groupings of classroom " + classroom.getId() + ".", e);
+				}
+			}
+
+			@Override
+			public List<Group> loadGrouping(int groupingId) {
+				try {
+					return GroupStore.this.loadGrouping(classroom, groupingId);
+				} catch (SQLException e) {
+					throw new GroupingLoadException("Could not load grouping " + groupingId + ".", e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Loads one grouping of the classroom, identified by its grouping id.
+	 *
+	 * @param classroom The classroom.
+	 * @param groupingId The grouping id shared by the grouping's groups.
+	 * @return The groups with their ids, ordered by group number.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public List<Group> loadGrouping(Classroom classroom, int groupingId) throws SQLException {
+		return loadGrouping(classroom, groupingId, false);
+	}
+
+	/**
+	 * Loads one grouping of the classroom, optionally keeping the students
+	 * who have since left the roster as placeholders that only carry their
+	 * id, so a delta against the grouping removes their assignments too.
+	 *
+	 * @param classroom The classroom.
+	 * @param groupingId The grouping id shared by the grouping's groups.
+	 * @param keepFormerStudents Whether or not students no longer on the
+	 * 							 roster are loaded as placeholders.
+	 * @return The groups with their ids, ordered by group number.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	private List<Group> loadGrouping(Classroom classroom, int groupingId, boolean keepFormerStudents) throws SQLException {
+		Map<Integer, Student> roster = new HashMap<>();
+		for(Student s: classroom.getStudents())
+			roster.put(s.getId(), s);
+
+		String query = "SELECT g." + Database.GROUP_ID + ", g." + Database.GROUP_NUMBER + ", g." +
+				Database.IS_FRONT_GROUP + ", g." + Database.DATE_CREATED + ", a." + Database.STUDENT_ID +
+				" FROM " + Database.GROUP_TABLE + " g LEFT JOIN " + Database.GROUP_ASSIGNMENT_TABLE +
+				" a ON g." + Database.GROUP_ID + " = a." + Database.GROUP_ID +
+				" WHERE g." + Database.CLASSROOM_ID + " = ? AND g." + Database.GROUPING_ID + " = ?" +
+				" ORDER BY g." + Database.GROUP_NUMBER + ", g." + Database.GROUP_ID + ";";
+
+		Map<Integer, Group> groups = new LinkedHashMap<>();
+		try(PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setInt(1, classroom.getId());
+			statement.setInt(2, groupingId);
+
+			try(ResultSet results = statement.executeQuery()) {
+				while(results.next()) {
+					int groupId = results.getInt(1);
+					Group g = groups.get(groupId);
+
+					if(g == null) {
+						g = new Group(new HashSet<Student>());
+						g.setId(groupId);
+						g.setGroupNumber(results.getInt(2));
+						g.setIsFrontGroup(results.getInt(3) == 1);
+						g.setDateCreated(results.getString(4));
+						g.setGroupingId(groupingId);
+						groups.put(groupId, g);
+					}
+
+					int studentId = results.getInt(5);
+					if(results.wasNull())
+						continue;
+
+					Student s = roster.get(studentId);
+					if(s == null && keepFormerStudents) {
+						s = new Student("Former student " + studentId, null, null);
+						s.setId(studentId);
+						roster.put(studentId, s);
+					}
+					if(s != null)
+						g.getStudents().add(s);
+				}
+			}
+		}
+		return new ArrayList<>(groups.values());
+	}
+
+	/**
+	 * Saves a regrouping of the classroom by changing its current grouping
+	 * in place. Only the groups and assignments that differ are written:
+	 * matched groups keep their rows, moved students have their assignment
+	 * replaced, and groups without a match are inserted or deleted. Students
+	 * who have left the roster lose their assignments as well. The grouping
+	 * keeps its grouping id and date. Pair history is incremented only for
+	 * pairs that were not already grouped together, and decremented for
+	 * pairs the regrouping splits up, whose last grouped date goes back to
+	 * the most recent grouping that still has them together. If the
+	 * classroom has no grouping yet, the groups are saved as a new grouping.
+	 *
+	 * @param classroom The classroom the groups belong to.
+	 * @param groups The new groups.
+	 * @return The delta that was written.
+	 * @throws SQLException Thrown if the grouping could not be saved. Nothing
+	 * 						is written in that case.
+	 */
+	public GroupingDelta saveChangedGroups(Classroom classroom, Collection<Group> groups) throws SQLException {
+		synchronized(connection) {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+
+			try {
+				// The current grouping is read in the same transaction the delta
+				// is written in, so no other save can change it in between. Students
+				// who have left the roster are kept so the delta removes them.
+				List<Group> current = loadCurrentGroups(classroom, true);
+				GroupingDelta delta = new GroupingDelta(current, groups);
+
+				if(delta.isEmpty()) {
+					for(int i = 0; i < delta.getNewGroups().size(); i++) {
+						Group match = delta.getMatch(i);
+						delta.getNewGroups().get(i).setId(match.getId());
+						delta.getNewGroups().get(i).setGroupingId(match.getGroupingId());
+						delta.getNewGroups().get(i).setDateCreated(match.getDateCreated());
+					}
+				} else if(current.isEmpty()) {
+					writeGroups(classroom.getId(), groups);
+				} else {
+					writeDelta(classroom.getId(), current.get(0).getGroupingId(), current.get(0).getDateCreated(), current, delta);
+				}
+				connection.commit();
+				return delta;
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Writes the inserts, updates, and deletes of a delta. The caller owns
+	 * the transaction.
+	 *
+	 * @param classroomId The id of the classroom.
+	 * @param groupingId The id of the current grouping, kept by new groups.
+	 * @param dateCreated The date of the current grouping, kept by new groups.
+	 * @param current The current groups.
+	 * @param delta The delta to write.
+	 * @throws SQLException Thrown if there is a problem executing the statements.
+	 */
+	private void writeDelta(int classroomId, int groupingId, String dateCreated, List<Group> current, 
+			GroupingDelta delta) throws SQLException {
+		String insertGroup = "INSERT INTO " + Database.GROUP_TABLE + " (" +
+				Database.CLASSROOM_ID + ", " + Database.GROUP_NUMBER + ", " +
+				Database.IS_FRONT_GROUP + ", " + Database.DATE_CREATED + ", " + 
+				Database.GROUPING_ID + ") VALUES (?, ?, ?, ?, ?);";
+
+		String updateGroup = "UPDATE " + Database.GROUP_TABLE + " SET " +
+				Database.GROUP_NUMBER + " = ?, " + Database.IS_FRONT_GROUP + " = ? WHERE " +
+				Database.GROUP_ID + " = ?;";
+
+		String deleteGroup = "DELETE FROM " + Database.GROUP_TABLE + " WHERE " + Database.GROUP_ID + " = ?;";
+
+		String deleteGroupAssignments = "DELETE FROM " + Database.GROUP_ASSIGNMENT_TABLE + " WHERE " +
+				Database.GROUP_ID + " = ?;";
+
+		String insertAssignment = "INSERT INTO " + Database.GROUP_ASSIGNMENT_TABLE + " (" +
+				Database.GROUP_ID + ", " + Database.STUDENT_ID + ") VALUES (?, ?);";
+
+		String deleteAssignment = "DELETE FROM " + Database.GROUP_ASSIGNMENT_TABLE + " WHERE " +
+				Database.GROUP_ID + " = ? AND " + Database.STUDENT_ID + " = ?;";
+
+		try(PreparedStatement insertGroupStatement = connection.prepareStatement(insertGroup, Statement.RETURN_GENERATED_KEYS);
+				PreparedStatement updateGroupStatement = connection.prepareStatement(updateGroup);
+				PreparedStatement deleteGroupStatement = connection.prepareStatement(deleteGroup);
+				PreparedStatement deleteGroupAssignmentsStatement = connection.prepareStatement(deleteGroupAssignments);
+				PreparedStatement insertAssignmentStatement = connection.prepareStatement(insertAssignment);
+				PreparedStatement deleteAssignmentStatement = connection.prepareStatement(deleteAssignment)) {
+
+			for(Group g: delta.getRemovedGroups()) {
+				deleteGroupAssignmentsStatement.setInt(1, g.getId());
+				deleteGroupAssignmentsStatement.executeUpdate();
+				deleteGroupStatement.setInt(1, g.getId());
+				deleteGroupStatement.executeUpdate();
+			}
+
+			// Deletes run first so a student moving between groups never
+			// has two assignments at once
+			List<Group> newGroups = delta.getNewGroups();
+			for(int i = 0; i < newGroups.size(); i++) {
+				Group match = delta.getMatch(i);
+				if(match == null)
+					continue;
+
+				for(Student s: delta.getLeftStudents(i)) {
+					deleteAssignmentStatement.setInt(1, match.getId());
+					deleteAssignmentStatement.setInt(2, s.getId());
+					deleteAssignmentStatement.addBatch();
+				}
+			}
+			deleteAssignmentStatement.executeBatch();
+
+			for(int i = 0; i < newGroups.size(); i++) {
+				Group g = newGroups.get(i);
+				Group match = delta.getMatch(i);
+				g.setDateCreated(dateCreated);
+				g.setGroupingId(groupingId);
+
+				if(match == null) {
+					insertGroupStatement.setInt(1, classroomId);
+					insertGroupStatement.setInt(2, g.getGroupNumber());
+					insertGroupStatement.setInt(3, g.getIsFrontGroup() ? 1 : 0);
+					insertGroupStatement.setString(4, dateCreated);
+					insertGroupStatement.setInt(5, groupingId);
+					insertGroupStatement.executeUpdate();
+
+					try(ResultSet keys = insertGroupStatement.getGeneratedKeys()) {
+						if(keys.next())
+							g.setId(keys.getInt(1));
+					}
+				} else {
+					g.setId(match.getId());
+
+					if(g.getGroupNumber() != match.getGroupNumber() ||
+							g.getIsFrontGroup() != match.getIsFrontGroup()) {
+						updateGroupStatement.setInt(1, g.getGroupNumber());
+						updateGroupStatement.setInt(2, g.getIsFrontGroup() ? 1 : 0);
+						updateGroupStatement.setInt(3, g.getId());
+						updateGroupStatement.addBatch();
+					}
+				}
+
+				for(Student s: delta.getJoinedStudents(i)) {
+					insertAssignmentStatement.setInt(1, g.getId());
+					insertAssignmentStatement.setInt(2, s.getId());
+					insertAssignmentStatement.addBatch();
+				}
+			}
+			updateGroupStatement.executeBatch();
+			insertAssignmentStatement.executeBatch();
+		}
+
+		writePairs(getNewPairs(current, delta.getNewGroups()), dateCreated);
+		removePairs(getNewPairs(delta.getNewGroups(), current));
+	}
+
+	/**
+	 * Returns the pairs of students grouped together in the new groups who
+	 * were not in the same current group. With the arguments swapped, it
+	 * returns the pairs a regrouping splits up.
+	 *
+	 * @param current The current groups.
+	 * @param groups The new groups.
+	 * @return The new pairs of student ids.
+	 */
+	private static List<int[]> getNewPairs(List<Group> current, List<Group> groups) {
+		Map<Integer, Integer> currentGroupOf = new HashMap<>();
+		for(int g = 0; g < current.size(); g++) {
+			for(Student s: current.get(g).getStudents())
+				currentGroupOf.put(s.getId(), g);
+		}
+
+		List<int[]> pairs = new ArrayList<>();
+		for(Group g: groups) {
+			List<Student> members = new ArrayList<>(g.getStudents());
+
+			for(int i = 0; i < members.size(); i++) {
+				Integer groupI = currentGroupOf.get(members.get(i).getId());
+
+				for(int j = i + 1; j < members.size(); j++) {
+					Integer groupJ = currentGroupOf.get(members.get(j).getId());
+					if(groupI == null || !groupI.equals(groupJ))
+						pairs.add(new int[] { members.get(i).getId(), members.get(j).getId() });
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Writes the groups, assignments, and pair history rows without any
+	 * transaction handling. The caller owns the transaction. The groups
+	 * get the id of the first one as their grouping id.
+	 *
+	 * @param classroomId The id of the classroom the groups belong to.
+	 * @param groups The groups to be written.
+	 * @throws SQLException Thrown if there is a problem executing the inserts.
+	 */
+	void writeGroups(int classroomId, Collection<Group> groups) throws SQLException {
+		if(groups.isEmpty())
+			return;
+
+		String dateCreated = groups.iterator().next().getDateCreated();
+
+		String insertGroup = "INSERT INTO " + Database.GROUP_TABLE + " (" +
+				Database.CLASSROOM_ID + ", " + Database.GROUP_NUMBER + ", " +
+				Database.IS_FRONT_GROUP + ", " + Database.DATE_CREATED + ", " + 
+				Database.GROUPING_ID + ") VALUES (?, ?, ?, ?, ?);";
+
+		String updateGroupingId = "UPDATE " + Database.GROUP_TABLE + " SET " + Database.GROUPING_ID +
+				" = " + Database.GROUP_ID + " WHERE " + Database.GROUP_ID + " = ?;";
+
+		String insertAssignment = "INSERT INTO " + Database.GROUP_ASSIGNMENT_TABLE + " (" +
+				Database.GROUP_ID + ", " + Database.STUDENT_ID + ") VALUES (?, ?);";
+
+		try(PreparedStatement groupStatement = connection.prepareStatement(insertGroup, Statement.RETURN_GENERATED_KEYS);
+				PreparedStatement groupingStatement = connection.prepareStatement(updateGroupingId);
+				PreparedStatement assignmentStatement = connection.prepareStatement(insertAssignment)) {
+
+			int groupingId = 0;
+			for(Group g: groups) {
+				g.setDateCreated(dateCreated);
+
+				groupStatement.setInt(1, classroomId);
+				groupStatement.setInt(2, g.getGroupNumber());
+				groupStatement.setInt(3, g.getIsFrontGroup() ? 1 : 0);
+				groupStatement.setString(4, dateCreated);
+				if(groupingId == 0)
+					groupStatement.setNull(5, Types.INTEGER);
+				else
+					groupStatement.setInt(5, groupingId);
+				groupStatement.executeUpdate();
+
+				try(ResultSet keys = groupStatement.getGeneratedKeys()) {
+					if(keys.next())
+						g.setId(keys.getInt(1));
+				}
+
+				// The first group's id is only known once it is inserted
+				if(groupingId == 0) {
+					groupingId = g.getId();
+					groupingStatement.setInt(1, groupingId);
+					groupingStatement.executeUpdate();
+				}
+				g.setGroupingId(groupingId);
+
+				for(Student s: g.getStudents()) {
+					assignmentStatement.setInt(1, g.getId());
+					assignmentStatement.setInt(2, s.getId());
+					assignmentStatement.addBatch();
+				}
+			}
+			assignmentStatement.executeBatch();
+		}
+
+		writePairHistory(groups, dateCreated);
+	}
+
+	/**
+	 * Increments the pair history of every pair of students sharing a group.
+	 *
+	 * @param groups The groups whose pairs are recorded.
+	 * @param dateCreated The date the pairs were grouped.
+	 * @throws SQLException Thrown if there is a problem executing the updates.
+	 */
+	void writePairHistory(Collection<Group> groups, String dateCreated) throws SQLException {
+		List<int[]> pairs = new ArrayList<>();
+
+		for(Group g: groups) {
+			List<Student> members = new ArrayList<>(g.getStudents());
+
+			for(int i = 0; i < members.size(); i++) {
+				for(int j = i + 1; j < members.size(); j++) {
+					pairs.add(new int[] { members.get(i).getId(), members.get(j).getId() });
+				}
+			}
+		}
+		writePairs(pairs, dateCreated);
+	}
+
+	/**
+	 * Decrements the pair history of pairs of student ids that are no longer
+	 * grouped together in the current grouping. Their last grouped date is
+	 * looked up again from the groups still holding both students, so it
+	 * must run after the assignments have been changed, and pairs left with
+	 * no grouping are removed.
+	 *
+	 * @param pairs The pairs of student ids.
+	 * @throws SQLException Thrown if there is a problem executing the updates.
+	 */
+	private void removePairs(List<int[]> pairs) throws SQLException {
+		if(pairs.isEmpty())
+			return;
+
+		// Grouping ids grow with every save, so the highest one shared by
+		// the pair is its most recent grouping
+		String lastGroupedAt = "SELECT g." + Database.DATE_CREATED + " FROM " +
+				Database.GROUP_ASSIGNMENT_TABLE + " a1 JOIN " + Database.GROUP_ASSIGNMENT_TABLE +
+				" a2 ON a2." + Database.GROUP_ID + " = a1." + Database.GROUP_ID + " JOIN " +
+				Database.GROUP_TABLE + " g ON g." + Database.GROUP_ID + " = a1." + Database.GROUP_ID +
+				" WHERE a1." + Database.STUDENT_ID + " = ? AND a2." + Database.STUDENT_ID + " = ?" +
+				" ORDER BY g." + Database.GROUPING_ID + " DESC LIMIT 1";
+
+		String updatePair = "UPDATE " + Database.PAIR_HISTORY_TABLE + " SET " +
+				Database.PAIR_COUNT + " = " + Database.PAIR_COUNT + " - 1, " +
+				Database.LAST_GROUPED_AT + " = (" + lastGroupedAt + ") WHERE " +
+				Database.STUDENT_1_ID + " = ? AND " + Database.STUDENT_2_ID + " = ?;";
+
+		String deletePair = "DELETE FROM " + Database.PAIR_HISTORY_TABLE + " WHERE " +
+				Database.STUDENT_1_ID + " = ? AND " + Database.STUDENT_2_ID + " = ? AND " +
+				Database.PAIR_COUNT + " <= 0;";
+
+		try(PreparedStatement updateStatement = connection.prepareStatement(updatePair);
+				PreparedStatement deleteStatement = connection.prepareStatement(deletePair)) {
+
+			for(int[] pair: pairs) {
+				int low = Math.min(pair[0], pair[1]);
+				int high = Math.max(pair[0], pair[1]);
+
+				updateStatement.setInt(1, low);
+				updateStatement.setInt(2, high);
+				updateStatement.setInt(3, low);
+				updateStatement.setInt(4, high);
+				updateStatement.addBatch();
+
+				deleteStatement.setInt(1, low);
+				deleteStatement.setInt(2, high);
+				deleteStatement.addBatch();
+			}
+			updateStatement.executeBatch();
+			deleteStatement.executeBatch();
+		}
+	}
+
+	/**
+	 * Increments the pair history of the given pairs of student ids.
+	 *
+	 * @param pairs The pairs of student ids.
+	 * @param dateCreated The date the pairs were grouped.
+	 * @throws SQLException Thrown if there is a problem executing the updates.
+	 */
+	void writePairs(List<int[]> pairs, String dateCreated) throws SQLException {
+		if(pairs.isEmpty())
+			return;
+
+		// The insert creates missing pairs so the update can always increment
+		String insertPair = "INSERT OR IGNORE INTO " + Database.PAIR_HISTORY_TABLE + " (" +
+				Database.STUDENT_1_ID + ", " + Database.STUDENT_2_ID + ", " +
+				Database.PAIR_COUNT + ") VALUES (?, ?, 0);";
+
+		String updatePair = "UPDATE " + Database.PAIR_HISTORY_TABLE + " SET " +
+				Database.PAIR_COUNT + " = " + Database.PAIR_COUNT + " + 1, " +
+				Database.LAST_GROUPED_AT + " = ? WHERE " +
+				Database.STUDENT_1_ID + " = ? AND " + Database.STUDENT_2_ID + " = ?;";
+
+		try(PreparedStatement insertStatement = connection.prepareStatement(insertPair);
+				PreparedStatement updateStatement = connection.prepareStatement(updatePair)) {
+
+			for(int[] pair: pairs) {
+				int low = Math.min(pair[0], pair[1]);
+				int high = Math.max(pair[0], pair[1]);
+
+				insertStatement.setInt(1, low);
+				insertStatement.setInt(2, high);
+				insertStatement.addBatch();
+
+				updateStatement.setString(1, dateCreated);
+				updateStatement.setInt(2, low);
+				updateStatement.setInt(3, high);
+				updateStatement.addBatch();
+			}
+			insertStatement.executeBatch();
+			updateStatement.executeBatch();
+		}
+	}
+}
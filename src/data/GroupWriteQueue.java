@@ -0,0 +1,292 @@
+package data;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+import model.*;
+
+/**
+ * The GroupWriteQueue class decouples creating groups from saving them.
+ * Groupings are handed to a bounded queue and a single writer thread saves
+ * them through a GroupStore, coalescing the groupings of several classrooms
+ * into one transaction.
+ *
+ * A batch is written once it reaches the batch size or once the oldest
+ * grouping in it has waited for the flush interval. When the queue is full,
+ * submit blocks until the writer catches up, so producers can never run
+ * ahead of the database without bound. Everything submitted before shutdown
+ * is written before shutdown returns, and a Database shutdown task makes
+ * sure that also happens when the program exits, before the database's
+ * final checkpoint. The writer is a daemon thread, so a program that never
+ * calls shutdown still exits and runs the task.
+ *
+ * Groupings are only queued while holding the read side of a lock whose
+ * write side shutdown takes to close the queue, so nothing can be queued
+ * after the writer's final drain; a submit that loses that race is
+ * rejected instead of being silently dropped.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupWriteQueue {
+
+	/** Default number of groupings the queue holds before submit blocks. */
+	public final static int DEFAULT_CAPACITY = 256;
+
+	/** Default number of groupings written per transaction. */
+	public final static int DEFAULT_BATCH_SIZE = 32;
+
+	/** Default time in milliseconds a grouping may wait before being written. */
+	public final static long DEFAULT_FLUSH_MILLIS = 250;
+
+	/** The store used to write the groupings. */
+	private final GroupStore store;
+
+	/** The pending groupings. */
+	private final BlockingQueue<Write> queue;
+
+	/** The maximum number of groupings written per transaction. */
+	private final int batchSize;
+
+	/** The maximum time in milliseconds a grouping waits before being written. */
+	private final long flushMillis;
+
+	/** The thread that writes the groupings. */
+	private final Thread writer;
+
+	/** The task that drains the queue if the JVM exits first. */
+	private final Runnable shutdownTask;
+
+	/** The longest a producer holds the queue open while waiting for room, in milliseconds. */
+	private final static long OFFER_MILLIS = 50;
+
+	/** Held shared while queueing and exclusively while closing the queue. */
+	private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+	/** Flag for whether or not the queue still accepts groupings. */
+	private volatile boolean open = true;
+
+	/** The number of groupings that could not be saved. */
+	private volatile int failedWrites;
+
+	/**
+	 * A grouping waiting to be written. A write without a classroom is a
+	 * flush marker, whose latch is released once everything before it is written.
+	 */
+	private static class Write {
+		final Classroom classroom;
+		final Collection<Group> groups;
+		final CountDownLatch flushed;
+
+		Write(Classroom classroom, Collection<Group> groups, CountDownLatch flushed) {
+			this.classroom = classroom;
+			this.groups = groups;
+			this.flushed = flushed;
+		}
+	}
+
+	/** Default constructor which writes through the shared database connection. */
+	public GroupWriteQueue() {
+		this(new GroupStore(), DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS);
+	}
+
+	/**
+	 * Constructor which sets the store and the queue thresholds, and starts
+	 * the writer thread.
+	 *
+	 * @param store The store used to write the groupings.
+	 * @param capacity The number of groupings held before submit blocks.
+	 * @param batchSize The maximum number of groupings written per transaction.
+	 * @param flushMillis The maximum time in milliseconds a grouping waits.
+	 */
+	public GroupWriteQueue(GroupStore store, int capacity, int batchSize, long flushMillis) {
+		this.store = store;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = Math.max(1, batchSize);
+		this.flushMillis = flushMillis;
+
+		writer = new Thread(this::run, "group-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		shutdownTask = this::shutdown;
+		Database.addShutdownTask(shutdownTask);
+	}
+
+	/**
+	 * Queues a grouping to be saved. Blocks while the queue is full.
+	 *
+	 * @param classroom The classroom the groups belong to.
+	 * @param groups The groups to be saved.
+	 * @throws InterruptedException Thrown if interrupted while waiting for room.
+	 * @throws IllegalStateException Thrown if the queue has been shut down.
+	 */
+	public void submit(Classroom classroom, Collection<Group> groups) throws InterruptedException {
+		if(!enqueue(new Write(classroom, groups, null)))
+			throw new IllegalStateException("The write queue has been shut down.");
+	}
+
+	/**
+	 * Blocks until every grouping submitted before this call has been written.
+	 *
+	 * @throws InterruptedException Thrown if interrupted while waiting.
+	 */
+	public void flush() throws InterruptedException {
+		CountDownLatch flushed = new CountDownLatch(1);
+		if(enqueue(new Write(null, null, flushed)))
+			flushed.await();
+		else
+			writer.join();
+	}
+
+	/**
+	 * Queues a write unless the queue is shut down. While the queue is full,
+	 * waits for room in short steps, letting go of the lock between them so
+	 * shutdown is never held up for long.
+	 *
+	 * @param write The write.
+	 * @return True if the write was queued, or false if the queue is shut down.
+	 * @throws InterruptedException Thrown if interrupted while waiting for room.
+	 */
+	private boolean enqueue(Write write) throws InterruptedException {
+		while(true) {
+			closing.readLock().lock();
+			try {
+				if(!open)
+					return false;
+				if(queue.offer(write, OFFER_MILLIS, TimeUnit.MILLISECONDS))
+					return true;
+			} finally {
+				closing.readLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting groupings, writes everything still queued, and stops
+	 * the writer thread.
+	 */
+	public void shutdown() {
+		closing.writeLock().lock();
+		try {
+			if(!open)
+				return;
+			open = false;
+		} finally {
+			closing.writeLock().unlock();
+		}
+
+		Database.removeShutdownTask(shutdownTask);
+
+		writer.interrupt();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of groupings that could not be saved.
+	 *
+	 * @return The number of failed groupings.
+	 */
+	public int getFailedWrites() {
+		return failedWrites;
+	}
+
+	/**
+	 * The writer loop. Collects a batch until it is full or the flush
+	 * interval has passed, then writes it. Once interrupted by shutdown,
+	 * the remaining groupings are drained and written.
+	 */
+	private void run() {
+		List<Write> batch = new ArrayList<>(batchSize);
+
+		while(open) {
+			try {
+				Write first = queue.take();
+				batch.add(first);
+
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+				while(batch.size() < batchSize && first.flushed == null) {
+					long remaining = deadline - System.nanoTime();
+					Write next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+					if(next == null)
+						break;
+					batch.add(next);
+					if(next.flushed != null)
+						break;
+				}
+			} catch (InterruptedException e) {
+				// Shut down; fall through and drain what is left
+			}
+			writeBatch(batch);
+		}
+
+		queue.drainTo(batch);
+		writeBatch(batch);
+	}
+
+	/**
+	 * Writes a batch of groupings in one transaction and releases any flush
+	 * markers in it. If the transaction fails, each grouping is retried on
+	 * its own so one bad grouping does not lose the rest of the batch.
+	 *
+	 * @param batch The batch to write; it is cleared afterwards.
+	 */
+	private void writeBatch(List<Write> batch) {
+		List<Write> writes = new ArrayList<>(batch.size());
+		for(Write w: batch) {
+			if(w.classroom != null)
+				writes.add(w);
+		}
+
+		if(!writes.isEmpty() && !writeTransaction(writes)) {
+			for(Write w: writes) {
+				if(!writeTransaction(Collections.singletonList(w)))
+					failedWrites++;
+			}
+		}
+
+		for(Write w: batch) {
+			if(w.flushed != null)
+				w.flushed.countDown();
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Writes the groupings in a single transaction.
+	 *
+	 * @param writes The groupings to write.
+	 * @return True if the transaction committed, otherwise false.
+	 */
+	private boolean writeTransaction(List<Write> writes) {
+		Connection connection = store.getConnection();
+
+		synchronized(connection) {
+			try {
+				boolean autoCommit = connection.getAutoCommit();
+				connection.setAutoCommit(false);
+
+				try {
+					for(Write w: writes)
+						store.writeGroups(w.classroom.getId(), w.groups);
+					connection.commit();
+					return true;
+				} catch (SQLException e) {
+					connection.rollback();
+					e.printStackTrace();
+					return false;
+				} finally {
+					connection.setAutoCommit(autoCommit);
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+	}
+}
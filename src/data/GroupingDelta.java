@@ -0,0 +1,224 @@
+package data;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The GroupingDelta class describes the difference between a classroom's
+ * stored grouping and a new grouping of the same classroom. Each new group
+ * is matched with the stored group it shares the most students with, so a
+ * regroup that leaves most students with the same peers only needs the
+ * few changed rows to be written.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingDelta {
+
+	/** The stored groups, each with its group id. */
+	private List<Group> currentGroups;
+
+	/** The new groups. */
+	private List<Group> newGroups;
+
+	/** For each new group, the index of its matched stored group, or -1. */
+	private int[] matches;
+
+	/** The stored groups that no new group was matched with. */
+	private List<Group> removedGroups = new ArrayList<>();
+
+	/** The new groups that need to be inserted. */
+	private List<Group> addedGroups = new ArrayList<>();
+
+	/** The new groups whose rows are unchanged. */
+	private List<Group> unchangedGroups = new ArrayList<>();
+
+	/** The number of students whose group changed. */
+	private int movedStudents;
+
+	/**
+	 * Constructor which computes the delta between the two groupings.
+	 *
+	 * @param currentGroups The stored groups, each with its group id.
+	 * @param newGroups The new groups.
+	 */
+	public GroupingDelta(Collection<Group> currentGroups, Collection<Group> newGroups) {
+		this.currentGroups = new ArrayList<>(currentGroups);
+		this.newGroups = new ArrayList<>(newGroups);
+
+		matchGroups();
+
+		for(int i = 0; i < matches.length; i++) {
+			Group g = this.newGroups.get(i);
+
+			if(matches[i] < 0) {
+				addedGroups.add(g);
+				movedStudents += g.getStudents().size();
+			} else {
+				Group current = this.currentGroups.get(matches[i]);
+				int joined = getJoinedStudents(i).size();
+
+				movedStudents += joined;
+				if(joined == 0 && getLeftStudents(i).isEmpty() &&
+						g.getGroupNumber() == current.getGroupNumber() &&
+						g.getIsFrontGroup() == current.getIsFrontGroup())
+					unchangedGroups.add(g);
+			}
+		}
+	}
+
+	/**
+	 * Greedily pairs new groups with stored groups, largest overlap first.
+	 * Groups without any shared student are left unmatched.
+	 */
+	private void matchGroups() {
+		matches = new int[newGroups.size()];
+		Arrays.fill(matches, -1);
+
+		List<int[]> candidates = new ArrayList<>();
+		for(int i = 0; i < newGroups.size(); i++) {
+			Set<Integer> ids = getIds(newGroups.get(i));
+
+			for(int j = 0; j < currentGroups.size(); j++) {
+				int overlap = 0;
+				for(Student s: currentGroups.get(j).getStudents()) {
+					if(ids.contains(s.getId()))
+						overlap++;
+				}
+				if(overlap > 0)
+					candidates.add(new int[] { overlap, i, j });
+			}
+		}
+
+		Collections.sort(candidates, (a, b) -> b[0] - a[0]);
+
+		boolean[] used = new boolean[currentGroups.size()];
+		for(int[] c: candidates) {
+			if(matches[c[1]] < 0 && !used[c[2]]) {
+				matches[c[1]] = c[2];
+				used[c[2]] = true;
+			}
+		}
+
+		for(int j = 0; j < currentGroups.size(); j++) {
+			if(!used[j])
+				removedGroups.add(currentGroups.get(j));
+		}
+	}
+
+	/**
+	 * Returns the ids of the students in a group.
+	 *
+	 * @param group The group.
+	 * @return The set of student ids.
+	 */
+	private static Set<Integer> getIds(Group group) {
+		Set<Integer> ids = new HashSet<>();
+		for(Student s: group.getStudents())
+			ids.add(s.getId());
+		return ids;
+	}
+
+	/**
+	 * Returns the stored group matched with a new group.
+	 *
+	 * @param newIndex The index of the new group.
+	 * @return The matched stored group, or null if the new group is added.
+	 */
+	Group getMatch(int newIndex) {
+		return matches[newIndex] < 0 ? null : currentGroups.get(matches[newIndex]);
+	}
+
+	/**
+	 * Returns the students of a new group that were not in its matched group.
+	 *
+	 * @param newIndex The index of the new group.
+	 * @return The students who joined the group.
+	 */
+	List<Student> getJoinedStudents(int newIndex) {
+		Group current = getMatch(newIndex);
+		Set<Integer> ids = current == null ? Collections.<Integer>emptySet() : getIds(current);
+
+		List<Student> joined = new ArrayList<>();
+		for(Student s: newGroups.get(newIndex).getStudents()) {
+			if(!ids.contains(s.getId()))
+				joined.add(s);
+		}
+		return joined;
+	}
+
+	/**
+	 * Returns the students of a matched stored group that are not in the new group.
+	 *
+	 * @param newIndex The index of the new group.
+	 * @return The students who left the group.
+	 */
+	List<Student> getLeftStudents(int newIndex) {
+		Group current = getMatch(newIndex);
+		if(current == null)
+			return Collections.emptyList();
+
+		Set<Integer> ids = getIds(newGroups.get(newIndex));
+
+		List<Student> left = new ArrayList<>();
+		for(Student s: current.getStudents()) {
+			if(!ids.contains(s.getId()))
+				left.add(s);
+		}
+		return left;
+	}
+
+	/**
+	 * Returns the new groups, in the order they were given.
+	 *
+	 * @return The new groups.
+	 */
+	List<Group> getNewGroups() {
+		return newGroups;
+	}
+
+	/**
+	 * Returns the stored groups that are deleted.
+	 *
+	 * @return The removed groups.
+	 */
+	public List<Group> getRemovedGroups() {
+		return removedGroups;
+	}
+
+	/**
+	 * Returns the new groups that are inserted.
+	 *
+	 * @return The added groups.
+	 */
+	public List<Group> getAddedGroups() {
+		return addedGroups;
+	}
+
+	/**
+	 * Returns the new groups that need no writes at all.
+	 *
+	 * @return The unchanged groups.
+	 */
+	public List<Group> getUnchangedGroups() {
+		return unchangedGroups;
+	}
+
+	/**
+	 * Returns the number of students whose group changed.
+	 *
+	 * @return The number of moved students.
+	 */
+	public int getMovedStudents() {
+		return movedStudents;
+	}
+
+	/**
+	 * Returns whether or not the new grouping matches the stored one exactly.
+	 *
+	 * @return True if nothing needs to be written, otherwise false.
+	 */
+	public boolean isEmpty() {
+		return removedGroups.isEmpty() && unchangedGroups.size() == newGroups.size();
+	}
+}
@@ -0,0 +1,385 @@
+package data;
+
+import java.lang.reflect.*;
+import java.sql.*;
+
+/**
+ * The InstrumentedConnection class wraps a JDBC Connection, and the
+ * statements and result sets created from it, in dynamic proxies that
+ * report to a QueryMetrics. Only the calls that are measured are
+ * intercepted; everything else goes straight to the driver.
+ * 
+ * A query is timed from its execution until its result set is closed or
+ * read to the end, since SQLite does most of a query's work while its
+ * rows are stepped through. A transaction is timed from its first
+ * statement until it is committed or rolled back. A statement that fails
+ * because the database is busy or locked is retried a few times with a
+ * growing wait before the failure is passed on; batches are never retried
+ * since part of one may already have been applied.
+ * 
+ * @author Joseph Stewart
+ */
+final class InstrumentedConnection implements InvocationHandler {
+	
+	/** SQLite's primary result codes for a busy and a locked database. */
+	private final static int SQLITE_BUSY = 5, SQLITE_LOCKED = 6;
+	
+	/** The milliseconds waited before the first busy retry. */
+	private final static long BUSY_WAIT_MILLIS = 10;
+	
+	/** The driver's connection. */
+	private final Connection connection;
+	
+	/** The metrics being collected. */
+	private final QueryMetrics metrics;
+	
+	/** The proxy handed out in place of the driver's connection. */
+	private Connection proxy;
+	
+	/** Whether or not the connection commits after every statement. */
+	private boolean autoCommit;
+	
+	/** When the open transaction's first statement ran, or 0 if none is open. */
+	private long transactionStart;
+	
+	/**
+	 * Constructor which wraps a driver connection.
+	 * 
+	 * @param connection The driver's connection.
+	 * @param metrics The metrics being collected.
+	 * @throws SQLException Thrown if the connection's state cannot be read.
+	 */
+	private InstrumentedConnection(Connection connection, QueryMetrics metrics) throws SQLException {
+		this.connection = connection;
+		this.metrics = metrics;
+		this.autoCommit = connection.getAutoCommit();
+	}
+	
+	/**
+	 * Returns a connection that reports to the metrics.
+	 * 
+	 * @param connection The driver's connection.
+	 * @param metrics The metrics being collected.
+	 * @return The instrumented connection.
+	 * @throws SQLException Thrown if the connection's state cannot be read.
+	 */
+	static Connection wrap(Connection connection, QueryMetrics metrics) throws SQLException {
+		InstrumentedConnection handler = new InstrumentedConnection(connection, metrics);
+		handler.proxy = (Connection) Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(), 
+				new Class<?>[] { Connection.class }, handler);
+		return handler.proxy;
+	}
+	
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch(method.getName()) {
+		case "equals": return proxy == args[0];
+		case "hashCode": return System.identityHashCode(proxy);
+		case "createStatement": 
+			return wrapStatement(Statement.class, (Statement) call(connection, method, args), null);
+		case "prepareStatement": 
+			return wrapStatement(PreparedStatement.class, (Statement) call(connection, method, args), (String) args[0]);
+		case "prepareCall": 
+			return wrapStatement(CallableStatement.class, (Statement) call(connection, method, args), (String) args[0]);
+		case "setAutoCommit": 
+			synchronized(this) {
+				call(connection, method, args);
+				if((Boolean) args[0] && !autoCommit)
+					endTransaction();
+				autoCommit = (Boolean) args[0];
+			}
+			return null;
+		case "commit":
+		case "rollback":
+			synchronized(this) {
+				Object result = call(connection, method, args);
+				// Rolling back to a savepoint leaves the transaction open
+				if(args == null || args.length == 0)
+					endTransaction();
+				return result;
+			}
+		default: return call(connection, method, args);
+		}
+	}
+	
+	/**
+	 * Notes that a statement is running, starting the transaction clock if
+	 * it is the first statement of a transaction.
+	 */
+	private synchronized void startStatement() {
+		if(!autoCommit && transactionStart == 0)
+			transactionStart = System.nanoTime();
+	}
+	
+	/**
+	 * Records the open transaction, if any, as finished.
+	 */
+	private void endTransaction() {
+		if(transactionStart != 0) {
+			metrics.recordTransaction(System.nanoTime() - transactionStart);
+			transactionStart = 0;
+		}
+	}
+	
+	/**
+	 * Wraps a statement in a proxy that reports to the metrics.
+	 * 
+	 * @param type The statement interface.
+	 * @param statement The driver's statement.
+	 * @param sql The prepared statement's SQL, or null for a plain statement.
+	 * @return The instrumented statement.
+	 */
+	private Object wrapStatement(Class<?> type, Statement statement, String sql) {
+		return Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(), new Class<?>[] { type }, 
+				new StatementHandler(statement, sql));
+	}
+	
+	/**
+	 * Calls a method on the driver's object, unwrapping the exception it throws.
+	 * 
+	 * @param target The driver's object.
+	 * @param method The method.
+	 * @param args The arguments.
+	 * @return The method's result.
+	 * @throws Throwable The exception the method threw.
+	 */
+	private static Object call(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Returns whether or not an exception means the database was busy or locked.
+	 * 
+	 * @param e The exception.
+	 * @return True if the statement can be retried, otherwise false.
+	 */
+	private static boolean isBusy(Throwable e) {
+		if(!(e instanceof SQLException))
+			return false;
+		
+		int code = ((SQLException) e).getErrorCode() & 0xff;
+		String message = e.getMessage();
+		return code == SQLITE_BUSY || code == SQLITE_LOCKED || 
+				(message != null && (message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED")));
+	}
+	
+	/**
+	 * The StatementHandler class times the executions of one statement.
+	 */
+	private class StatementHandler implements InvocationHandler {
+		
+		/** The driver's statement. */
+		private final Statement statement;
+		
+		/** The prepared statement's SQL, or null for a plain statement. */
+		private final String sql;
+		
+		/** The SQL of the last plain statement executed, for its result set. */
+		private String lastSql;
+		
+		/** When the last execution started. */
+		private long lastStart;
+		
+		/** The result set still being read, or null. */
+		private ResultSetHandler open;
+		
+		/**
+		 * Constructor which wraps a driver statement.
+		 * 
+		 * @param statement The driver's statement.
+		 * @param sql The prepared statement's SQL, or null for a plain statement.
+		 */
+		StatementHandler(Statement statement, String sql) {
+			this.statement = statement;
+			this.sql = sql;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			switch(name) {
+			case "equals": return proxy == args[0];
+			case "hashCode": return System.identityHashCode(proxy);
+			case "getConnection": return InstrumentedConnection.this.proxy;
+			case "close": 
+				finishOpen();
+				return call(statement, method, args);
+			case "getResultSet":
+				ResultSet results = (ResultSet) call(statement, method, args);
+				return results == null ? null : wrapResultSet(proxy, results);
+			case "executeQuery":
+				finishOpen();
+				lastSql = args != null && args.length > 0 ? (String) args[0] : sql;
+				lastStart = System.nanoTime();
+				return wrapResultSet(proxy, (ResultSet) execute(method, args, true));
+			case "executeUpdate":
+			case "executeLargeUpdate":
+			case "execute": {
+				finishOpen();
+				lastSql = args != null && args.length > 0 ? (String) args[0] : sql;
+				lastStart = System.nanoTime();
+				Object result = execute(method, args, true);
+				
+				long rows = -1;
+				if(result instanceof Number) {
+					rows = ((Number) result).longValue();
+					metrics.recordRowsWritten(Math.max(0, rows));
+				}
+				// A statement with rows to read is recorded when they have been read
+				if(!Boolean.TRUE.equals(result))
+					metrics.recordStatement(lastSql, System.nanoTime() - lastStart, rows);
+				return result;
+			}
+			case "executeBatch":
+			case "executeLargeBatch": {
+				finishOpen();
+				long start = System.nanoTime();
+				Object result = execute(method, args, false);
+				
+				long rows = 0;
+				int length = java.lang.reflect.Array.getLength(result);
+				for(int i = 0; i < length; i++)
+					rows += Math.max(0, ((Number) java.lang.reflect.Array.get(result, i)).longValue());
+				metrics.recordRowsWritten(rows);
+				metrics.recordStatement(sql, System.nanoTime() - start, rows);
+				return result;
+			}
+			default: return call(statement, method, args);
+			}
+		}
+		
+		/**
+		 * Runs an execute method, retrying it while the database is busy if allowed.
+		 * 
+		 * @param method The execute method.
+		 * @param args The arguments.
+		 * @param retry Whether or not the execution may be retried.
+		 * @return The method's result.
+		 * @throws Throwable The exception the method threw.
+		 */
+		private Object execute(Method method, Object[] args, boolean retry) throws Throwable {
+			startStatement();
+			
+			for(int attempt = 0; ; attempt++) {
+				try {
+					return call(statement, method, args);
+				} catch (Throwable e) {
+					if(!isBusy(e))
+						throw e;
+					if(!retry || attempt >= metrics.getMaximumBusyRetries()) {
+						metrics.recordBusyFailure();
+						throw e;
+					}
+					
+					metrics.recordBusyRetry();
+					try {
+						Thread.sleep(BUSY_WAIT_MILLIS << attempt);
+					} catch (InterruptedException interrupted) {
+						Thread.currentThread().interrupt();
+						throw e;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Wraps the result set of the last execution.
+		 * 
+		 * @param statementProxy The proxy of this statement.
+		 * @param results The driver's result set.
+		 * @return The instrumented result set.
+		 */
+		private ResultSet wrapResultSet(Object statementProxy, ResultSet results) {
+			finishOpen();
+			open = new ResultSetHandler(results, statementProxy, lastSql, lastStart);
+			return (ResultSet) Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(), 
+					new Class<?>[] { ResultSet.class }, open);
+		}
+		
+		/**
+		 * Records the result set still being read, since closing or
+		 * re-executing the statement closes it.
+		 */
+		private void finishOpen() {
+			if(open != null) {
+				open.finish();
+				open = null;
+			}
+		}
+	}
+	
+	/**
+	 * The ResultSetHandler class counts the rows read from one result set
+	 * and records its query once the rows are read or the set is closed.
+	 */
+	private class ResultSetHandler implements InvocationHandler {
+		
+		/** The driver's result set. */
+		private final ResultSet results;
+		
+		/** The proxy of the statement the result set came from. */
+		private final Object statementProxy;
+		
+		/** The query. */
+		private final String sql;
+		
+		/** When the query started. */
+		private final long start;
+		
+		/** The rows read so far. */
+		private long rows;
+		
+		/** Whether or not the query has been recorded. */
+		private boolean finished;
+		
+		/**
+		 * Constructor which wraps a driver result set.
+		 * 
+		 * @param results The driver's result set.
+		 * @param statementProxy The proxy of the statement it came from.
+		 * @param sql The query.
+		 * @param start When the query started.
+		 */
+		ResultSetHandler(ResultSet results, Object statementProxy, String sql, long start) {
+			this.results = results;
+			this.statementProxy = statementProxy;
+			this.sql = sql;
+			this.start = start;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+			case "equals": return proxy == args[0];
+			case "hashCode": return System.identityHashCode(proxy);
+			case "getStatement": return statementProxy;
+			case "next":
+				Object hasNext = call(results, method, args);
+				if((Boolean) hasNext)
+					rows++;
+				else
+					finish();
+				return hasNext;
+			case "close": 
+				finish();
+				return call(results, method, args);
+			default: return call(results, method, args);
+			}
+		}
+		
+		/**
+		 * Records the query and its rows, once.
+		 */
+		void finish() {
+			if(finished)
+				return;
+			finished = true;
+			metrics.recordRowsRead(rows);
+			metrics.recordStatement(sql, System.nanoTime() - start, rows);
+		}
+	}
+}
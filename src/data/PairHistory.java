@@ -0,0 +1,121 @@
+package data;
+
+import java.sql.*;
+import java.util.*;
+
+import model.*;
+
+/**
+ * The PairHistory class is the in-memory view of the pairHistory table. It
+ * records how many times two students have been placed in the same group
+ * and when that last happened, so "who has already worked with whom" can be
+ * answered without joining groupAssignments with itself.
+ *
+ * Pairs are unordered; the smaller student id is always stored first.
+ *
+ * @author Joseph Stewart
+ */
+public class PairHistory {
+
+	/** The number of times each pair has been grouped, keyed by packed pair. */
+	private Map<Long, Integer> counts = new HashMap<>();
+
+	/** The date each pair was last grouped, keyed by packed pair. */
+	private Map<Long, String> lastGroupedAt = new HashMap<>();
+
+	/**
+	 * Loads the pair history of the given students with one indexed query.
+	 * Only pairs where both students are in the collection are loaded.
+	 *
+	 * @param connection The database connection.
+	 * @param students The students whose pair history is needed.
+	 * @return The loaded pair history.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public static PairHistory load(Connection connection, Collection<Student> students) throws SQLException {
+		PairHistory history = new PairHistory();
+
+		if(students.isEmpty())
+			return history;
+
+		StringBuilder ids = new StringBuilder();
+		for(Student s: students) {
+			if(ids.length() > 0)
+				ids.append(", ");
+			ids.append(s.getId());
+		}
+
+		String query = "SELECT " + Database.STUDENT_1_ID + ", " + Database.STUDENT_2_ID + ", " +
+				Database.PAIR_COUNT + ", " + Database.LAST_GROUPED_AT +
+				" FROM " + Database.PAIR_HISTORY_TABLE +
+				" WHERE " + Database.STUDENT_1_ID + " IN (" + ids + ")" +
+				" AND " + Database.STUDENT_2_ID + " IN (" + ids + ");";
+
+		try(Statement statement = connection.createStatement();
+				ResultSet results = statement.executeQuery(query)) {
+			while(results.next()) {
+				long key = key(results.getInt(1), results.getInt(2));
+				history.counts.put(key, results.getInt(3));
+				history.lastGroupedAt.put(key, results.getString(4));
+			}
+		}
+		return history;
+	}
+
+	/**
+	 * Packs an unordered pair of student ids into a single key.
+	 *
+	 * @param student1Id The id of one student.
+	 * @param student2Id The id of the other student.
+	 * @return The key for the pair.
+	 */
+	static long key(int student1Id, int student2Id) {
+		int low = Math.min(student1Id, student2Id);
+		int high = Math.max(student1Id, student2Id);
+		return ((long) low << 32) | (high & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the number of times two students have been in the same group.
+	 *
+	 * @param s1 One student.
+	 * @param s2 The other student.
+	 * @return The number of times they were grouped together.
+	 */
+	public int getCount(Student s1, Student s2) {
+		Integer count = counts.get(key(s1.getId(), s2.getId()));
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Returns the date two students were last in the same group.
+	 *
+	 * @param s1 One student.
+	 * @param s2 The other student.
+	 * @return The date last grouped, or null if they never were.
+	 */
+	public String getLastGroupedAt(Student s1, Student s2) {
+		return lastGroupedAt.get(key(s1.getId(), s2.getId()));
+	}
+
+	/**
+	 * Records the pairs of a newly saved grouping so this view stays in
+	 * step with the table without reloading it.
+	 *
+	 * @param groups The groups that were saved.
+	 */
+	public void record(Collection<Group> groups) {
+		for(Group g: groups) {
+			List<Student> members = new ArrayList<>(g.getStudents());
+
+			for(int i = 0; i < members.size(); i++) {
+				for(int j = i + 1; j < members.size(); j++) {
+					long key = key(members.get(i).getId(), members.get(j).getId());
+					Integer count = counts.get(key);
+					counts.put(key, count == null ? 1 : count + 1);
+					lastGroupedAt.put(key, g.getDateCreated());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package data;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The QueryMetrics class collects what a Database connection spends its
+ * time on: a latency histogram per kind of statement, the rows read and
+ * written, how long transactions stay open, and how often a statement had
+ * to be retried because the database was busy or locked. Statements slower
+ * than a threshold are also written to a slow-query log, so a slow regroup
+ * can be traced to storage or ruled out.
+ * 
+ * Statements are grouped by their first keyword and the table they name,
+ * such as "SELECT groups", so statements built with different ids share
+ * one histogram. Every method is safe to call from several threads.
+ * 
+ * @author Joseph Stewart
+ */
+public class QueryMetrics {
+	
+	/** Default number of milliseconds above which a statement is logged. */
+	public final static long DEFAULT_SLOW_QUERY_MILLIS = 100;
+	
+	/** Default number of times a busy statement is retried. */
+	public final static int DEFAULT_MAXIMUM_BUSY_RETRIES = 3;
+	
+	/** The number of histogram buckets; bucket i holds latencies below 2^i microseconds. */
+	public final static int BUCKET_COUNT = 24;
+	
+	/** The latency histograms, keyed by statement kind. */
+	private final ConcurrentMap<String, Histogram> statements = new ConcurrentHashMap<>();
+	
+	/** The durations of committed and rolled back transactions. */
+	private final Histogram transactions = new Histogram();
+	
+	/** The number of rows read from result sets. */
+	private final LongAdder rowsRead = new LongAdder();
+	
+	/** The number of rows inserted, updated or deleted. */
+	private final LongAdder rowsWritten = new LongAdder();
+	
+	/** The number of times a statement was retried because the database was busy. */
+	private final LongAdder busyRetries = new LongAdder();
+	
+	/** The number of statements that were still busy after every retry. */
+	private final LongAdder busyFailures = new LongAdder();
+	
+	/** The number of statements written to the slow-query log. */
+	private final LongAdder slowQueries = new LongAdder();
+	
+	/** The nanoseconds above which a statement is logged. */
+	private volatile long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_QUERY_MILLIS);
+	
+	/** Where slow statements are logged, or null to only count them. */
+	private volatile PrintStream slowQueryLog = System.err;
+	
+	/** The number of times a busy statement is retried. */
+	private volatile int maximumBusyRetries = DEFAULT_MAXIMUM_BUSY_RETRIES;
+	
+	/**
+	 * The Histogram class counts latencies in buckets that double in width,
+	 * along with their count, total and maximum.
+	 */
+	public static class Histogram {
+		
+		/** The number of latencies in each bucket. */
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+		
+		/** The number of latencies recorded. */
+		private final LongAdder count = new LongAdder();
+		
+		/** The sum of the latencies in nanoseconds. */
+		private final LongAdder totalNanos = new LongAdder();
+		
+		/** The largest latency in nanoseconds. */
+		private final AtomicLong maximumNanos = new AtomicLong();
+		
+		/**
+		 * Records one latency.
+		 * 
+		 * @param nanos The latency in nanoseconds.
+		 */
+		void record(long nanos) {
+			long micros = Math.max(0, nanos / 1000);
+			int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+			buckets.incrementAndGet(bucket);
+			count.increment();
+			totalNanos.add(nanos);
+			
+			long maximum;
+			while(nanos > (maximum = maximumNanos.get()) && !maximumNanos.compareAndSet(maximum, nanos));
+		}
+		
+		/**
+		 * Returns the number of latencies recorded.
+		 * 
+		 * @return The count.
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+		
+		/**
+		 * Returns the sum of the latencies.
+		 * 
+		 * @return The total in milliseconds.
+		 */
+		public double getTotalMillis() {
+			return totalNanos.sum() / 1e6;
+		}
+		
+		/**
+		 * Returns the largest latency.
+		 * 
+		 * @return The maximum in milliseconds.
+		 */
+		public double getMaximumMillis() {
+			return maximumNanos.get() / 1e6;
+		}
+		
+		/**
+		 * Returns an upper bound on the given percentile, the upper edge
+		 * of the bucket it falls in.
+		 * 
+		 * @param percentile The percentile, from 0 to 100.
+		 * @return The percentile in milliseconds, or 0 if nothing was recorded.
+		 */
+		public double getPercentileMillis(double percentile) {
+			long total = 0;
+			for(int i = 0; i < BUCKET_COUNT; i++)
+				total += buckets.get(i);
+			if(total == 0)
+				return 0;
+			
+			long rank = (long) Math.ceil(total * percentile / 100);
+			long seen = 0;
+			for(int i = 0; i < BUCKET_COUNT - 1; i++) {
+				seen += buckets.get(i);
+				if(seen >= rank)
+					return (1L << i) / 1000.0;
+			}
+			return getMaximumMillis();
+		}
+		
+		/**
+		 * Returns the number of latencies in each bucket.
+		 * 
+		 * @return The bucket counts; bucket i holds latencies below 2^i microseconds.
+		 */
+		public long[] getBuckets() {
+			long[] counts = new long[BUCKET_COUNT];
+			for(int i = 0; i < BUCKET_COUNT; i++)
+				counts[i] = buckets.get(i);
+			return counts;
+		}
+	}
+	
+	/**
+	 * Records the execution of a statement and logs it if it was slow.
+	 * 
+	 * @param sql The statement.
+	 * @param nanos The time it took in nanoseconds.
+	 * @param rows The rows it read or wrote, or -1 if unknown.
+	 */
+	void recordStatement(String sql, long nanos, long rows) {
+		String key = getStatementKey(sql);
+		Histogram histogram = statements.get(key);
+		if(histogram == null) {
+			histogram = new Histogram();
+			Histogram existing = statements.putIfAbsent(key, histogram);
+			if(existing != null)
+				histogram = existing;
+		}
+		histogram.record(nanos);
+		
+		if(nanos >= slowQueryNanos) {
+			slowQueries.increment();
+			PrintStream log = slowQueryLog;
+			if(log != null)
+				log.println(String.format("Slow query (%.1f ms, %s rows): %s", nanos / 1e6, 
+						rows < 0 ? "?" : String.valueOf(rows), sql));
+		}
+	}
+	
+	/**
+	 * Records rows read from a result set.
+	 * 
+	 * @param rows The number of rows.
+	 */
+	void recordRowsRead(long rows) {
+		rowsRead.add(rows);
+	}
+	
+	/**
+	 * Records rows inserted, updated or deleted.
+	 * 
+	 * @param rows The number of rows.
+	 */
+	void recordRowsWritten(long rows) {
+		rowsWritten.add(rows);
+	}
+	
+	/**
+	 * Records the duration of a finished transaction.
+	 * 
+	 * @param nanos The time from its first statement to its commit or rollback.
+	 */
+	void recordTransaction(long nanos) {
+		transactions.record(nanos);
+	}
+	
+	/** Records that a busy statement was retried. */
+	void recordBusyRetry() {
+		busyRetries.increment();
+	}
+	
+	/** Records that a statement was still busy after every retry. */
+	void recordBusyFailure() {
+		busyFailures.increment();
+	}
+	
+	/**
+	 * Returns the latency histograms by statement kind.
+	 * 
+	 * @return The histograms, sorted by statement kind.
+	 */
+	public SortedMap<String, Histogram> getStatements() {
+		return new TreeMap<>(statements);
+	}
+	
+	/**
+	 * Returns the durations of finished transactions.
+	 * 
+	 * @return The transaction histogram.
+	 */
+	public Histogram getTransactions() {
+		return transactions;
+	}
+	
+	/**
+	 * Returns the number of rows read from result sets.
+	 * 
+	 * @return The rows read.
+	 */
+	public long getRowsRead() {
+		return rowsRead.sum();
+	}
+	
+	/**
+	 * Returns the number of rows inserted, updated or deleted.
+	 * 
+	 * @return The rows written.
+	 */
+	public long getRowsWritten() {
+		return rowsWritten.sum();
+	}
+	
+	/**
+	 * Returns the number of times a statement was retried because the
+	 * database was busy or locked.
+	 * 
+	 * @return The busy retries.
+	 */
+	public long getBusyRetries() {
+		return busyRetries.sum();
+	}
+	
+	/**
+	 * Returns the number of statements that failed because the database
+	 * was still busy after every retry.
+	 * 
+	 * @return The busy failures.
+	 */
+	public long getBusyFailures() {
+		return busyFailures.sum();
+	}
+	
+	/**
+	 * Returns the number of statements that were slower than the threshold.
+	 * 
+	 * @return The slow statements.
+	 */
+	public long getSlowQueries() {
+		return slowQueries.sum();
+	}
+	
+	/**
+	 * Returns the number of times a busy statement is retried.
+	 * 
+	 * @return The maximum busy retries.
+	 */
+	public int getMaximumBusyRetries() {
+		return maximumBusyRetries;
+	}
+	
+	/**
+	 * Sets the threshold above which statements are logged.
+	 * 
+	 * @param millis The threshold in milliseconds.
+	 */
+	public void setSlowQueryThreshold(long millis) {
+		slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	/**
+	 * Sets where slow statements are logged.
+	 * 
+	 * @param log The log, or null to only count slow statements.
+	 */
+	public void setSlowQueryLog(PrintStream log) {
+		slowQueryLog = log;
+	}
+	
+	/**
+	 * Sets the number of times a statement is retried when the database is
+	 * busy or locked, waiting twice as long before each retry.
+	 * 
+	 * @param retries The maximum busy retries, or zero to never retry.
+	 */
+	public void setMaximumBusyRetries(int retries) {
+		if(retries < 0)
+			throw new IllegalArgumentException("Invalid number of retries " + retries + ".");
+		maximumBusyRetries = retries;
+	}
+	
+	/**
+	 * Returns the kind of a statement: its first keyword and the table it
+	 * reads from or writes to, if any.
+	 * 
+	 * @param sql The statement.
+	 * @return The statement kind.
+	 */
+	static String getStatementKey(String sql) {
+		if(sql == null)
+			return "BATCH";
+		
+		String[] words = sql.trim().split("[\\s(),;]+");
+		if(words.length == 0 || words[0].isEmpty())
+			return "?";
+		
+		String keyword = words[0].toUpperCase(Locale.ROOT);
+		String marker;
+		switch(keyword) {
+		case "SELECT": 
+		case "DELETE": marker = "FROM";
+			break;
+		case "INSERT": 
+		case "REPLACE": marker = "INTO";
+			break;
+		case "UPDATE": return words.length > 1 ? keyword + " " + words[1] : keyword;
+		default: return keyword;
+		}
+		
+		for(int i = 1; i < words.length - 1; i++) {
+			if(words[i].equalsIgnoreCase(marker))
+				return keyword + " " + words[i + 1];
+		}
+		return keyword;
+	}
+}
@@ -0,0 +1,268 @@
+package data;
+
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The ShardedDatabase class keeps each school in its own database file, so
+ * writes for different schools never wait on the same SQLite write lock. A
+ * catalog database lists the schools and the file of each, and every shard
+ * has the usual tables, so ClassroomStore and GroupStore work on a shard's
+ * connection exactly as on the single database.
+ *
+ * Work that spans the district runs on every shard at once, one thread per
+ * shard, and each shard is only ever used by one thread at a time.
+ * Classroom, student, and group ids are only unique within a shard, so
+ * district-wide results are keyed by school id.
+ *
+ * @author Joseph Stewart
+ */
+public class ShardedDatabase {
+
+	/** The catalog file, inside the shard directory. */
+	public final static String CATALOG_FILE = "catalog.db";
+
+	/** School table and columns of the catalog. */
+	public final static String SCHOOL_TABLE = "schools";
+	public final static String SCHOOL_ID = "schoolId";
+	public final static String SCHOOL_NAME = "name";
+	public final static String SHARD_FILE = "shardFile";
+
+	/** The directory holding the catalog and shard files. */
+	private final File directory;
+
+	/** Connection to the catalog. */
+	private final Connection catalog;
+
+	/** The number of shards worked on at once. */
+	private final int parallelism;
+
+	/** The shard file of each school, keyed by school id. */
+	private final Map<Integer, String> shardFiles = new TreeMap<>();
+
+	/**
+	 * Work done on one shard.
+	 *
+	 * @param <T> The type of the result.
+	 */
+	public interface ShardTask<T> {
+
+		/**
+		 * Does the work on one shard.
+		 *
+		 * @param schoolId The id of the shard's school.
+		 * @param shard The shard.
+		 * @return The result for the shard.
+		 * @throws SQLException Thrown if there is a problem with the shard.
+		 */
+		T run(int schoolId, Database shard) throws SQLException;
+	}
+
+	/**
+	 * Constructor which opens, or creates, the catalog in a directory.
+	 *
+	 * @param directory The directory holding the catalog and shard files.
+	 * @param parallelism The number of shards worked on at once.
+	 * @throws SQLException Thrown if the catalog cannot be opened.
+	 */
+	public ShardedDatabase(File directory, int parallelism) throws SQLException {
+		this.directory = directory;
+		this.parallelism = Math.max(1, parallelism);
+
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new SQLException("Could not create " + directory);
+
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException e) {
+			throw new SQLException(e);
+		}
+		catalog = DriverManager.getConnection("jdbc:sqlite:" + new File(directory, CATALOG_FILE).getPath());
+
+		String createSchools = "CREATE TABLE IF NOT EXISTS " + SCHOOL_TABLE + " (" +
+				SCHOOL_ID + " INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT, " +
+				SCHOOL_NAME + " TEXT NOT NULL, " +
+				SHARD_FILE + " TEXT NOT NULL);";
+
+		String query = "SELECT " + SCHOOL_ID + ", " + SHARD_FILE + " FROM " + SCHOOL_TABLE + ";";
+
+		try(Statement statement = catalog.createStatement()) {
+			statement.executeUpdate(createSchools);
+			try(ResultSet results = statement.executeQuery(query)) {
+				while(results.next())
+					shardFiles.put(results.getInt(1), results.getString(2));
+			}
+		}
+	}
+
+	/**
+	 * Adds a school with a new shard.
+	 *
+	 * @param name The name of the school.
+	 * @return The id of the school.
+	 * @throws SQLException Thrown if the school cannot be added.
+	 */
+	public synchronized int addSchool(String name) throws SQLException {
+		String insert = "INSERT INTO " + SCHOOL_TABLE + " (" + SCHOOL_NAME + ", " + SHARD_FILE + ") VALUES (?, '');";
+		String update = "UPDATE " + SCHOOL_TABLE + " SET " + SHARD_FILE + " = ? WHERE " + SCHOOL_ID + " = ?;";
+
+		boolean autoCommit = catalog.getAutoCommit();
+		catalog.setAutoCommit(false);
+
+		try(PreparedStatement insertStatement = catalog.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
+				PreparedStatement updateStatement = catalog.prepareStatement(update)) {
+			insertStatement.setString(1, name);
+			insertStatement.executeUpdate();
+
+			int schoolId;
+			try(ResultSet keys = insertStatement.getGeneratedKeys()) {
+				if(!keys.next())
+					throw new SQLException("No id was generated for " + name);
+				schoolId = keys.getInt(1);
+			}
+
+			// The file is named after the id so it never depends on the school's name
+			String file = "school-" + schoolId + ".db";
+			updateStatement.setString(1, file);
+			updateStatement.setInt(2, schoolId);
+			updateStatement.executeUpdate();
+			catalog.commit();
+
+			shardFiles.put(schoolId, file);
+			return schoolId;
+		} catch (SQLException e) {
+			catalog.rollback();
+			throw e;
+		} finally {
+			catalog.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Returns the ids of all schools.
+	 *
+	 * @return The school ids in ascending order.
+	 */
+	public synchronized List<Integer> getSchoolIds() {
+		return new ArrayList<>(shardFiles.keySet());
+	}
+
+	/**
+	 * Returns the name of a school.
+	 *
+	 * @param schoolId The id of the school.
+	 * @return The name, or null if there is no school with that id.
+	 * @throws SQLException Thrown if there is a problem executing the query.
+	 */
+	public synchronized String getSchoolName(int schoolId) throws SQLException {
+		String query = "SELECT " + SCHOOL_NAME + " FROM " + SCHOOL_TABLE + " WHERE " + SCHOOL_ID + " = ?;";
+
+		try(PreparedStatement statement = catalog.prepareStatement(query)) {
+			statement.setInt(1, schoolId);
+			try(ResultSet results = statement.executeQuery()) {
+				return results.next() ? results.getString(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the shard of a school. The shard's connection must only be
+	 * used by one thread at a time, which forEachShard takes care of.
+	 *
+	 * @param schoolId The id of the school.
+	 * @return The school's shard.
+	 * @throws IllegalArgumentException Thrown if there is no school with that id.
+	 */
+	public Database getShard(int schoolId) {
+		String file;
+		synchronized(this) {
+			file = shardFiles.get(schoolId);
+		}
+		if(file == null)
+			throw new IllegalArgumentException("There is no school with id " + schoolId + ".");
+		return Database.getInstance(new File(directory, file).getPath());
+	}
+
+	/**
+	 * Runs a task on one school's shard, holding the shard for the task.
+	 *
+	 * @param schoolId The id of the school.
+	 * @param task The task.
+	 * @param <T> The type of the result.
+	 * @return The result.
+	 * @throws SQLException Thrown if the task fails.
+	 */
+	public <T> T onShard(int schoolId, ShardTask<T> task) throws SQLException {
+		Database shard = getShard(schoolId);
+		synchronized(shard) {
+			return task.run(schoolId, shard);
+		}
+	}
+
+	/**
+	 * Runs a task on every shard at once and collects the results. Every
+	 * shard is finished before the first failure, if any, is thrown.
+	 *
+	 * @param task The task.
+	 * @param <T> The type of the results.
+	 * @return The result of each shard, keyed by school id.
+	 * @throws SQLException Thrown if the task fails on any shard.
+	 */
+	public <T> Map<Integer, T> forEachShard(final ShardTask<T> task) throws SQLException {
+		List<Integer> schoolIds = getSchoolIds();
+		Map<Integer, T> results = new TreeMap<>();
+		if(schoolIds.isEmpty())
+			return results;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, schoolIds.size()));
+		try {
+			Map<Integer, Future<T>> futures = new LinkedHashMap<>();
+			for(final int schoolId: schoolIds)
+				futures.put(schoolId, executor.submit(() -> onShard(schoolId, task)));
+
+			SQLException failure = null;
+			for(Map.Entry<Integer, Future<T>> e: futures.entrySet()) {
+				try {
+					results.put(e.getKey(), e.getValue().get());
+				} catch (ExecutionException ex) {
+					SQLException shardFailure = new SQLException("School " + e.getKey() + " failed.", ex.getCause());
+					if(failure == null)
+						failure = shardFailure;
+					else
+						failure.setNextException(shardFailure);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for the shards.", ex);
+				}
+			}
+
+			if(failure != null)
+				throw failure;
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the classroom ids of every school, queried on all shards at once.
+	 *
+	 * @return The classroom ids of each school, keyed by school id.
+	 * @throws SQLException Thrown if any shard cannot be queried.
+	 */
+	public Map<Integer, List<Integer>> loadClassroomIds() throws SQLException {
+		return forEachShard((schoolId, shard) -> new ClassroomStore(shard.getConnection()).loadClassroomIds());
+	}
+
+	/**
+	 * Closes the catalog connection. Shard connections stay open with their
+	 * Database instances.
+	 *
+	 * @throws SQLException Thrown if the catalog cannot be closed.
+	 */
+	public synchronized void close() throws SQLException {
+		catalog.close();
+	}
+}
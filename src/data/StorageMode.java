@@ -0,0 +1,36 @@
+package data;
+
+/**
+ * The StorageMode enum decides where the Database keeps its working copy.
+ * 
+ * @author Joseph Stewart
+ */
+public enum StorageMode {
+	
+	/** Every read and write goes straight to the database file. */
+	FILE,
+	
+	/** 
+	 * The database file is loaded into memory at startup, and the memory
+	 * copy is written back to the file at checkpoints and on shutdown.
+	 */
+	MEMORY;
+	
+	/**
+	 * A String representation of the storage mode.
+	 * 
+	 * @return The String representation.
+	 */
+	@Override
+	public String toString() {
+		String mode = null;
+		
+		switch(this) {
+		case FILE: mode = "File";
+			break;
+		case MEMORY: mode = "Memory";
+			break;
+		}
+		return mode;
+	}
+}
@@ -16,8 +16,8 @@ public class Classroom extends Model {
 	/** The maximum number of groups located at the front of the classroom. */
 	private int maximumFrontGroups;		
 	
-	/** The groups of students. */
-	private Collection<Group> groups = new ArrayList<>();
+	/** The current groups of students and the most recent groupings before them. */
+	private GroupingHistory history = new GroupingHistory();
 	
 	/**
 	 * Default constructor which sets the max front groups to 10
@@ -51,13 +51,22 @@ public class Classroom extends Model {
 	}
 		
 	/**
-	 * This method returns the groups of students.
+	 * This method returns the current groups of students.
 	 * 
 	 * @return The collection of groups is returned.
 	 */	
  	public Collection<Group> getGroups() {
-		return groups;
+		return history.getCurrent();
 	}
+ 	
+	/**
+	 * This method returns the classroom's grouping history.
+	 * 
+	 * @return The grouping history.
+	 */	
+ 	public GroupingHistory getHistory() {
+ 		return history;
+ 	}
 		
 	/**
 	 * This method returns the maximum number of groups that
@@ -79,12 +88,13 @@ public class Classroom extends Model {
 	}
 			
 	/**
-	 * This method sets the groups for this classroom.
+	 * This method sets the current groups for this classroom. The
+	 * previous groups are kept in the grouping history.
 	 * 
-	 * @param groupList The collection of groups.
+	 * @param groups The collection of groups.
 	 */	
 	public void setGroups(Collection<Group> groups) {
-		this.groups = groups;
+		history.setCurrent(groups);
 	}
 	
 	/**
@@ -110,7 +120,8 @@ public class Classroom extends Model {
 		
 	/**
 	 * This method compares this classroom to another
-	 * classroom. 
+	 * classroom. Only the current groups are compared, not
+	 * the grouping history.
 	 * 
 	 * @param object The other classroom to be compared.
 	 * @return True if fields match, otherwise false.
@@ -122,7 +133,7 @@ public class Classroom extends Model {
 		return( this.title.equals(otherClassroom.getTitle()) &&
 				this.maximumFrontGroups == otherClassroom.getMaximumFrontGroups() &&
 				this.students.equals(otherClassroom.getStudents()) &&
-				this.groups.equals(otherClassroom.getGroups()));
+				this.getGroups().equals(otherClassroom.getGroups()));
 	}
 	
 	/**
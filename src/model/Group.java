@@ -1,6 +1,6 @@
 package model;
 
-import java.text.SimpleDateFormat;
+import java.text.*;
 import java.util.*;
 
 /**
@@ -11,6 +11,10 @@ import java.util.*;
  */
 public class Group extends Model {
 	
+	/** The format of the date a Group was created, one per thread since SimpleDateFormat is not thread safe. */
+	private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = 
+			ThreadLocal.withInitial(() -> new SimpleDateFormat("MM/dd/yyyy hh:mm a"));
+	
 	/** The group number. */
 	private int groupNumber;
 	
@@ -20,6 +24,9 @@ public class Group extends Model {
 	/** The date this Group was created. */
 	private String dateCreated;
 	
+	/** The id of the saved grouping this Group belongs to, or zero if it has not been saved. */
+	private int groupingId;
+	
 	/** Default Constructor. */
 	public Group() { 		
 		setDate();	 
@@ -32,7 +39,7 @@ public class Group extends Model {
 	 */
 	public Group(Collection<Student> students) {			
 		setDate();		
-		this.students = (Set<Student>) students;		
+		this.students = new HashSet<>(students);		
 	}
 		
 	/**
@@ -45,6 +52,16 @@ public class Group extends Model {
 		return dateCreated;
 	}
 
+	/**
+	 * This method returns the id of the saved grouping this group
+	 * belongs to, which is shared by every group of that grouping.
+	 * 
+	 * @return The grouping id, or zero if the group has not been saved.
+	 */	
+	public int getGroupingId() {
+		return groupingId;
+	}
+
 	/**
 	 * This method returns the group number.
 	 * 
@@ -69,8 +86,18 @@ public class Group extends Model {
 	 * 
 	 */	
 	private void setDate() {		
-		SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm a");        
- 	    dateCreated = dateFormat.format(new Date());
+		dateCreated = DATE_FORMAT.get().format(new Date());
+	}
+	
+	/**
+	 * Parses a date created in the format this class writes.
+	 * 
+	 * @param date The date created.
+	 * @return The date.
+	 * @throws ParseException Thrown if the date is not in the expected format.
+	 */	
+	public static Date parseDateCreated(String date) throws ParseException {
+		return DATE_FORMAT.get().parse(date);
 	}
 	
 	/**
@@ -82,6 +109,15 @@ public class Group extends Model {
 		this.dateCreated = date;
 	}
 
+	/**
+	 * Sets the id of the saved grouping this group belongs to.
+	 * 
+	 * @param groupingId The grouping id.
+	 */	
+	public void setGroupingId(int groupingId) {
+		this.groupingId = groupingId;
+	}
+
 	/**
 	 * This method sets the group number for this group.
 	 * 
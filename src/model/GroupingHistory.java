@@ -0,0 +1,155 @@
+package model;
+
+import java.util.*;
+
+/**
+ * The GroupingHistory class holds a classroom's groupings: the current
+ * one and a bounded window of the most recent ones before it. Setting a
+ * new current grouping moves the old one into the window and drops the
+ * oldest grouping from memory once the window is full, so a classroom
+ * uses the same memory no matter how often it has been regrouped.
+ * 
+ * Older groupings are paged in from storage through a GroupingLoader when
+ * asked for and are not kept. Index 0 is always the current grouping, and
+ * every grouping set on the classroom is expected to have been saved, so
+ * the same index finds the same grouping in memory and in storage. A
+ * grouping saved as changes to the current one keeps its grouping id and
+ * replaces the current grouping in storage, so it replaces it in memory
+ * too instead of pushing it into the window.
+ * 
+ * @author Joseph Stewart
+ */
+public class GroupingHistory {
+	
+	/** Default number of recent groupings kept besides the current one. */
+	public final static int DEFAULT_WINDOW = 3;
+	
+	/** The current grouping. */
+	private Collection<Group> current = new ArrayList<>();
+	
+	/** The recent groupings, most recent first. */
+	private LinkedList<Collection<Group>> recent = new LinkedList<>();
+	
+	/** The number of recent groupings kept. */
+	private int window;
+	
+	/** Pages older groupings in, or null if there is no storage. */
+	private GroupingLoader loader;
+	
+	/** Default Constructor which keeps the default window. */
+	public GroupingHistory() {
+		this(DEFAULT_WINDOW);
+	}
+	
+	/**
+	 * Constructor which sets the number of recent groupings kept.
+	 * 
+	 * @param window The number of recent groupings kept besides the current one.
+	 */
+	public GroupingHistory(int window) {
+		if(window < 0)
+			throw new IllegalArgumentException("Invalid window " + window + ".");
+		this.window = window;
+	}
+	
+	/**
+	 * This method returns the current grouping.
+	 * 
+	 * @return The current groups.
+	 */
+	public Collection<Group> getCurrent() {
+		return current;
+	}
+	
+	/**
+	 * This method returns the recent groupings held in memory, most recent first.
+	 * 
+	 * @return The recent groupings, not including the current one.
+	 */
+	public List<Collection<Group>> getRecent() {
+		return Collections.unmodifiableList(recent);
+	}
+	
+	/**
+	 * This method returns the number of recent groupings kept.
+	 * 
+	 * @return The window size.
+	 */
+	public int getWindow() {
+		return window;
+	}
+	
+	/**
+	 * This method returns the loader older groupings are paged in from.
+	 * 
+	 * @return The loader, or null.
+	 */
+	public GroupingLoader getLoader() {
+		return loader;
+	}
+	
+	/**
+	 * Sets a new current grouping. The previous one, unless it was empty
+	 * or has the same grouping id as the new one, becomes the most recent
+	 * grouping in the window.
+	 * 
+	 * @param groups The new current groups.
+	 */
+	public void setCurrent(Collection<Group> groups) {
+		if(!current.isEmpty() && window > 0 && !replaces(groups)) {
+			recent.addFirst(current);
+			while(recent.size() > window)
+				recent.removeLast();
+		}
+		current = groups == null ? new ArrayList<Group>() : groups;
+	}
+	
+	/**
+	 * Returns whether or not a grouping is the current grouping saved
+	 * again, which is the case when both have the same grouping id.
+	 * 
+	 * @param groups The new groups.
+	 * @return True if the groups replace the current grouping in storage.
+	 */
+	private boolean replaces(Collection<Group> groups) {
+		if(groups == null || groups.isEmpty())
+			return false;
+		
+		int groupingId = current.iterator().next().getGroupingId();
+		return groupingId != 0 && groupingId == groups.iterator().next().getGroupingId();
+	}
+	
+	/**
+	 * Sets the loader older groupings are paged in from.
+	 * 
+	 * @param loader The loader, or null if there is no storage.
+	 */
+	public void setLoader(GroupingLoader loader) {
+		this.loader = loader;
+	}
+	
+	/**
+	 * Returns a page of groupings, most recent first, starting with the
+	 * current grouping at offset 0. Groupings held in memory are returned
+	 * from memory; the rest are loaded and not kept.
+	 * 
+	 * @param offset The index of the first grouping returned.
+	 * @param limit The maximum number of groupings returned.
+	 * @return The groupings.
+	 * @throws GroupingLoadException Thrown if older groupings cannot be loaded.
+	 */
+	public List<Collection<Group>> getGroupings(int offset, int limit) {
+		List<Collection<Group>> page = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+		int inMemory = (current.isEmpty() ? 0 : 1) + recent.size();
+		
+		int index = offset;
+		for(; index < inMemory && page.size() < limit; index++)
+			page.add(index == 0 && !current.isEmpty() ? current : recent.get(current.isEmpty() ? index : index - 1));
+		
+		if(page.size() < limit && loader != null) {
+			for(int groupingId: loader.loadGroupingIds(index, limit - page.size()))
+				page.add(loader.loadGrouping(groupingId));
+		}
+		return page;
+	}
+}
@@ -0,0 +1,24 @@
+package model;
+
+/**
+ * The GroupingLoadException class is thrown when a GroupingLoader cannot
+ * page a saved grouping in. It is unchecked and carries the storage
+ * layer's exception as its cause, so the model does not depend on how
+ * the groupings are stored.
+ * 
+ * @author Joseph Stewart
+ */
+public class GroupingLoadException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Constructor which sets the message and the cause.
+	 * 
+	 * @param message The detail message.
+	 * @param cause The exception of the storage layer.
+	 */
+	public GroupingLoadException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,33 @@
+package model;
+
+import java.util.*;
+
+/**
+ * The GroupingLoader interface pages a classroom's saved groupings in from
+ * storage for its GroupingHistory. A grouping is identified by the
+ * grouping id shared by its groups. Storage errors are reported as a
+ * GroupingLoadException.
+ * 
+ * @author Joseph Stewart
+ */
+public interface GroupingLoader {
+	
+	/**
+	 * Returns the ids of saved groupings, most recent first.
+	 * 
+	 * @param offset The number of most recent groupings to skip.
+	 * @param limit The maximum number of ids returned.
+	 * @return The grouping ids.
+	 * @throws GroupingLoadException Thrown if the ids cannot be loaded.
+	 */
+	List<Integer> loadGroupingIds(int offset, int limit);
+	
+	/**
+	 * Loads one saved grouping.
+	 * 
+	 * @param groupingId The grouping id shared by the grouping's groups.
+	 * @return The groups.
+	 * @throws GroupingLoadException Thrown if the grouping cannot be loaded.
+	 */
+	List<Group> loadGrouping(int groupingId);
+}
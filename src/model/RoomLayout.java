@@ -0,0 +1,104 @@
+package model;
+
+import java.util.*;
+
+/**
+ * The RoomLayout class represents where the tables of a classroom are,
+ * as the distance of each table from the front of the room.
+ * 
+ * @author Joseph Stewart
+ */
+public class RoomLayout {
+	
+	/** The title of the layout. */
+	private String title;
+	
+	/** The tables of the room. */
+	private List<Table> tables = new ArrayList<>();
+	
+	/** Default Constructor. */
+	public RoomLayout() { }
+	
+	/**
+	 * Constructor which sets the title.
+	 * 
+	 * @param title The title of the layout.
+	 */
+	public RoomLayout(String title) {
+		this.title = title;
+	}
+	
+	/**
+	 * Returns a layout of rows of tables, the first row at the front of
+	 * the room and each following row one unit further back.
+	 * 
+	 * @param title The title of the layout.
+	 * @param rows The number of rows.
+	 * @param tablesPerRow The number of tables in each row.
+	 * @param seats The number of seats at each table.
+	 * @return The layout.
+	 */
+	public static RoomLayout createRows(String title, int rows, int tablesPerRow, int seats) {
+		RoomLayout layout = new RoomLayout(title);
+		for(int r = 0; r < rows; r++) {
+			for(int t = 0; t < tablesPerRow; t++)
+				layout.addTable(new Table(r * tablesPerRow + t + 1, seats, r));
+		}
+		return layout;
+	}
+	
+	/**
+	 * This method returns the title of the layout.
+	 * 
+	 * @return The title.
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * This method returns the tables of the room.
+	 * 
+	 * @return The tables.
+	 */
+	public List<Table> getTables() {
+		return tables;
+	}
+	
+	/**
+	 * Adds a table to the room.
+	 * 
+	 * @param table The table.
+	 */
+	public void addTable(Table table) {
+		tables.add(table);
+	}
+	
+	/**
+	 * Sets the title of the layout.
+	 * 
+	 * @param title The title.
+	 */
+	public void setTitle(String title) {
+		this.title = title;
+	}
+	
+	/**
+	 * Sets the tables of the room.
+	 * 
+	 * @param tables The tables.
+	 */
+	public void setTables(List<Table> tables) {
+		this.tables = tables;
+	}
+	
+	/**
+	 * This method returns a String representation of the layout.
+	 * 
+	 * @return The String representation of this layout.
+	 */
+	@Override
+	public String toString() {
+		return new StringBuilder(String.valueOf(title)).append(", Tables: ").append(tables.size()).toString();
+	}
+}
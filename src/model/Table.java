@@ -0,0 +1,100 @@
+package model;
+
+/**
+ * The Table class represents one table in a classroom's room layout,
+ * where a group of students sits.
+ * 
+ * @author Joseph Stewart
+ */
+public class Table {
+	
+	/** The table number. */
+	private int tableNumber;
+	
+	/** The number of students that fit at the table. */
+	private int seats;
+	
+	/** The distance from the table to the front of the classroom. */
+	private double distanceToFront;
+	
+	/** Default Constructor. */
+	public Table() { }
+	
+	/**
+	 * Constructor which sets the table number, seats, and distance to the front.
+	 * 
+	 * @param tableNumber The table number.
+	 * @param seats The number of students that fit at the table.
+	 * @param distanceToFront The distance to the front of the classroom.
+	 */
+	public Table(int tableNumber, int seats, double distanceToFront) {
+		this.tableNumber = tableNumber;
+		this.seats = seats;
+		this.distanceToFront = distanceToFront;
+	}
+	
+	/**
+	 * This method returns the table number.
+	 * 
+	 * @return The table number.
+	 */
+	public int getTableNumber() {
+		return tableNumber;
+	}
+	
+	/**
+	 * This method returns the number of students that fit at the table.
+	 * 
+	 * @return The number of seats.
+	 */
+	public int getSeats() {
+		return seats;
+	}
+	
+	/**
+	 * This method returns the distance from the table to the front of the classroom.
+	 * 
+	 * @return The distance to the front.
+	 */
+	public double getDistanceToFront() {
+		return distanceToFront;
+	}
+	
+	/**
+	 * Sets the table number.
+	 * 
+	 * @param tableNumber The table number.
+	 */
+	public void setTableNumber(int tableNumber) {
+		this.tableNumber = tableNumber;
+	}
+	
+	/**
+	 * Sets the number of students that fit at the table.
+	 * 
+	 * @param seats The number of seats.
+	 */
+	public void setSeats(int seats) {
+		this.seats = seats;
+	}
+	
+	/**
+	 * Sets the distance from the table to the front of the classroom.
+	 * 
+	 * @param distanceToFront The distance to the front.
+	 */
+	public void setDistanceToFront(double distanceToFront) {
+		this.distanceToFront = distanceToFront;
+	}
+	
+	/**
+	 * This method returns a String representation of the table.
+	 * 
+	 * @return The String representation of this table.
+	 */
+	@Override
+	public String toString() {
+		return new StringBuilder("Table ").append(tableNumber).append(", Seats: ").append(seats)
+				.append(", Distance to Front: ").append(distanceToFront).toString();
+	}
+}
@@ -0,0 +1,85 @@
+package service;
+
+import java.sql.*;
+import java.util.*;
+
+import data.*;
+import model.*;
+import utility.*;
+
+/**
+ * The DistrictRegrouper class regroups every classroom of a district and
+ * saves the new groups, working on all school shards at once. Each shard
+ * is loaded, grouped, and written by its own thread, so schools never wait
+ * for each other's database writes.
+ *
+ * @author Joseph Stewart
+ */
+public class DistrictRegrouper {
+
+	/** The district's shards. */
+	private final ShardedDatabase database;
+
+	/** Groups each classroom. */
+	private final GroupingPortfolio portfolio;
+
+	/** The outcome of regrouping one school. */
+	public static class SchoolResult {
+		private int groupedClassrooms;
+		private List<Integer> failedClassroomIds = new ArrayList<>();
+
+		/**
+		 * Returns the number of classrooms regrouped and saved.
+		 *
+		 * @return The number of classrooms.
+		 */
+		public int getGroupedClassrooms() {
+			return groupedClassrooms;
+		}
+
+		/**
+		 * Returns the ids of the classrooms no grouping was found for.
+		 *
+		 * @return The classroom ids.
+		 */
+		public List<Integer> getFailedClassroomIds() {
+			return failedClassroomIds;
+		}
+	}
+
+	/**
+	 * Constructor which sets the shards and how classrooms are grouped.
+	 *
+	 * @param database The district's shards.
+	 * @param portfolio Groups each classroom.
+	 */
+	public DistrictRegrouper(ShardedDatabase database, GroupingPortfolio portfolio) {
+		this.database = database;
+		this.portfolio = portfolio;
+	}
+
+	/**
+	 * Regroups and saves every classroom of every school.
+	 *
+	 * @return The outcome of each school, keyed by school id.
+	 * @throws SQLException Thrown if a shard cannot be read or written.
+	 */
+	public Map<Integer, SchoolResult> regroupAll() throws SQLException {
+		return database.forEachShard((schoolId, shard) -> {
+			ClassroomStore classroomStore = new ClassroomStore(shard.getConnection());
+			GroupStore groupStore = new GroupStore(shard.getConnection());
+			SchoolResult result = new SchoolResult();
+
+			for(int classroomId: classroomStore.loadClassroomIds()) {
+				Classroom classroom = classroomStore.loadClassroom(classroomId);
+				try {
+					groupStore.saveGroups(classroom, portfolio.createGroups(classroom));
+					result.groupedClassrooms++;
+				} catch (IllegalStateException e) {
+					result.failedClassroomIds.add(classroomId);
+				}
+			}
+			return result;
+		});
+	}
+}
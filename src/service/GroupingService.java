@@ -0,0 +1,563 @@
+package service;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.sun.net.httpserver.*;
+
+import data.*;
+import model.*;
+import utility.*;
+
+/**
+ * The GroupingService class runs the grouping code as a local HTTP service
+ * so several front ends can share one JVM, one database connection, and
+ * its caches. It exposes three endpoints, each taking a classroom id:
+ *
+ *  - POST /groups?classroom=ID[&save=true] creates a grouping.
+ *  - GET /roster?classroom=ID returns the classroom's students.
+ *  - GET /history?classroom=ID[&offset=N][&limit=N] returns saved groupings.
+ *
+ * GET /metrics returns the time grouping jobs spent in the solver next to
+ * the database's QueryMetrics, to tell a slow solver from slow storage.
+ *
+ * Identical grouping requests that arrive while one is already running for
+ * the same version of a classroom's roster share its result. At most a
+ * fixed number of grouping jobs run at once; further requests are refused
+ * with 429 instead of queueing without bound. Each job is handed to a
+ * GroupingPortfolio with the request timeout as its time budget, so a job
+ * for a roster that cannot be grouped stops instead of running forever.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingService {
+
+	/** Default port the service listens on. */
+	public final static int DEFAULT_PORT = 8080;
+
+	/** Default number of seconds a caller waits for a grouping. */
+	public final static int DEFAULT_TIMEOUT_SECONDS = 30;
+
+	/** Default number of groupings returned by the history endpoint. */
+	public final static int DEFAULT_HISTORY_LIMIT = 10;
+
+	/** The HTTP server. */
+	private final HttpServer server;
+
+	/** The executor handling HTTP exchanges. */
+	private final ExecutorService requestExecutor;
+
+	/** The executor running grouping jobs. */
+	private final ExecutorService solverExecutor;
+
+	/** Permits for the grouping jobs allowed to run at once. */
+	private final Semaphore solverPermits;
+
+	/** The running grouping jobs, keyed by classroom version. */
+	private final ConcurrentMap<String, CompletableFuture<List<Group>>> inFlight = new ConcurrentHashMap<>();
+
+	/** Chooses and runs the strategy for each grouping job. */
+	private final GroupingPortfolio portfolio;
+
+	/** Loads classrooms. */
+	private final ClassroomStore classroomStore;
+
+	/** Loads and saves groupings. */
+	private final GroupStore groupStore;
+
+	/**
+	 * The shared database connection. Its monitor serializes every use of
+	 * it, the same monitor the stores hold for their transactions, so no
+	 * read or save of the service runs inside another thread's transaction.
+	 */
+	private final Connection connection;
+
+	/** The number of seconds a caller waits for a grouping. */
+	private final int timeoutSeconds;
+
+	/** The number of grouping jobs that finished in the solver. */
+	private final LongAdder solverJobs = new LongAdder();
+
+	/** The nanoseconds grouping jobs spent in the solver. */
+	private final LongAdder solverNanos = new LongAdder();
+
+	/**
+	 * Thrown when no grouping job can be started because all permits are taken.
+	 */
+	private static class OverloadedException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Constructor which creates the server on the loopback interface.
+	 *
+	 * @param port The port to listen on.
+	 * @param maxJobs The maximum number of grouping jobs running at once.
+	 * @param timeoutSeconds The number of seconds a caller waits for a grouping.
+	 * @throws IOException Thrown if the server cannot bind to the port.
+	 */
+	public GroupingService(int port, int maxJobs, int timeoutSeconds) throws IOException {
+		connection = Database.getInstance().getConnection();
+		classroomStore = new ClassroomStore(connection);
+		groupStore = new GroupStore(connection);
+
+		this.timeoutSeconds = timeoutSeconds;
+		solverPermits = new Semaphore(maxJobs);
+		solverExecutor = Executors.newFixedThreadPool(maxJobs);
+		portfolio = new GroupingPortfolio(new GroupingOptions(), timeoutSeconds * 1000L);
+		requestExecutor = newRequestExecutor();
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(requestExecutor);
+		server.createContext("/groups", this::handleGroups);
+		server.createContext("/roster", this::handleRoster);
+		server.createContext("/history", this::handleHistory);
+		server.createContext("/metrics", this::handleMetrics);
+	}
+
+	/**
+	 * Returns an executor with one virtual thread per exchange when the
+	 * running JDK supports them, and a cached thread pool otherwise.
+	 *
+	 * @return The executor for HTTP exchanges.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/** Starts accepting requests. */
+	public void start() {
+		server.start();
+	}
+
+	/** Stops accepting requests and shuts down the executors. */
+	public void stop() {
+		server.stop(1);
+		requestExecutor.shutdown();
+		solverExecutor.shutdownNow();
+		portfolio.shutdown();
+	}
+
+	/**
+	 * Handles /groups by creating, and optionally saving, a grouping.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @throws IOException Thrown if the response cannot be written.
+	 */
+	private void handleGroups(HttpExchange exchange) throws IOException {
+		if(!"POST".equals(exchange.getRequestMethod())) {
+			send(exchange, 405, error("Use POST to create groups."));
+			return;
+		}
+
+		Classroom classroom = loadRequestedClassroom(exchange);
+		if(classroom == null)
+			return;
+
+		boolean save = "true".equals(getParameters(exchange).get("save"));
+
+		try {
+			List<Group> groups = createGroups(classroom, save).get(timeoutSeconds, TimeUnit.SECONDS);
+			send(exchange, 200, toJson(classroom, groups));
+		} catch (OverloadedException e) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			send(exchange, 429, error("Too many grouping requests; try again shortly."));
+		} catch (TimeoutException e) {
+			send(exchange, 503, error("No grouping was found in time."));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, 503, error("The request was interrupted."));
+		} catch (ExecutionException e) {
+			send(exchange, 500, error(String.valueOf(e.getCause())));
+		}
+	}
+
+	/**
+	 * Handles /roster by returning the classroom and its students.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @throws IOException Thrown if the response cannot be written.
+	 */
+	private void handleRoster(HttpExchange exchange) throws IOException {
+		Classroom classroom = loadRequestedClassroom(exchange);
+		if(classroom == null)
+			return;
+
+		StringBuilder json = new StringBuilder("{\"classroomId\":").append(classroom.getId())
+				.append(",\"title\":").append(quote(classroom.getTitle()))
+				.append(",\"maximumFrontGroups\":").append(classroom.getMaximumFrontGroups())
+				.append(",\"students\":[");
+
+		boolean first = true;
+		for(Student s: classroom.getStudents()) {
+			if(!first)
+				json.append(',');
+			first = false;
+
+			json.append("{\"id\":").append(s.getId())
+				.append(",\"name\":").append(quote(s.getName()))
+				.append(",\"gender\":").append(quote(String.valueOf(s.getGender())))
+				.append(",\"abilityLevel\":").append(quote(String.valueOf(s.getAbilityLevel())))
+				.append(",\"frontSeatNeeded\":").append(s.getFrontSeatNeeded())
+				.append(",\"preferredGroupOfFive\":").append(s.getPreferredGroupOfFive())
+				.append(",\"incompatible\":").append(toJsonIds(s.getStudents()))
+				.append('}');
+		}
+		json.append("]}");
+		send(exchange, 200, json.toString());
+	}
+
+	/**
+	 * Handles /history by returning a page of the classroom's saved groupings.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @throws IOException Thrown if the response cannot be written.
+	 */
+	private void handleHistory(HttpExchange exchange) throws IOException {
+		Classroom classroom = loadRequestedClassroom(exchange);
+		if(classroom == null)
+			return;
+
+		Map<String, String> parameters = getParameters(exchange);
+		int offset = parseInt(parameters.get("offset"), 0);
+		int limit = parseInt(parameters.get("limit"), DEFAULT_HISTORY_LIMIT);
+
+		StringBuilder json = new StringBuilder("{\"classroomId\":").append(classroom.getId())
+				.append(",\"groupings\":[");
+
+		try {
+			synchronized(connection) {
+				boolean first = true;
+				for(int groupingId: groupStore.loadGroupingIds(classroom, offset, limit)) {
+					if(!first)
+						json.append(',');
+					first = false;
+
+					List<Group> groups = groupStore.loadGrouping(classroom, groupingId);
+					json.append("{\"groupingId\":").append(groupingId)
+						.append(",\"dateCreated\":").append(quote(groups.isEmpty() ? null : groups.get(0).getDateCreated()))
+						.append(",\"groups\":").append(toJsonGroups(groups))
+						.append('}');
+				}
+			}
+		} catch (SQLException e) {
+			send(exchange, 500, error(e.getMessage()));
+			return;
+		}
+		json.append("]}");
+		send(exchange, 200, json.toString());
+	}
+
+	/**
+	 * Handles /metrics by returning the solver time and the database metrics.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @throws IOException Thrown if the response cannot be written.
+	 */
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		QueryMetrics metrics = Database.getInstance().getMetrics();
+
+		StringBuilder json = new StringBuilder("{\"solver\":{\"jobs\":").append(solverJobs.sum())
+				.append(",\"totalMillis\":").append(solverNanos.sum() / 1e6)
+				.append("},\"database\":{\"rowsRead\":").append(metrics.getRowsRead())
+				.append(",\"rowsWritten\":").append(metrics.getRowsWritten())
+				.append(",\"busyRetries\":").append(metrics.getBusyRetries())
+				.append(",\"busyFailures\":").append(metrics.getBusyFailures())
+				.append(",\"slowQueries\":").append(metrics.getSlowQueries())
+				.append(",\"transactions\":").append(toJson(metrics.getTransactions()))
+				.append(",\"statements\":{");
+
+		boolean first = true;
+		for(Map.Entry<String, QueryMetrics.Histogram> e: metrics.getStatements().entrySet()) {
+			if(!first)
+				json.append(',');
+			first = false;
+			json.append(quote(e.getKey())).append(':').append(toJson(e.getValue()));
+		}
+		json.append("}}}");
+		send(exchange, 200, json.toString());
+	}
+
+	/**
+	 * Starts a grouping job for the classroom, or joins the one already
+	 * running for the same version of its roster.
+	 *
+	 * @param classroom The classroom to group.
+	 * @param save Whether or not the job saves the grouping.
+	 * @return The future result of the job.
+	 * @throws OverloadedException Thrown if no new job may be started.
+	 */
+	private CompletableFuture<List<Group>> createGroups(final Classroom classroom, final boolean save) throws OverloadedException {
+		final String key = getVersion(classroom) + (save ? ":save" : "");
+
+		final CompletableFuture<List<Group>> created = new CompletableFuture<>();
+		CompletableFuture<List<Group>> running = inFlight.putIfAbsent(key, created);
+		if(running != null)
+			return running;
+
+		if(!solverPermits.tryAcquire()) {
+			inFlight.remove(key, created);
+			throw new OverloadedException();
+		}
+
+		try {
+			solverExecutor.execute(() -> {
+				try {
+					long start = System.nanoTime();
+					List<Group> groups = portfolio.createGroups(classroom);
+					solverNanos.add(System.nanoTime() - start);
+					solverJobs.increment();
+
+					if(save) {
+						synchronized(connection) {
+							groupStore.saveGroups(classroom, groups);
+						}
+					}
+					created.complete(groups);
+				} catch (Throwable t) {
+					created.completeExceptionally(t);
+				} finally {
+					inFlight.remove(key, created);
+					solverPermits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.remove(key, created);
+			solverPermits.release();
+			throw new OverloadedException();
+		}
+		return created;
+	}
+
+	/**
+	 * Returns a key identifying the classroom and the current state of its
+	 * roster, so requests made before and after a roster edit are not merged.
+	 *
+	 * @param classroom The classroom.
+	 * @return The version key.
+	 */
+	private static String getVersion(Classroom classroom) {
+		return classroom.getId() + ":" + RosterFingerprint.compute(classroom, new GroupingOptions().toString());
+	}
+
+	/**
+	 * Loads the classroom named by the request's classroom parameter, or
+	 * sends an error response if it cannot be loaded.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @return The classroom, or null if an error response was sent.
+	 * @throws IOException Thrown if the error response cannot be written.
+	 */
+	private Classroom loadRequestedClassroom(HttpExchange exchange) throws IOException {
+		int classroomId = parseInt(getParameters(exchange).get("classroom"), -1);
+		if(classroomId < 0) {
+			send(exchange, 400, error("A classroom parameter is required."));
+			return null;
+		}
+
+		Classroom classroom;
+		try {
+			synchronized(connection) {
+				classroom = classroomStore.loadClassroom(classroomId);
+			}
+		} catch (SQLException e) {
+			send(exchange, 500, error(e.getMessage()));
+			return null;
+		}
+
+		if(classroom == null)
+			send(exchange, 404, error("No classroom with id " + classroomId + "."));
+		return classroom;
+	}
+
+	/**
+	 * Parses the query string of the request.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @return The query parameters by name.
+	 */
+	private static Map<String, String> getParameters(HttpExchange exchange) {
+		Map<String, String> parameters = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if(query == null)
+			return parameters;
+
+		for(String pair: query.split("&")) {
+			int equals = pair.indexOf('=');
+			try {
+				if(equals > 0)
+					parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Parses an integer parameter.
+	 *
+	 * @param value The parameter value, possibly null.
+	 * @param defaultValue The value used if the parameter is missing or invalid.
+	 * @return The parsed value.
+	 */
+	private static int parseInt(String value, int defaultValue) {
+		if(value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Writes a JSON response and closes the exchange.
+	 *
+	 * @param exchange The HTTP exchange.
+	 * @param status The HTTP status code.
+	 * @param json The response body.
+	 * @throws IOException Thrown if the response cannot be written.
+	 */
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Returns the JSON response for a grouping.
+	 *
+	 * @param classroom The classroom.
+	 * @param groups The groups.
+	 * @return The JSON response.
+	 */
+	private static String toJson(Classroom classroom, List<Group> groups) {
+		return new StringBuilder("{\"classroomId\":").append(classroom.getId())
+				.append(",\"groups\":").append(toJsonGroups(groups)).append('}').toString();
+	}
+
+	/**
+	 * Returns the JSON summary of a latency histogram.
+	 *
+	 * @param histogram The histogram.
+	 * @return The JSON object.
+	 */
+	private static String toJson(QueryMetrics.Histogram histogram) {
+		return new StringBuilder("{\"count\":").append(histogram.getCount())
+				.append(",\"totalMillis\":").append(histogram.getTotalMillis())
+				.append(",\"p50Millis\":").append(histogram.getPercentileMillis(50))
+				.append(",\"p99Millis\":").append(histogram.getPercentileMillis(99))
+				.append(",\"maximumMillis\":").append(histogram.getMaximumMillis())
+				.append('}').toString();
+	}
+
+	/**
+	 * Returns a JSON array of groups.
+	 *
+	 * @param groups The groups.
+	 * @return The JSON array.
+	 */
+	private static String toJsonGroups(List<Group> groups) {
+		StringBuilder json = new StringBuilder("[");
+		for(Group g: groups) {
+			if(json.length() > 1)
+				json.append(',');
+
+			json.append("{\"id\":").append(g.getId())
+				.append(",\"groupNumber\":").append(g.getGroupNumber())
+				.append(",\"isFrontGroup\":").append(g.getIsFrontGroup())
+				.append(",\"dateCreated\":").append(quote(g.getDateCreated()))
+				.append(",\"students\":").append(toJsonIds(g.getStudents()))
+				.append('}');
+		}
+		return json.append(']').toString();
+	}
+
+	/**
+	 * Returns a sorted JSON array of the students' ids.
+	 *
+	 * @param students The students.
+	 * @return The JSON array.
+	 */
+	private static String toJsonIds(Collection<Student> students) {
+		int[] ids = new int[students.size()];
+		int i = 0;
+		for(Student s: students)
+			ids[i++] = s.getId();
+		Arrays.sort(ids);
+		return Arrays.toString(ids).replace(" ", "");
+	}
+
+	/**
+	 * Returns an error object.
+	 *
+	 * @param message The error message.
+	 * @return The JSON error object.
+	 */
+	private static String error(String message) {
+		return "{\"error\":" + quote(message) + "}";
+	}
+
+	/**
+	 * Returns a quoted and escaped JSON string.
+	 *
+	 * @param value The string, possibly null.
+	 * @return The JSON string, or null.
+	 */
+	private static String quote(String value) {
+		if(value == null)
+			return "null";
+
+		StringBuilder json = new StringBuilder("\"");
+		for(char c: value.toCharArray()) {
+			switch(c) {
+			case '"': json.append("\\\"");
+				break;
+			case '\\': json.append("\\\\");
+				break;
+			case '\n': json.append("\\n");
+				break;
+			case '\r': json.append("\\r");
+				break;
+			case '\t': json.append("\\t");
+				break;
+			default:
+				if(c < 0x20)
+					json.append(String.format("\\u%04x", (int) c));
+				else
+					json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * Starts the service. The optional arguments are the port and the
+	 * maximum number of grouping jobs running at once.
+	 *
+	 * @param args The command line arguments.
+	 * @throws IOException Thrown if the server cannot be started.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? parseInt(args[0], DEFAULT_PORT) : DEFAULT_PORT;
+		int maxJobs = args.length > 1 ? parseInt(args[1], 0) : 0;
+		if(maxJobs <= 0)
+			maxJobs = Runtime.getRuntime().availableProcessors();
+
+		new GroupingService(port, maxJobs, DEFAULT_TIMEOUT_SECONDS).start();
+	}
+}
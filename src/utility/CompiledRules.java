@@ -0,0 +1,134 @@
+package utility;
+
+import utility.GroupingRules.Attribute;
+
+/**
+ * The CompiledRules class holds GroupingRules as fixed-size arrays indexed
+ * by group size and attribute, so checking a group never has to look
+ * anything up. Sizes larger than the compiled maximum use the rules that
+ * apply to every group.
+ *
+ * @author Joseph Stewart
+ */
+public class CompiledRules {
+
+	/** Attribute masks whose minimums compete for the same seats in a group. */
+	final static int[] PARTITIONS = {
+		Attribute.LOW.bit() | Attribute.AVERAGE.bit() | Attribute.HIGH.bit(),
+		Attribute.MALE.bit() | Attribute.FEMALE.bit(),
+		Attribute.FRONT_SEAT_NEEDED.bit(),
+		Attribute.PREFERRED_GROUP_OF_FIVE.bit()
+	};
+
+	/** Minimums indexed by group size, then attribute. */
+	final int[][] minimums;
+
+	/** Maximums indexed by group size, then attribute. */
+	final int[][] maximums;
+
+	/** Forbidden attribute masks indexed by group size. */
+	final int[][] forbidden;
+
+	/** The rules these were compiled from. */
+	private final GroupingRules rules;
+
+	/**
+	 * Constructor which compiles the rules for group sizes up to the maximum.
+	 *
+	 * @param rules The rules to compile.
+	 * @param maximumGroupSize The largest group size compiled.
+	 */
+	CompiledRules(GroupingRules rules, int maximumGroupSize) {
+		this.rules = rules;
+
+		int sizes = Math.max(maximumGroupSize, 1) + 2;
+		minimums = new int[sizes][GroupingRules.ATTRIBUTE_COUNT];
+		maximums = new int[sizes][GroupingRules.ATTRIBUTE_COUNT];
+		forbidden = new int[sizes][];
+
+		// The last slot holds the general rules, used for any larger size
+		for(int size = 0; size < sizes; size++) {
+			int ruleSize = size == sizes - 1 ? 0 : size;
+			for(Attribute a: Attribute.values()) {
+				minimums[size][a.ordinal()] = rules.getMinimum(ruleSize, a);
+				maximums[size][a.ordinal()] = rules.getMaximum(ruleSize, a);
+			}
+			forbidden[size] = rules.getForbiddenCombinations(ruleSize);
+		}
+	}
+
+	/**
+	 * Returns the array index used for a group size.
+	 *
+	 * @param groupSize The group size.
+	 * @return The index into the rule arrays.
+	 */
+	int index(int groupSize) {
+		return groupSize < minimums.length - 1 ? groupSize : minimums.length - 1;
+	}
+
+	/**
+	 * Returns the rules these were compiled from.
+	 *
+	 * @return The grouping rules.
+	 */
+	public GroupingRules getRules() {
+		return rules;
+	}
+
+	/**
+	 * Returns whether or not a complete group with the given attribute
+	 * counts satisfies the rules.
+	 *
+	 * @param counts The number of students with each attribute.
+	 * @param groupSize The size of the group.
+	 * @return True if every limit and forbidden combination is respected.
+	 */
+	public boolean accepts(int[] counts, int groupSize) {
+		int index = index(groupSize);
+		int present = 0;
+
+		for(int a = 0; a < counts.length; a++) {
+			if(counts[a] < minimums[index][a] || counts[a] > maximums[index][a])
+				return false;
+			if(counts[a] > 0)
+				present |= 1 << a;
+		}
+
+		for(int f: forbidden[index]) {
+			if((present & f) == f)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns how far a complete group is from satisfying the rules: the
+	 * number of students over each maximum and short of each minimum, plus
+	 * one for each forbidden combination present.
+	 *
+	 * @param counts The number of students with each attribute.
+	 * @param groupSize The size of the group.
+	 * @return The number of violations, which is zero for an accepted group.
+	 */
+	int getViolations(int[] counts, int groupSize) {
+		int index = index(groupSize);
+		int present = 0;
+		int violations = 0;
+
+		for(int a = 0; a < counts.length; a++) {
+			if(counts[a] < minimums[index][a])
+				violations += minimums[index][a] - counts[a];
+			else if(counts[a] > maximums[index][a])
+				violations += counts[a] - maximums[index][a];
+			if(counts[a] > 0)
+				present |= 1 << a;
+		}
+
+		for(int f: forbidden[index]) {
+			if((present & f) == f)
+				violations++;
+		}
+		return violations;
+	}
+}
@@ -0,0 +1,493 @@
+package utility;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The ConstraintSolver class is a complete search for groups. It enforces
+ * the same constraints as GroupCreator: every student in exactly one group
+ * of the planned sizes, no incompatible students together, every group
+ * within the GroupingRules, and no more front groups than the classroom
+ * allows. Unlike the shuffled attempts of GroupCreator it either finds a
+ * grouping or proves that none exists, within a time limit.
+ *
+ * The search assigns one student at a time, always choosing the student
+ * with the fewest groups left open to them, students needing a front seat
+ * first since they decide which groups are at the front, and checks after every
+ * assignment that each remaining student still has a group and that the
+ * remaining students can still meet every group's minimums and stay within
+ * its maximums. Empty groups of the same size are interchangeable, so only
+ * the first of them is ever tried. The search restarts with a doubled node
+ * limit whenever it hits the limit, which keeps an unlucky early choice from
+ * using up the time limit; a run that finishes under its limit is complete.
+ *
+ * @author Joseph Stewart
+ */
+public class ConstraintSolver {
+
+	/** The outcome of a search. */
+	public enum Status {
+		/** A grouping was found. */
+		SOLVED,
+		/** The search proved that no grouping exists. */
+		INFEASIBLE,
+		/** The time limit was reached first. */
+		TIMED_OUT
+	}
+
+	/** The result of a search. */
+	public static class Result {
+		private final Status status;
+		private final int[][] groups;
+		private final long nodes;
+
+		Result(Status status, int[][] groups, long nodes) {
+			this.status = status;
+			this.groups = groups;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * Returns the outcome of the search.
+		 *
+		 * @return The status.
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Returns the member indexes of each group.
+		 *
+		 * @return The groups, or null if the search did not find a grouping.
+		 */
+		public int[][] getGroups() {
+			return groups;
+		}
+
+		/**
+		 * Returns the number of assignments the search tried.
+		 *
+		 * @return The number of search nodes.
+		 */
+		public long getNodes() {
+			return nodes;
+		}
+	}
+
+	/** The roster being grouped. */
+	private final Roster roster;
+
+	/** The size of each group. */
+	private final int[] sizes;
+
+	/** The rule counter of each group. */
+	private final RuleCounter[] counters;
+
+	/** The compiled rules. */
+	private final CompiledRules rules;
+
+	/** The number of students with each attribute in each group. */
+	private final int[][] counts;
+
+	/** conflicts[g][i] is the number of students in group g incompatible with student i. */
+	private final int[][] conflicts;
+
+	/** Whether or not each group has a student needing a front seat. */
+	private final boolean[] isFront;
+
+	/** The group of each student, or -1. */
+	private final int[] groupOf;
+
+	/** The number of unassigned students with each attribute. */
+	private final int[] unassignedCounts = new int[GroupingRules.ATTRIBUTE_COUNT];
+
+	/** The source of randomness for breaking ties. */
+	private final Random random;
+
+	/** The number of front groups. */
+	private int frontGroups;
+
+	/** The number of unassigned students. */
+	private int unassigned;
+
+	/** The time at which the search gives up, in nanoseconds. */
+	private long deadline;
+
+	/** The number of assignments tried. */
+	private long nodes;
+
+	/** Flag set once the deadline has passed. */
+	private boolean timedOut;
+
+	/** Flag set to stop the search from another thread. */
+	private volatile boolean cancelled;
+
+	/** The number of nodes the current run may still search before it restarts. */
+	private long nodeLimit;
+
+	/** The number of nodes the current run was allowed, doubled at every restart. */
+	private long runLimit;
+
+	/** Flag set once the current run has reached its node limit. */
+	private boolean restarted;
+
+	/** The number of nodes a first run may search before restarting. */
+	private final static long FIRST_NODE_LIMIT = 4096;
+
+	/**
+	 * Constructor which prepares a search over a roster.
+	 *
+	 * @param roster The roster to group.
+	 * @param options The grouping options.
+	 * @param random The source of randomness for breaking ties.
+	 */
+	public ConstraintSolver(Roster roster, GroupingOptions options, Random random) {
+		this.roster = roster;
+		this.random = random;
+		sizes = options.getGroupSizes(roster.size());
+
+		int largestSize = 0;
+		for(int size: sizes)
+			largestSize = Math.max(largestSize, size);
+		rules = options.getRules().compile(largestSize);
+
+		counters = new RuleCounter[sizes.length];
+		counts = new int[sizes.length][GroupingRules.ATTRIBUTE_COUNT];
+		conflicts = new int[sizes.length][roster.size()];
+		isFront = new boolean[sizes.length];
+		groupOf = new int[roster.size()];
+
+		for(int g = 0; g < sizes.length; g++) {
+			counters[g] = new RuleCounter(rules);
+			counters[g].reset(sizes[g]);
+		}
+	}
+
+	/**
+	 * Searches for groups for a classroom.
+	 *
+	 * @param c The classroom.
+	 * @param options The grouping options.
+	 * @param timeLimitMillis The time limit in milliseconds.
+	 * @return The groups, or null if none were found.
+	 */
+	public static List<Group> createGroups(Classroom c, GroupingOptions options, long timeLimitMillis) {
+		Roster roster = new Roster(c);
+		Result result = new ConstraintSolver(roster, options, new Random()).solve(timeLimitMillis);
+		return result.getStatus() == Status.SOLVED ? roster.toGroups(result.getGroups()) : null;
+	}
+
+	/**
+	 * Stops a running search, which then ends as timed out.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Runs the search. Each call starts over, so a solver can be run
+	 * more than once.
+	 *
+	 * @param timeLimitMillis The time limit in milliseconds.
+	 * @return The result of the search.
+	 */
+	public Result solve(long timeLimitMillis) {
+		deadline = System.nanoTime() + timeLimitMillis * 1000000L;
+		reset();
+
+		for(int i = 0; i < roster.size(); i++) {
+			for(int a = 0; a < GroupingRules.ATTRIBUTE_COUNT; a++) {
+				if((roster.attributes[i] & (1 << a)) != 0)
+					unassignedCounts[a]++;
+			}
+		}
+
+		if(!isConsistent())
+			return new Result(Status.INFEASIBLE, null, nodes);
+
+		runLimit = FIRST_NODE_LIMIT;
+		do {
+			restarted = false;
+			nodeLimit = runLimit;
+			if(search())
+				return new Result(Status.SOLVED, getGroups(), nodes);
+			runLimit *= 2;
+		} while(restarted && !timedOut);
+
+		return new Result(timedOut ? Status.TIMED_OUT : Status.INFEASIBLE, null, nodes);
+	}
+
+	/**
+	 * Empties every group and clears the counts and flags of a previous search.
+	 */
+	private void reset() {
+		Arrays.fill(groupOf, -1);
+		unassigned = roster.size();
+		Arrays.fill(unassignedCounts, 0);
+		Arrays.fill(isFront, false);
+		frontGroups = 0;
+
+		for(int g = 0; g < sizes.length; g++) {
+			counters[g].reset(sizes[g]);
+			Arrays.fill(counts[g], 0);
+			Arrays.fill(conflicts[g], 0);
+		}
+
+		nodes = 0;
+		timedOut = false;
+		cancelled = false;
+	}
+
+	/**
+	 * Assigns the remaining students depth first.
+	 *
+	 * @return True if every student was assigned.
+	 */
+	private boolean search() {
+		if(unassigned == 0)
+			return true;
+
+		// Each node scans the whole roster, which costs far more than reading
+		// the clock, so the limit is checked at every node
+		nodes++;
+		if(cancelled || System.nanoTime() > deadline)
+			timedOut = true;
+		if(--nodeLimit < 0)
+			restarted = true;
+		if(timedOut || restarted)
+			return false;
+
+		// Choose the unassigned student with the fewest open groups,
+		// taking students who need a front seat first
+		int student = -1;
+		int fewest = Integer.MAX_VALUE;
+		boolean front = false;
+		for(int i = 0; i < roster.size(); i++) {
+			if(groupOf[i] != -1 || (front && !roster.frontSeatNeeded[i]))
+				continue;
+
+			int open = countOpenGroups(i, Integer.MAX_VALUE);
+			if(open == 0)
+				return false;
+
+			if(roster.frontSeatNeeded[i] && !front) {
+				front = true;
+				fewest = Integer.MAX_VALUE;
+			}
+			if(open < fewest || (open == fewest && random.nextBoolean())) {
+				fewest = open;
+				student = i;
+			}
+		}
+
+		int[] candidates = new int[sizes.length];
+		int candidateCount = 0;
+		for(int g = 0; g < sizes.length; g++) {
+			if(canAssign(student, g) && isFirstEmptyOfSize(g))
+				candidates[candidateCount++] = g;
+		}
+
+		// Partly filled groups first, so students are packed before new groups open
+		sortByFill(candidates, candidateCount);
+
+		for(int c = 0; c < candidateCount; c++) {
+			int g = candidates[c];
+			boolean wasFront = isFront[g];
+
+			assign(student, g);
+			if(isConsistent() && search())
+				return true;
+			unassign(student, g, wasFront);
+
+			if(timedOut || restarted)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the groups a student can still join, stopping once the count
+	 * reaches a limit.
+	 *
+	 * @param student The student's index.
+	 * @param limit The count at which counting stops.
+	 * @return The number of open groups, up to the limit.
+	 */
+	private int countOpenGroups(int student, int limit) {
+		int open = 0;
+		for(int g = 0; g < sizes.length && open < limit; g++) {
+			if(canAssign(student, g))
+				open++;
+		}
+		return open;
+	}
+
+	/**
+	 * Returns whether or not a student can join a group.
+	 *
+	 * @param student The student's index.
+	 * @param g The group.
+	 * @return True if no constraint would be broken.
+	 */
+	private boolean canAssign(int student, int g) {
+		if(conflicts[g][student] > 0 || !counters[g].canAdd(roster.attributes[student]))
+			return false;
+		return !roster.frontSeatNeeded[student] || isFront[g] || frontGroups < roster.getMaximumFrontGroups();
+	}
+
+	/**
+	 * Returns whether or not a group is the first empty group of its size,
+	 * or not empty at all. Empty groups of one size are interchangeable.
+	 *
+	 * @param g The group.
+	 * @return True if the group should be tried.
+	 */
+	private boolean isFirstEmptyOfSize(int g) {
+		if(counters[g].getSize() > 0)
+			return true;
+
+		for(int h = 0; h < g; h++) {
+			if(sizes[h] == sizes[g] && counters[h].getSize() == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts candidate groups with the fullest first.
+	 *
+	 * @param candidates The candidate groups.
+	 * @param count The number of candidates.
+	 */
+	private void sortByFill(int[] candidates, int count) {
+		for(int i = 1; i < count; i++) {
+			int g = candidates[i];
+			int j = i - 1;
+			while(j >= 0 && counters[candidates[j]].getSize() < counters[g].getSize()) {
+				candidates[j + 1] = candidates[j];
+				j--;
+			}
+			candidates[j + 1] = g;
+		}
+	}
+
+	/**
+	 * Assigns a student to a group.
+	 *
+	 * @param student The student's index.
+	 * @param g The group.
+	 */
+	private void assign(int student, int g) {
+		int mask = roster.attributes[student];
+
+		groupOf[student] = g;
+		unassigned--;
+		counters[g].add(mask);
+		for(int a = 0; a < GroupingRules.ATTRIBUTE_COUNT; a++) {
+			if((mask & (1 << a)) != 0) {
+				counts[g][a]++;
+				unassignedCounts[a]--;
+			}
+		}
+		for(int j: roster.incompatibles[student])
+			conflicts[g][j]++;
+
+		if(roster.frontSeatNeeded[student] && !isFront[g]) {
+			isFront[g] = true;
+			frontGroups++;
+		}
+	}
+
+	/**
+	 * Undoes an assignment.
+	 *
+	 * @param student The student's index.
+	 * @param g The group.
+	 * @param wasFront Whether or not the group was a front group before.
+	 */
+	private void unassign(int student, int g, boolean wasFront) {
+		int mask = roster.attributes[student];
+
+		groupOf[student] = -1;
+		unassigned++;
+		counters[g].remove(mask);
+		for(int a = 0; a < GroupingRules.ATTRIBUTE_COUNT; a++) {
+			if((mask & (1 << a)) != 0) {
+				counts[g][a]--;
+				unassignedCounts[a]++;
+			}
+		}
+		for(int j: roster.incompatibles[student])
+			conflicts[g][j]--;
+
+		if(isFront[g] && !wasFront) {
+			isFront[g] = false;
+			frontGroups--;
+		}
+	}
+
+	/**
+	 * Checks that the unassigned students can still meet every group's
+	 * minimums and fit within every group's maximums, and that the students
+	 * needing a front seat still fit into the front groups allowed.
+	 *
+	 * @return False if some student can no longer be placed.
+	 */
+	private boolean isConsistent() {
+		int frontSeats = 0;
+		int[] emptySeats = new int[sizes.length];
+		int emptyCount = 0;
+
+		for(int g = 0; g < sizes.length; g++) {
+			int seats = sizes[g] - counters[g].getSize();
+			if(isFront[g])
+				frontSeats += seats;
+			else
+				emptySeats[emptyCount++] = seats;
+		}
+
+		// The groups that can still become front groups are best case the largest ones
+		Arrays.sort(emptySeats, 0, emptyCount);
+		int newFrontGroups = roster.getMaximumFrontGroups() - frontGroups;
+		for(int g = emptyCount - 1; g >= 0 && newFrontGroups > 0; g--, newFrontGroups--)
+			frontSeats += emptySeats[g];
+
+		if(unassignedCounts[GroupingRules.Attribute.FRONT_SEAT_NEEDED.ordinal()] > frontSeats)
+			return false;
+
+		for(int a = 0; a < GroupingRules.ATTRIBUTE_COUNT; a++) {
+			int needed = 0;
+			int room = 0;
+
+			for(int g = 0; g < sizes.length; g++) {
+				int index = rules.index(sizes[g]);
+				int seats = sizes[g] - counters[g].getSize();
+
+				needed += Math.max(0, rules.minimums[index][a] - counts[g][a]);
+				room += Math.min(seats, Math.max(0, rules.maximums[index][a] - counts[g][a]));
+			}
+
+			if(needed > unassignedCounts[a] || unassignedCounts[a] > room)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the member indexes of each group from the current assignment.
+	 *
+	 * @return The groups.
+	 */
+	private int[][] getGroups() {
+		int[][] groups = new int[sizes.length][];
+		int[] filled = new int[sizes.length];
+
+		for(int g = 0; g < sizes.length; g++)
+			groups[g] = new int[sizes[g]];
+		for(int i = 0; i < roster.size(); i++)
+			groups[groupOf[i]][filled[groupOf[i]]++] = i;
+		return groups;
+	}
+}
@@ -3,354 +3,516 @@ package utility;
 import java.util.*;
 import model.*;
 
+/**
+ * The GroupCreator class places a classroom's students into groups. Each
+ * attempt puts the roster in a random order and fills the groups one at a
+ * time, and attempts are repeated until every student is placed and no
+ * more groups need a front seat than the classroom has room for.
+ * 
+ * By default the order is stratified: students are shuffled within strata
+ * of the same ability level and gender, the keys AbilityComparator and
+ * GenderComparator sort by, and the strata are interleaved from random
+ * offsets. Every stretch of the order then holds about the class's mix of
+ * students, so fewer attempts fail because the students the rules limit
+ * were bunched at the end, while which students end up together stays
+ * random. The options can turn this back into a plain shuffle.
+ * 
+ * Which groups are acceptable is decided by the GroupingRules in the
+ * GroupingOptions, checked through a RuleCounter as each group is filled.
+ * The options also set the group size and what happens to leftover
+ * students. Students still waiting for a group are kept in a linked list
+ * over their roster indexes, so placing a student never shifts the rest
+ * of the roster and an attempt stays close to linear in the class size.
+ * 
+ * Unless turned off in the options, each group is started with the waiting
+ * student who has the most incompatible students still waiting, found
+ * through the roster's IncompatibilityGraph, and then filled in shuffled
+ * order. Students with many incompatibilities are placed while they still
+ * have choices instead of being left over at the end of an attempt.
+ * 
+ * Attempts work only in int arrays owned by the calling thread and reused
+ * by every attempt it makes, so a rejected attempt leaves no garbage
+ * behind; arrays and Group objects are only created for the grouping
+ * that is accepted.
+ * 
+ * In rosters of hundreds or thousands of students, an attempt fails as
+ * soon as any one group cannot be filled, so whole-roster attempts
+ * rarely succeed. There, after every REPAIR_AFTER_ATTEMPTS failed
+ * attempts, a LocalSearch repairs a grouping for a short time before
+ * attempts go on; the LocalSearch draws from the same source of
+ * randomness, so a seed still reproduces its groups.
+ * 
+ * @author Joseph Stewart
+ */
 public class GroupCreator {
 	
-	public static List<Group> createGroups(Classroom c) {		
-		List<Group> groups = new ArrayList<>();
-		
-		boolean allStudentsAssigned = false;	// All students placed in groups
-		int frontCount; // Number of groups with students needing to sit up front
-				
-		do {
-			// Create a random, working copy of studentList
-			List<Student> students = copyStudents(c.getStudents());
-			Collections.shuffle(students);
-			
-			frontCount = 0; 
-			
-			groups = createGroups(students);
-			
-			if(students.size() == 0)
-				allStudentsAssigned = true;
-			
-			for(Group g: groups) {
-				if(g.getIsFrontGroup())
-					frontCount++;
-			}
-			
-		} while(!allStudentsAssigned || frontCount > c.getMaximumFrontGroups());
-				
-		return groups; 				
+	/**
+	 * The version of the attempts. A seed only reproduces its groups under
+	 * the same version, so it must change whenever a change to the attempts
+	 * makes a seed produce different groups; results kept by seed, such as
+	 * those in a GroupingCache, are keyed by it.
+	 */
+	public static final int ALGORITHM_VERSION = 3;
+	
+	/** The smallest roster whose failed attempts are handed to a LocalSearch. */
+	private static final int REPAIR_ROSTER_SIZE = 200;
+	
+	/** The number of failed attempts before each LocalSearch. */
+	private static final int REPAIR_AFTER_ATTEMPTS = 512;
+	
+	/** The time limit of each LocalSearch in milliseconds. */
+	private static final long REPAIR_TIME_LIMIT_MILLIS = 2000;
+	
+	/** The scratch arrays of each thread, reused by every attempt it makes. */
+	private static final ThreadLocal<Attempt> ATTEMPTS = ThreadLocal.withInitial(Attempt::new);
+	
+	/** The number of strata: no, low, average or high ability times no, male or female gender. */
+	private static final int STRATA = 12;
+	
+	public static List<Group> createGroups(Classroom c) {
+		return createGroups(c, new Random());
 	}
 	
-	private static List<Student> copyStudents(Collection<Student> students) {		
-		List<Student> newStudentList = new ArrayList<>();
-		
-		for(Student student: students) {
-			newStudentList.add(student);
-		}						
-		return newStudentList;		
+	public static List<Group> createGroups(Classroom c, Random random) {
+		return createGroups(c, random, new GroupingOptions());
 	}
+	
+	public static List<Group> createGroups(Classroom c, Random random, GroupingOptions options) {
+		Roster roster = new Roster(c);
+		return roster.toGroups(createGroups(roster, random, options));
+	}
+	
+	/**
+	 * Creates groups for an indexed roster.
+	 * 
+	 * @param roster The roster to group.
+	 * @param random The source of randomness for the attempts.
+	 * @param options The grouping options.
+	 * @return The member indexes of each group.
+	 * @throws IllegalStateException Thrown if the maximum number of attempts
+	 * 								 is reached without finding a grouping, or
+	 * 								 if the accepted attempt fails the final
+	 * 								 check of the GroupingValidator.
+	 */
+	public static int[][] createGroups(Roster roster, Random random, GroupingOptions options) {
+		int[] sizes = options.getGroupSizes(roster.size());
 		
-	private static List<Group> createGroups(List<Student> students) {
+		int largestSize = 0;
+		for(int size: sizes)
+			largestSize = Math.max(largestSize, size);
 		
-		int numberOfGroups = students.size() / 4;
-		int remainder = students.size() % 4;
+		RuleCounter counter = new RuleCounter(options.getRules().compile(largestSize));
+		IncompatibilityGraph graph = options.getConstrainedFirst() ? new IncompatibilityGraph(roster) : null;
 		
-		List<Group> groups = new ArrayList<>(numberOfGroups);		
-		List<Student> remainingStudents = new ArrayList<>(2);
+		boolean stratified = options.getOrdering() == OrderingPolicy.STRATIFIED;
 		
-		int groupNumber = 1;  
-				
-		if(remainder == 1 || remainder == 2) {	
-			
-			// Find student(s) preferred to be in group of 5
-			for(Student s: students) {
-				if(s.getPreferredGroupOfFive()) {
-					remainingStudents.add(s);
-					if(remainingStudents.size() == remainder)
-						break;
-				}				
-			}	
-			
-			// Find an average student to be in group of 5
-			if(remainingStudents.size() < remainder) {
-				for(Student s: students) {
-					if(s.getAbilityLevel().equals(AbilityLevel.AVERAGE)) {						
-						remainingStudents.add(s);
-						if(remainingStudents.size() == remainder) 
-							break;
-					}
-				}
-			}			
+		Attempt attempt = ATTEMPTS.get();
+		attempt.prepare(roster.size());
+		if(stratified)
+			attempt.stratify(roster);
+		
+		int[][] groups = null;
+		int attempts = 0;
+		while(groups == null) {
+			if(attempt.run(roster, graph, sizes, options.getGroupSize(), stratified, random, counter)) {
+				groups = attempt.getGroups(sizes);
+				break;
+			}
+			attempts++;
 			
-			// Remove the students set aside for remainders
-			for(Student s: remainingStudents) {
-				students.remove(s);
-			}				
-		}		
-		
-		else if(remainder == 3) {			
-			Group group = getGroup3(students);
-			group.setGroupNumber(groupNumber); 
-			groups.add(group);
-		}	
-			 
-		// Groups of four or five students
-		for(int i = 1; i <= numberOfGroups; i++) { 		
-			if(remainder == 3)
-				groupNumber = i + 1;
-			else 
-				groupNumber = i;
+			if(roster.size() >= REPAIR_ROSTER_SIZE && attempts % REPAIR_AFTER_ATTEMPTS == 0)
+				groups = new LocalSearch(roster, options, random).solve(REPAIR_TIME_LIMIT_MILLIS);
 			
-			Group group = getGroup(students, remainingStudents);
-			group.setGroupNumber(groupNumber);
-			groups.add(group);
-		}	
-		
-		// Identify front groups
-		for(Group g : groups) {
-			for(Student s : g.getStudents()) {				
-				if(s.getFrontSeatNeeded()) {					
-					g.setIsFrontGroup(true);
-					break;
-				}
-			}			
-		}		
-		return groups;		
+			if(groups == null && options.getMaximumAttempts() > 0 && attempts >= options.getMaximumAttempts())
+				throw new IllegalStateException("No grouping was found in " + options.getMaximumAttempts() + " attempts.");
+		}
+		
+		String violation = GroupingValidator.getViolation(roster, groups, options.getRules());
+		if(violation != null)
+			throw new IllegalStateException("An accepted attempt is not a valid grouping: " + violation);
+		return groups;
 	}
+	
+	/**
+	 * The state of one attempt at grouping a roster. Its arrays are only
+	 * ever grown, so once a thread has grouped its largest roster, retrying
+	 * allocates nothing; arrays are created only for the accepted grouping.
+	 */
+	private static class Attempt {
 		
-	private static Group getGroup3(List<Student> students) {
+		/** The random order of the students. */
+		int[] order = new int[0];
 		
-		List<Student> group = new ArrayList<>(4); // Current Group
-		List<Student> incompatibles = new ArrayList<>(); // All incompatible students	
+		/** The students grouped by stratum. */
+		int[] strata = new int[0];
 		
-		int index = 0;
-		int females = 0; 
-		boolean found = false;
+		/** Where each stratum starts in strata; the last entry is the roster size. */
+		final int[] stratumStart = new int[STRATA + 1];
 		
-		while(!found && index < students.size()) {
+		/** The number of students taken from each stratum while interleaving. */
+		final int[] taken = new int[STRATA];
 		
-			Student s = students.get(index);
-			
-			if(s.getAbilityLevel().equals(AbilityLevel.HIGH)) {
-				
-				group.add(s);
-				
-				for(Student student: s.getStudents()) {
-					incompatibles.add(student);
-				}
-				
-				if(s.getGender().equals(Gender.FEMALE))
-					females++;
-				
-				students.remove(s);
-				found = true;
+		/** The random offset of each stratum while interleaving. */
+		final double[] phase = new double[STRATA];
+		
+		/** The next waiting student of each student, or -1. */
+		int[] next = new int[0];
+		
+		/** The previous waiting student of each student, or -1. */
+		int[] previous = new int[0];
+		
+		/** The first waiting student, or -1. */
+		int head;
+		
+		/** The waiting students with at least one incompatibility. */
+		int[] constrained = new int[0];
+		
+		/** The position of each student in constrained, or -1. */
+		int[] constrainedPosition = new int[0];
+		
+		/** The number of waiting constrained students. */
+		int constrainedCount;
+		
+		/** The number of incompatible students each student has still waiting. */
+		int[] remainingDegree = new int[0];
+		
+		/** The seeds of the groups larger than the target size. */
+		int[] seeds = new int[0];
+		
+		/** blocked[i] == stamp when student i is incompatible with the group being filled. */
+		int[] blocked = new int[0];
+		
+		/** The stamp of the group being filled. */
+		int stamp;
+		
+		/** The members of every group, one after another. */
+		int[] members = new int[0];
+		
+		/**
+		 * Grows the arrays to fit a roster.
+		 * 
+		 * @param n The number of students.
+		 */
+		void prepare(int n) {
+			if(order.length < n) {
+				order = new int[n];
+				strata = new int[n];
+				next = new int[n];
+				previous = new int[n];
+				constrained = new int[n];
+				constrainedPosition = new int[n];
+				remainingDegree = new int[n];
+				seeds = new int[n];
+				blocked = new int[n];
+				members = new int[n];
+				stamp = 0;
 			}
-			
-			else 
-				index++;
 		}
 		
-		// Reset values
-		index = 0;
-		found = false;
-		
-		while(!found && index < students.size()) {
+		/**
+		 * Sorts the students into strata by ability level and gender with
+		 * one counting pass, ready to be shuffled and interleaved.
+		 * 
+		 * @param roster The roster to group.
+		 */
+		void stratify(Roster roster) {
+			int n = roster.size();
 			
-			boolean compatible = true;
+			Arrays.fill(stratumStart, 0);
+			for(int i = 0; i < n; i++)
+				stratumStart[getStratum(roster.attributes[i]) + 1]++;
+			for(int s = 0; s < STRATA; s++)
+				stratumStart[s + 1] += stratumStart[s];
 			
-			Student s = students.get(index);
+			System.arraycopy(stratumStart, 0, taken, 0, STRATA);
+			for(int i = 0; i < n; i++)
+				strata[taken[getStratum(roster.attributes[i])]++] = i;
+		}
+		
+		/**
+		 * Fills order with a stratified random order: each stratum is
+		 * shuffled, given a random offset, and spread evenly over the order,
+		 * its k-th student at about (k + offset) / size of the way through.
+		 * 
+		 * @param n The number of students.
+		 * @param random The source of randomness.
+		 */
+		private void interleave(int n, Random random) {
+			for(int s = 0; s < STRATA; s++) {
+				shuffle(strata, stratumStart[s], stratumStart[s + 1], random);
+				taken[s] = 0;
+				phase[s] = random.nextDouble();
+			}
 			
-			if((s.getAbilityLevel().equals(AbilityLevel.AVERAGE)) && 
-					(females == 0 || !s.getGender().equals(Gender.FEMALE))) {
+			for(int i = 0; i < n; i++) {
+				int best = -1;
+				double bestPosition = 0;
 				
-				if(!incompatibles.isEmpty()) {					
-					// Compare student with all students in list
-					for(Student student: incompatibles) {
-						if(s.equals(student)) {
-							compatible = false;
-							break;
+				for(int s = 0; s < STRATA; s++) {
+					int size = stratumStart[s + 1] - stratumStart[s];
+					if(taken[s] < size) {
+						double position = (taken[s] + phase[s]) / size;
+						if(best == -1 || position < bestPosition) {
+							best = s;
+							bestPosition = position;
 						}
-					}							
-				}
-				
-				if(!compatible) {
-					index++;
-				}
-				
-				else { // Compatible, average, and doesn't violate female rule
-					
-					group.add(s);
-					
-					for(Student student: s.getStudents()) {
-						incompatibles.add(student);
 					}
-					
-					if(s.getGender().equals(Gender.FEMALE))
-						females++;
-					
-					students.remove(s);
-					found = true;					
-				}				
+				}
+				order[i] = strata[stratumStart[best] + taken[best]++];
 			}
-			
-			else {
-				index++;
-			}				
 		}
 		
-		// Reset values
-		index = 0;
-		found = false;
-		
-		while(!found && index < students.size()) {
+		/**
+		 * Makes one attempt at grouping the roster, leaving the members of
+		 * each group one after another in members.
+		 * 
+		 * @param roster The roster to group.
+		 * @param graph The roster's incompatibility graph, or null to fill
+		 * 				groups purely in shuffled order.
+		 * @param sizes The size of each group.
+		 * @param groupSize The target group size; larger groups are seeded.
+		 * @param stratified Whether or not the order is stratified; stratify
+		 * 					 must have been called for the roster.
+		 * @param random The source of randomness.
+		 * @param counter The counter checking the rules.
+		 * @return True if every group was filled, otherwise false.
+		 */
+		boolean run(Roster roster, IncompatibilityGraph graph, int[] sizes, int groupSize, 
+				boolean stratified, Random random, RuleCounter counter) {
+			int n = roster.size();
 			
-			boolean compatible = true;
+			// Random order of the students waiting for a group
+			if(stratified) {
+				interleave(n, random);
+			} else {
+				for(int i = 0; i < n; i++)
+					order[i] = i;
+				shuffle(order, 0, n, random);
+			}
 			
-			Student s = students.get(index);
+			// Waiting students as a doubly linked list in that order
+			for(int i = 0; i < n; i++) {
+				next[order[i]] = i + 1 < n ? order[i + 1] : -1;
+				previous[order[i]] = i > 0 ? order[i - 1] : -1;
+			}
+			head = n > 0 ? order[0] : -1;
 			
-			if((s.getAbilityLevel().equals(AbilityLevel.LOW)) && 
-					(females == 0 || !s.getGender().equals(Gender.FEMALE))) {
+			// Constrained students still waiting, and how many of their
+			// incompatible students are still waiting too
+			constrainedCount = 0;
+			if(graph != null) {
+				int[] constrainedStudents = graph.getConstrainedStudents();
+				constrainedCount = constrainedStudents.length;
+				System.arraycopy(constrainedStudents, 0, constrained, 0, constrainedCount);
+				shuffle(constrained, 0, constrainedCount, random);
 				
-				if(!incompatibles.isEmpty()) {					
-					// Compare student with all students in list
-					for(Student student: incompatibles) {
-						if(s.equals(student)) {
-							compatible = false;
-							break;
-						}
-					}							
-				}
+				Arrays.fill(constrainedPosition, 0, n, -1);
+				for(int k = 0; k < constrainedCount; k++)
+					constrainedPosition[constrained[k]] = k;
 				
-				if(!compatible) {
-					index++;
-				}
-				
-				else { // Compatible, low, and doesn't violate female rule
-					// don't need to add incompatible students or increment females
-					group.add(s);					
-					students.remove(s);
-					found = true;					
-				}				
-			}			
-			else {
-				index++;
-			}			
-		}			
-		return new Group(group);		
-	}
-	
-	private static Group getGroup(List<Student> students, List<Student> remainingStudents) {
-		
-		List<Student> group = new ArrayList<>(5); // Current Group
-		List<Student> incompatibles = new ArrayList<>(); // All incompatible students
-		
-		int groupSize = 4;		
-		int index = 0;
-		int highs = 0;
-		int lows = 0;
-		int females = 0; 
-		int males = 0;
-		
-		if(remainingStudents.size() > 0) {			
-			groupSize++;
-			
-			Student student = remainingStudents.get(0);
-			group.add(student);
-			
-			if(student.getGender().equals(Gender.FEMALE))
-				females++;
-			
-			else if(student.getGender().equals(Gender.MALE))
-				males++;
-			
-			for(Student incompatibleStudent: student.getStudents()) {
-				incompatibles.add(incompatibleStudent);
+				for(int i = 0; i < n; i++)
+					remainingDegree[i] = graph.getDegree(i);
 			}
 			
-			remainingStudents.remove(student);			
-		}		
-		
-		while(group.size() < groupSize && index < students.size() && students.size() > 0 
-				&& females < 2 && males <= 3) {			
+			// Groups larger than the target each start with a student who
+			// prefers a group of five, or else an average student
+			int largerGroups = 0;
+			for(int size: sizes) {
+				if(size > groupSize)
+					largerGroups++;
+			}
 			
-			boolean compatible = true;							
+			int seedCount = 0;
+			for(int pass = 0; pass < 2 && seedCount < largerGroups; pass++) {
+				int bit = pass == 0 ? GroupingRules.Attribute.PREFERRED_GROUP_OF_FIVE.bit() : 
+						GroupingRules.Attribute.AVERAGE.bit();
 				
-			Student student = students.get(index);								
-			
-			if(!incompatibles.isEmpty()) {					
-				// Compare student with all students in list
-				for(Student s: incompatibles) {
-					if(student.equals(s)) {
-						compatible = false;
-						break;
+				for(int i = head; i != -1 && seedCount < largerGroups; ) {
+					int following = next[i];
+					if((roster.attributes[i] & bit) != 0) {
+						seeds[seedCount++] = i;
+						unlink(i);
+						// A seed is no longer waiting, so it cannot be picked as constrained
+						removeConstrained(i);
 					}
-				}							
+					i = following;
+				}
 			}
 			
-			if(!compatible) {
-				index++;
-			}
+			int frontGroups = 0;
+			int nextSeed = 0;
+			int offset = 0;
 			
-			else {				
-				if(student.getAbilityLevel().equals(AbilityLevel.HIGH)) {						
-					if(highs < 2) {						
-						group.add(student);
-						
-						// Add new student's incompats to this group's incompats
-						for(Student s: student.getStudents()) {
-							incompatibles.add(s);
-						}
-						
-						students.remove(student);
-						highs++;
-						
-						if(student.getGender().equals(Gender.FEMALE))
-							females++;
-						
-						else if(student.getGender().equals(Gender.MALE))
-							males++;						
-					}
-					
-					else
-						index++;
+			for(int g = 0; g < sizes.length; g++) {
+				int count = 0;
+				
+				if(++stamp == Integer.MAX_VALUE) {
+					Arrays.fill(blocked, 0);
+					stamp = 1;
+				}
+				counter.reset(sizes[g]);
+				
+				if(sizes[g] > groupSize && nextSeed < seedCount) {
+					int seed = seeds[nextSeed++];
+					if(!counter.canAdd(roster.attributes[seed]))
+						return false;
 					
+					members[offset + count++] = seed;
+					place(roster, seed, counter);
+					removeConstrained(seed);
 				}
 				
-				else if(student.getAbilityLevel().equals(AbilityLevel.LOW)) {
-					if(lows < 2) {
-						group.add(student);
-						
-						// Add new student's incompats to this group's incompats
-						for(Student s: student.getStudents()) {
-							incompatibles.add(s);
-						}
-						
-						students.remove(student);
-						lows++;
-						
-						if(student.getGender().equals(Gender.FEMALE))
-							females++;
-						
-						else if(student.getGender().equals(Gender.MALE))
-							males++;
+				// The waiting student with the most waiting incompatible students
+				// has the fewest choices left, so they are placed next
+				if(graph != null) {
+					int best = -1;
+					for(int k = 0; k < constrainedCount; k++) {
+						int i = constrained[k];
+						if(blocked[i] != stamp && (best == -1 || remainingDegree[i] > remainingDegree[best]) &&
+								counter.canAdd(roster.attributes[i]))
+							best = i;
 					}
 					
-					else
-						index++;					
+					if(best != -1) {
+						members[offset + count++] = best;
+						place(roster, best, counter);
+						unlink(best);
+						removeConstrained(best);
+					}
 				}
 				
-				else {
-					group.add(student);
+				int i = head;
+				while(count < sizes[g] && i != -1) {
+					int following = next[i];
 					
-					// Add new student's incompats to this group's incompats
-					for(Student s: student.getStudents()) {
-						incompatibles.add(s);
+					if(blocked[i] != stamp && counter.canAdd(roster.attributes[i])) {
+						members[offset + count++] = i;
+						place(roster, i, counter);
+						unlink(i);
+						if(graph != null)
+							removeConstrained(i);
 					}
-					
-					students.remove(student);
-					
-					if(student.getGender().equals(Gender.FEMALE))
-						females++;		
-					
-					else if(student.getGender().equals(Gender.MALE))
-						males++;
-				}				
-			}				
-		}			
+					i = following;
+				}
+				
+				if(count < sizes[g])
+					return false;
+				
+				boolean isFront = false;
+				for(int k = offset; k < offset + count; k++)
+					isFront |= roster.frontSeatNeeded[members[k]];
+				
+				if(isFront && ++frontGroups > roster.getMaximumFrontGroups())
+					return false;
+				
+				offset += count;
+			}
+			return true;
+		}
+		
+		/**
+		 * Returns the groups of the last successful attempt.
+		 * 
+		 * @param sizes The size of each group.
+		 * @return The member indexes of each group.
+		 */
+		int[][] getGroups(int[] sizes) {
+			int[][] groups = new int[sizes.length][];
+			int offset = 0;
+			for(int g = 0; g < sizes.length; g++) {
+				groups[g] = Arrays.copyOfRange(members, offset, offset + sizes[g]);
+				offset += sizes[g];
+			}
+			return groups;
+		}
+		
+		/**
+		 * Records a student joining the group being filled.
+		 * 
+		 * @param roster The roster.
+		 * @param student The student's index.
+		 * @param counter The group's rule counter.
+		 */
+		private void place(Roster roster, int student, RuleCounter counter) {
+			counter.add(roster.attributes[student]);
+			for(int j: roster.incompatibles[student]) {
+				blocked[j] = stamp;
+				remainingDegree[j]--;
+			}
+		}
+		
+		/**
+		 * Removes a student from the waiting list.
+		 * 
+		 * @param student The student's index.
+		 */
+		private void unlink(int student) {
+			if(previous[student] == -1)
+				head = next[student];
+			else
+				next[previous[student]] = next[student];
+			
+			if(next[student] != -1)
+				previous[next[student]] = previous[student];
+		}
 		
-		return new Group(group);
+		/**
+		 * Removes a student from the waiting constrained students by moving
+		 * the last one into their place.
+		 * 
+		 * @param student The student's index.
+		 */
+		private void removeConstrained(int student) {
+			if(constrainedCount == 0 || constrainedPosition[student] == -1)
+				return;
+			
+			int k = constrainedPosition[student];
+			int last = constrained[--constrainedCount];
+			constrained[k] = last;
+			constrainedPosition[last] = k;
+			constrainedPosition[student] = -1;
+		}
+	}
+	
+	/**
+	 * Returns the stratum of a student: their ability level and gender,
+	 * ranked as AbilityComparator and GenderComparator rank them.
+	 * 
+	 * @param attributes The student's attribute mask.
+	 * @return The stratum, from 0 to STRATA - 1.
+	 */
+	private static int getStratum(int attributes) {
+		int ability = 0;
+		if((attributes & GroupingRules.Attribute.HIGH.bit()) != 0)
+			ability = 3;
+		else if((attributes & GroupingRules.Attribute.AVERAGE.bit()) != 0)
+			ability = 2;
+		else if((attributes & GroupingRules.Attribute.LOW.bit()) != 0)
+			ability = 1;
+		
+		int gender = 0;
+		if((attributes & GroupingRules.Attribute.MALE.bit()) != 0)
+			gender = 1;
+		else if((attributes & GroupingRules.Attribute.FEMALE.bit()) != 0)
+			gender = 2;
+		
+		return ability * 3 + gender;
+	}
+	
+	/**
+	 * Shuffles a range of an array.
+	 * 
+	 * @param values The array.
+	 * @param from The first entry to shuffle.
+	 * @param to The entry after the last one to shuffle.
+	 * @param random The source of randomness.
+	 */
+	private static void shuffle(int[] values, int from, int to, Random random) {
+		for(int i = to - 1; i > from; i--) {
+			int j = from + random.nextInt(i - from + 1);
+			int temp = values[i];
+			values[i] = values[j];
+			values[j] = temp;
+		}
 	}
-
 }
@@ -0,0 +1,172 @@
+package utility;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The GroupPlacer class seats groups at the tables of a RoomLayout. Each
+ * group is given its own table with enough seats, and the total distance
+ * from the front of the room of the students who need a front seat is as
+ * small as possible. This is the assignment problem, solved exactly with
+ * the Hungarian algorithm in time cubic in the number of tables.
+ *
+ * The groups are measured once, so when the layout changes the same
+ * groups can be placed again in well under a millisecond for any real
+ * classroom, without regrouping anyone.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupPlacer {
+
+	/** The cost of a table too small for a group, larger than any real cost. */
+	private final static double TOO_SMALL = 1e12;
+
+	/** The groups to place. */
+	private final List<Group> groups;
+
+	/** The number of students in each group. */
+	private final int[] sizes;
+
+	/** The number of students needing a front seat in each group. */
+	private final int[] frontCounts;
+
+	/**
+	 * Constructor which measures the groups to place.
+	 *
+	 * @param groups The groups.
+	 */
+	public GroupPlacer(List<Group> groups) {
+		this.groups = new ArrayList<>(groups);
+		sizes = new int[groups.size()];
+		frontCounts = new int[groups.size()];
+
+		for(int g = 0; g < groups.size(); g++) {
+			for(Student s: groups.get(g).getStudents()) {
+				sizes[g]++;
+				if(s.getFrontSeatNeeded())
+					frontCounts[g]++;
+			}
+		}
+	}
+
+	/**
+	 * Places the groups at the tables of a layout.
+	 *
+	 * @param layout The room layout.
+	 * @return The table of each group, in the order the groups were given.
+	 * @throws IllegalArgumentException Thrown if the groups cannot all be
+	 * 									seated at tables with enough seats.
+	 */
+	public List<Table> place(RoomLayout layout) {
+		List<Table> tables = layout.getTables();
+		int n = tables.size();
+		if(groups.size() > n)
+			throw new IllegalArgumentException(groups.size() + " groups do not fit at " + n + " tables.");
+
+		// Missing groups are empty rows that fit anywhere at no cost
+		double[][] cost = new double[n][n];
+		for(int g = 0; g < groups.size(); g++) {
+			for(int t = 0; t < n; t++) {
+				Table table = tables.get(t);
+				cost[g][t] = table.getSeats() < sizes[g] ? TOO_SMALL : frontCounts[g] * table.getDistanceToFront();
+			}
+		}
+
+		int[] tableOf = solveAssignment(cost);
+
+		List<Table> placement = new ArrayList<>(groups.size());
+		for(int g = 0; g < groups.size(); g++) {
+			if(cost[g][tableOf[g]] >= TOO_SMALL)
+				throw new IllegalArgumentException("Not every group fits at a table with enough seats.");
+			placement.add(tables.get(tableOf[g]));
+		}
+		return placement;
+	}
+
+	/**
+	 * Returns the total distance from the front of the room of the
+	 * students needing a front seat, for a placement made by place.
+	 *
+	 * @param placement The table of each group.
+	 * @return The total distance.
+	 */
+	public double getCost(List<Table> placement) {
+		double cost = 0;
+		for(int g = 0; g < placement.size(); g++)
+			cost += frontCounts[g] * placement.get(g).getDistanceToFront();
+		return cost;
+	}
+
+	/**
+	 * Solves the assignment problem for a square cost matrix with the
+	 * Hungarian algorithm, keeping a potential for every row and column and
+	 * adding one row at a time along a shortest augmenting path.
+	 *
+	 * @param cost The cost of giving each row each column.
+	 * @return The column given to each row, with the least total cost.
+	 */
+	public static int[] solveAssignment(double[][] cost) {
+		int n = cost.length;
+
+		// Rows and columns are numbered from one; column zero is the
+		// starting point of each augmenting path
+		double[] rowPotential = new double[n + 1];
+		double[] columnPotential = new double[n + 1];
+		int[] rowOf = new int[n + 1];
+		int[] way = new int[n + 1];
+		double[] minimum = new double[n + 1];
+		boolean[] used = new boolean[n + 1];
+
+		for(int row = 1; row <= n; row++) {
+			rowOf[0] = row;
+			int column = 0;
+			Arrays.fill(minimum, Double.POSITIVE_INFINITY);
+			Arrays.fill(used, false);
+
+			do {
+				used[column] = true;
+				int current = rowOf[column];
+				double delta = Double.POSITIVE_INFINITY;
+				int nextColumn = 0;
+
+				for(int j = 1; j <= n; j++) {
+					if(used[j])
+						continue;
+
+					double reduced = cost[current - 1][j - 1] - rowPotential[current] - columnPotential[j];
+					if(reduced < minimum[j]) {
+						minimum[j] = reduced;
+						way[j] = column;
+					}
+					if(minimum[j] < delta) {
+						delta = minimum[j];
+						nextColumn = j;
+					}
+				}
+
+				for(int j = 0; j <= n; j++) {
+					if(used[j]) {
+						rowPotential[rowOf[j]] += delta;
+						columnPotential[j] -= delta;
+					} else {
+						minimum[j] -= delta;
+					}
+				}
+				column = nextColumn;
+			} while(rowOf[column] != 0);
+
+			// Flip the augmenting path back to its start
+			do {
+				int previous = way[column];
+				rowOf[column] = rowOf[previous];
+				column = previous;
+			} while(column != 0);
+		}
+
+		int[] columnOf = new int[n];
+		for(int j = 1; j <= n; j++)
+			columnOf[rowOf[j] - 1] = j - 1;
+		return columnOf;
+	}
+}
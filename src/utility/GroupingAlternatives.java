@@ -0,0 +1,282 @@
+package utility;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The GroupingAlternatives class creates several groupings of one
+ * classroom that differ in a meaningful way, so a teacher can be offered a
+ * real choice instead of the same groups with new numbers.
+ *
+ * Every grouping found is reduced to a canonical form, its groups of
+ * sorted student indexes in sorted order, so groupings that only number
+ * their groups differently are recognized as the same. Two groupings
+ * differ by the number of students whose groupmates are not the same in
+ * both, and a grouping is only kept if it differs enough from every
+ * grouping kept before it.
+ *
+ * The search is shared between all of the alternatives: the roster and
+ * rules are prepared once, and besides new attempts from GroupCreator,
+ * alternatives are found by trading students between the groups of a
+ * grouping already kept. Every candidate is checked by the
+ * GroupingValidator before it can become an alternative, and every search
+ * is bounded: options that never give up are limited to
+ * DEFAULT_MAXIMUM_ATTEMPTS for the first grouping and to
+ * ATTEMPTS_PER_CANDIDATE for each fresh attempt after it, so a roster
+ * that cannot be grouped fails instead of searching forever.
+ *
+ * @author Joseph Stewart
+ */
+public final class GroupingAlternatives {
+
+	/** The most GroupCreator attempts made for the first grouping when the options set no maximum. */
+	public final static int DEFAULT_MAXIMUM_ATTEMPTS = 100000;
+
+	/** The most GroupCreator attempts made for each fresh candidate after the first grouping. */
+	private final static int ATTEMPTS_PER_CANDIDATE = 256;
+
+	/** The number of failed walks allowed for each alternative still wanted. */
+	private final static int WALKS_PER_ALTERNATIVE = 64;
+
+	/** The number of swaps tried on each walk for every student on the roster. */
+	private final static int SWAP_TRIES_PER_STUDENT = 20;
+
+	/** Prevents instantiation. */
+	private GroupingAlternatives() { }
+
+	/**
+	 * Creates alternative groupings of a classroom that each move at least a
+	 * quarter of the class compared with every other alternative.
+	 *
+	 * @param c The classroom to group.
+	 * @param count The number of alternatives wanted.
+	 * @param options The grouping options.
+	 * @param random The source of randomness.
+	 * @return The alternatives, as many as could be found up to count.
+	 */
+	public static List<List<Group>> createAlternatives(Classroom c, int count, GroupingOptions options, Random random) {
+		Roster roster = new Roster(c);
+
+		List<List<Group>> alternatives = new ArrayList<>(count);
+		for(int[][] groups: createAlternatives(roster, count, roster.size() / 4, options, random))
+			alternatives.add(roster.toGroups(groups));
+		return alternatives;
+	}
+
+	/**
+	 * Creates alternative groupings of an indexed roster. Fewer than count
+	 * alternatives are returned if the search stops finding groupings that
+	 * differ enough, which happens when the rules leave few choices.
+	 *
+	 * @param roster The roster to group.
+	 * @param count The number of alternatives wanted.
+	 * @param minimumDifference The number of students who must have
+	 * 							different groupmates between any two alternatives.
+	 * @param options The grouping options.
+	 * @param random The source of randomness.
+	 * @return The member indexes of each group of each alternative.
+	 * @throws IllegalStateException Thrown if the maximum number of attempts,
+	 * 								 or DEFAULT_MAXIMUM_ATTEMPTS if the options
+	 * 								 set none, is reached without finding any grouping.
+	 */
+	public static List<int[][]> createAlternatives(Roster roster, int count, int minimumDifference,
+			GroupingOptions options, Random random) {
+		List<int[][]> alternatives = new ArrayList<>();
+		if(count <= 0)
+			return alternatives;
+
+		int n = roster.size();
+		int[] sizes = options.getGroupSizes(n);
+		int largestSize = 0;
+		for(int size: sizes)
+			largestSize = Math.max(largestSize, size);
+		CompiledRules rules = options.getRules().compile(largestSize);
+
+		Set<String> seen = new HashSet<>();
+		List<int[]> groupOfs = new ArrayList<>();
+
+		GroupingOptions first = limitAttempts(options, DEFAULT_MAXIMUM_ATTEMPTS);
+		GroupingOptions fresh = limitAttempts(options, ATTEMPTS_PER_CANDIDATE);
+
+		// Any grouping at all comes first; alternatives are only wanted if one exists
+		accept(GroupCreator.createGroups(roster, random, first), n, minimumDifference, alternatives, groupOfs, seen);
+
+		int failures = 0;
+		while(alternatives.size() < count && failures < WALKS_PER_ALTERNATIVE * (count - alternatives.size())) {
+			int[][] candidate;
+
+			// Alternate between walking away from a kept grouping and a
+			// fresh attempt, which reaches groupings swaps cannot
+			if(failures % 2 == 0) {
+				int[][] start = alternatives.get(random.nextInt(alternatives.size()));
+				candidate = walk(new GroupingState(roster, start, rules), Math.max(1, minimumDifference), random);
+			} else {
+				try {
+					candidate = GroupCreator.createGroups(roster, random, fresh);
+				} catch(IllegalStateException e) {
+					candidate = null;
+				}
+			}
+
+			if(candidate != null && !GroupingValidator.isValid(roster, candidate, options.getRules()))
+				candidate = null;
+
+			if(candidate != null && accept(candidate, n, minimumDifference, alternatives, groupOfs, seen))
+				failures = 0;
+			else
+				failures++;
+		}
+		return alternatives;
+	}
+
+	/**
+	 * Returns a copy of the options whose maximum number of attempts is at
+	 * most the given limit.
+	 *
+	 * @param options The grouping options.
+	 * @param attempts The limit on the number of attempts.
+	 * @return The limited options.
+	 */
+	private static GroupingOptions limitAttempts(GroupingOptions options, int attempts) {
+		GroupingOptions limited = new GroupingOptions(options);
+		if(options.getMaximumAttempts() == 0 || options.getMaximumAttempts() > attempts)
+			limited.setMaximumAttempts(attempts);
+		return limited;
+	}
+
+	/**
+	 * Trades random pairs of students between groups until enough students
+	 * have moved or the tries run out.
+	 *
+	 * @param state The grouping to change.
+	 * @param swaps The number of successful swaps wanted.
+	 * @param random The source of randomness.
+	 * @return The changed grouping, or null if no swap was possible.
+	 */
+	private static int[][] walk(GroupingState state, int swaps, Random random) {
+		int n = state.roster.size();
+		int done = 0;
+
+		for(int tries = SWAP_TRIES_PER_STUDENT * n; tries > 0 && done < swaps; tries--) {
+			int i = random.nextInt(n);
+			int j = random.nextInt(n);
+
+			if(state.canSwap(i, j)) {
+				state.swap(i, j);
+				done++;
+			}
+		}
+		return done == 0 ? null : state.getGroups();
+	}
+
+	/**
+	 * Keeps a grouping if it is new and differs enough from every kept grouping.
+	 *
+	 * @param groups The grouping.
+	 * @param n The number of students.
+	 * @param minimumDifference The minimum difference between kept groupings.
+	 * @param alternatives The kept groupings.
+	 * @param groupOfs The group of each student in each kept grouping.
+	 * @param seen The canonical forms of every grouping seen.
+	 * @return True if the grouping was kept, otherwise false.
+	 */
+	private static boolean accept(int[][] groups, int n, int minimumDifference, List<int[][]> alternatives,
+			List<int[]> groupOfs, Set<String> seen) {
+		int[][] canonical = toCanonical(groups);
+		if(!seen.add(Arrays.deepToString(canonical)))
+			return false;
+
+		int[] groupOf = getGroupOf(canonical, n);
+		for(int k = 0; k < alternatives.size(); k++) {
+			if(getDifference(canonical, alternatives.get(k), groupOfs.get(k)) < minimumDifference)
+				return false;
+		}
+
+		alternatives.add(canonical);
+		groupOfs.add(groupOf);
+		return true;
+	}
+
+	/**
+	 * Returns the canonical form of a grouping: each group's members sorted,
+	 * and the groups sorted by size and then by members.
+	 *
+	 * @param groups The member indexes of each group.
+	 * @return The canonical grouping.
+	 */
+	public static int[][] toCanonical(int[][] groups) {
+		int[][] canonical = new int[groups.length][];
+		for(int g = 0; g < groups.length; g++) {
+			canonical[g] = Arrays.copyOf(groups[g], groups[g].length);
+			Arrays.sort(canonical[g]);
+		}
+
+		// Smaller groups first, as createGroups makes them
+		Arrays.sort(canonical, (a, b) -> {
+			if(a.length != b.length)
+				return Integer.compare(a.length, b.length);
+			for(int i = 0; i < a.length; i++) {
+				if(a[i] != b[i])
+					return Integer.compare(a[i], b[i]);
+			}
+			return 0;
+		});
+		return canonical;
+	}
+
+	/**
+	 * Returns the number of students whose groupmates differ between two groupings.
+	 *
+	 * @param a One grouping.
+	 * @param b The other grouping.
+	 * @param n The number of students.
+	 * @return The number of students with different groupmates.
+	 */
+	public static int getDifference(int[][] a, int[][] b, int n) {
+		return getDifference(a, b, getGroupOf(b, n));
+	}
+
+	/**
+	 * Returns the number of students whose groupmates differ between two
+	 * groupings, given the group of each student in the second.
+	 *
+	 * @param a One grouping.
+	 * @param b The other grouping.
+	 * @param groupOfB The group of each student in b.
+	 * @return The number of students with different groupmates.
+	 */
+	private static int getDifference(int[][] a, int[][] b, int[] groupOfB) {
+		int difference = 0;
+
+		for(int[] members: a) {
+			for(int i: members) {
+				int[] other = b[groupOfB[i]];
+				boolean same = other.length == members.length;
+
+				for(int k = 0; same && k < members.length; k++)
+					same = groupOfB[members[k]] == groupOfB[i];
+
+				if(!same)
+					difference++;
+			}
+		}
+		return difference;
+	}
+
+	/**
+	 * Returns the group of each student in a grouping.
+	 *
+	 * @param groups The member indexes of each group.
+	 * @param n The number of students.
+	 * @return The group of each student.
+	 */
+	private static int[] getGroupOf(int[][] groups, int n) {
+		int[] groupOf = new int[n];
+		for(int g = 0; g < groups.length; g++) {
+			for(int i: groups[g])
+				groupOf[i] = g;
+		}
+		return groupOf;
+	}
+}
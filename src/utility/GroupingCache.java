@@ -0,0 +1,386 @@
+package utility;
+
+import java.io.*;
+import java.util.*;
+
+import model.*;
+
+/**
+ * The GroupingCache class keeps the results of createGroups keyed by the
+ * RosterFingerprint of the request, so asking again for the same
+ * classroom with the same seed returns at once instead of searching again.
+ *
+ * Unseeded requests for "another option" are served from a list of
+ * alternatives kept per roster, which can be filled ahead of time. Only
+ * student ids are stored, so cached groups are rebuilt from the classroom's
+ * current Student objects. The least recently used entries are evicted
+ * once the cache is full, and the cache can be saved to and loaded from a file.
+ *
+ * Keys include GroupCreator.ALGORITHM_VERSION, since a seed reproduces its
+ * groups only under the same version of the attempts, and a cache file
+ * saved under another version is not loaded.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingCache {
+
+	/** Default maximum number of cached entries. */
+	public final static int DEFAULT_MAXIMUM_ENTRIES = 1024;
+
+	/** Default maximum number of alternatives kept per roster. */
+	public final static int DEFAULT_MAXIMUM_ALTERNATIVES = 8;
+
+	/** The format version written at the start of a cache file. */
+	private final static int FILE_VERSION = 2;
+
+	/** The cached groupings in least recently used order. */
+	private final LinkedHashMap<String, CacheEntry> entries;
+
+	/** The maximum number of alternatives kept per roster. */
+	private final int maximumAlternatives;
+
+	/** The file the cache is saved to, or null if it is kept in memory only. */
+	private final File file;
+
+	/** The options groupings are created with. */
+	private final GroupingOptions options;
+
+	/**
+	 * The groupings cached under one key. A seeded entry holds one grouping;
+	 * an alternatives entry holds several and remembers which one is next.
+	 */
+	private static class CacheEntry {
+		final List<StoredGrouping> groupings = new ArrayList<>();
+		int next;
+	}
+
+	/** A grouping reduced to student ids and front group flags. */
+	private static class StoredGrouping {
+		final int[][] studentIds;
+		final boolean[] isFrontGroup;
+
+		StoredGrouping(int[][] studentIds, boolean[] isFrontGroup) {
+			this.studentIds = studentIds;
+			this.isFrontGroup = isFrontGroup;
+		}
+	}
+
+	/** Default constructor for an in-memory cache of the default size. */
+	public GroupingCache() {
+		this(DEFAULT_MAXIMUM_ENTRIES, DEFAULT_MAXIMUM_ALTERNATIVES, null, new GroupingOptions());
+	}
+
+	/**
+	 * Constructor which sets the size limits, the file the cache is saved
+	 * to, and the options groupings are created with. If the file exists,
+	 * its entries are loaded.
+	 *
+	 * @param maximumEntries The maximum number of cached entries.
+	 * @param maximumAlternatives The maximum number of alternatives per roster.
+	 * @param file The cache file, or null to keep the cache in memory only.
+	 * @param options The grouping options, which are part of every key.
+	 */
+	public GroupingCache(final int maximumEntries, int maximumAlternatives, File file, GroupingOptions options) {
+		this.maximumAlternatives = maximumAlternatives;
+		this.file = file;
+		this.options = options;
+
+		entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > maximumEntries;
+			}
+		};
+
+		if(file != null && file.exists()) {
+			try {
+				load();
+			} catch (IOException e) {
+				// An unreadable cache is only a cold cache
+				e.printStackTrace();
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the grouping createGroups produces for the classroom with the
+	 * given seed, from the cache if it was created before.
+	 *
+	 * @param classroom The classroom to group.
+	 * @param seed The random seed.
+	 * @return The groups.
+	 */
+	public List<Group> getGroups(Classroom classroom, long seed) {
+		String key = RosterFingerprint.compute(classroom, getSettings(), seed);
+
+		synchronized(entries) {
+			CacheEntry entry = entries.get(key);
+			if(entry != null)
+				return restore(classroom, entry.groupings.get(0));
+		}
+
+		List<Group> groups = GroupCreator.createGroups(classroom, new Random(seed), options);
+
+		CacheEntry entry = new CacheEntry();
+		entry.groupings.add(store(groups));
+		synchronized(entries) {
+			entries.put(key, entry);
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns another option for grouping the classroom. Precomputed
+	 * alternatives are handed out in turn; once they are used up a new
+	 * grouping is created and kept for later callers.
+	 *
+	 * @param classroom The classroom to group.
+	 * @return The groups.
+	 */
+	public List<Group> getAlternative(Classroom classroom) {
+		String key = RosterFingerprint.compute(classroom, getSettings());
+
+		synchronized(entries) {
+			CacheEntry entry = entries.get(key);
+			if(entry != null && entry.next < entry.groupings.size())
+				return restore(classroom, entry.groupings.get(entry.next++));
+		}
+
+		List<Group> groups = GroupCreator.createGroups(classroom, new Random(), options);
+		addAlternative(key, store(groups), true);
+		return groups;
+	}
+
+	/**
+	 * Creates alternatives for the classroom until the given number is
+	 * cached, so later calls to getAlternative return at once. The missing
+	 * alternatives come from one shared search and differ from each other
+	 * by at least a quarter of the class where the rules allow it. Like
+	 * the search, topping up is bounded, so fewer alternatives are cached
+	 * if groupings of the roster that differ enough are too rare to find.
+	 *
+	 * @param classroom The classroom to group.
+	 * @param count The number of alternatives wanted.
+	 * @throws IllegalStateException Thrown if no grouping of the classroom
+	 * 								 is found at all.
+	 */
+	public void precomputeAlternatives(Classroom classroom, int count) {
+		String key = RosterFingerprint.compute(classroom, getSettings());
+		count = Math.min(count, maximumAlternatives);
+
+		int missing = count - getAlternativeCount(key);
+		if(missing <= 0)
+			return;
+
+		// Rules that leave few choices yield fewer alternatives, never repeats
+		for(List<Group> groups: GroupingAlternatives.createAlternatives(classroom, missing, options, new Random()))
+			addAlternative(key, store(groups), false);
+	}
+
+	/**
+	 * Returns the settings that are part of every key: the options and the
+	 * version of the attempts that created the groupings.
+	 *
+	 * @return A stable description of the settings.
+	 */
+	private String getSettings() {
+		return options + ";algorithm=" + GroupCreator.ALGORITHM_VERSION;
+	}
+
+	/**
+	 * Returns the number of unused alternatives cached under a key.
+	 *
+	 * @param key The roster fingerprint.
+	 * @return The number of alternatives not yet handed out.
+	 */
+	private int getAlternativeCount(String key) {
+		synchronized(entries) {
+			CacheEntry entry = entries.get(key);
+			return entry == null ? 0 : entry.groupings.size() - entry.next;
+		}
+	}
+
+	/**
+	 * Adds an alternative under a key, dropping the oldest handed out
+	 * alternative once the limit is reached.
+	 *
+	 * @param key The roster fingerprint.
+	 * @param grouping The alternative.
+	 * @param handedOut Whether or not the alternative was already returned.
+	 */
+	private void addAlternative(String key, StoredGrouping grouping, boolean handedOut) {
+		synchronized(entries) {
+			CacheEntry entry = entries.get(key);
+			if(entry == null) {
+				entry = new CacheEntry();
+				entries.put(key, entry);
+			}
+
+			if(entry.groupings.size() >= maximumAlternatives) {
+				if(entry.next == 0)
+					return;
+				entry.groupings.remove(0);
+				entry.next--;
+			}
+
+			if(handedOut) {
+				entry.groupings.add(entry.next, grouping);
+				entry.next++;
+			} else {
+				entry.groupings.add(grouping);
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public void clear() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 *
+	 * @return The number of entries.
+	 */
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Reduces groups to their student ids and front group flags.
+	 *
+	 * @param groups The groups, in group number order.
+	 * @return The stored grouping.
+	 */
+	private static StoredGrouping store(List<Group> groups) {
+		int[][] studentIds = new int[groups.size()][];
+		boolean[] isFrontGroup = new boolean[groups.size()];
+
+		for(int i = 0; i < groups.size(); i++) {
+			Group g = groups.get(i);
+			studentIds[i] = new int[g.getStudents().size()];
+
+			int j = 0;
+			for(Student s: g.getStudents())
+				studentIds[i][j++] = s.getId();
+			Arrays.sort(studentIds[i]);
+
+			isFrontGroup[i] = g.getIsFrontGroup();
+		}
+		return new StoredGrouping(studentIds, isFrontGroup);
+	}
+
+	/**
+	 * Rebuilds groups from a stored grouping using the classroom's students.
+	 *
+	 * @param classroom The classroom the grouping was created for.
+	 * @param grouping The stored grouping.
+	 * @return The groups, numbered from one.
+	 */
+	private static List<Group> restore(Classroom classroom, StoredGrouping grouping) {
+		Map<Integer, Student> roster = new HashMap<>();
+		for(Student s: classroom.getStudents())
+			roster.put(s.getId(), s);
+
+		List<Group> groups = new ArrayList<>(grouping.studentIds.length);
+		for(int i = 0; i < grouping.studentIds.length; i++) {
+			List<Student> students = new ArrayList<>(grouping.studentIds[i].length);
+			for(int id: grouping.studentIds[i])
+				students.add(roster.get(id));
+
+			Group g = new Group(students);
+			g.setGroupNumber(i + 1);
+			g.setIsFrontGroup(grouping.isFrontGroup[i]);
+			groups.add(g);
+		}
+		return groups;
+	}
+
+	/**
+	 * Saves the cache to its file. Does nothing for an in-memory cache.
+	 *
+	 * @throws IOException Thrown if the file cannot be written.
+	 */
+	public void save() throws IOException {
+		if(file == null)
+			return;
+
+		// Written next to the cache file first so a failed save keeps the old one
+		File temporary = new File(file.getPath() + ".tmp");
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			synchronized(entries) {
+				out.writeInt(FILE_VERSION);
+				out.writeInt(GroupCreator.ALGORITHM_VERSION);
+				out.writeInt(entries.size());
+
+				for(Map.Entry<String, CacheEntry> e: entries.entrySet()) {
+					out.writeUTF(e.getKey());
+					out.writeInt(e.getValue().groupings.size());
+
+					for(StoredGrouping grouping: e.getValue().groupings) {
+						out.writeInt(grouping.studentIds.length);
+
+						for(int i = 0; i < grouping.studentIds.length; i++) {
+							out.writeBoolean(grouping.isFrontGroup[i]);
+							out.writeInt(grouping.studentIds[i].length);
+							for(int id: grouping.studentIds[i])
+								out.writeInt(id);
+						}
+					}
+				}
+			}
+		}
+
+		if(file.exists() && !file.delete())
+			throw new IOException("Could not replace " + file);
+		if(!temporary.renameTo(file))
+			throw new IOException("Could not rename " + temporary + " to " + file);
+	}
+
+	/**
+	 * Loads the entries saved in the cache file. Loaded alternatives count
+	 * as not yet handed out. A file of another format or another version
+	 * of the attempts is ignored.
+	 *
+	 * @throws IOException Thrown if the file cannot be read.
+	 */
+	private void load() throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			// Groupings from another version of the attempts would be replayed as current
+			if(in.readInt() != FILE_VERSION || in.readInt() != GroupCreator.ALGORITHM_VERSION)
+				return;
+
+			int entryCount = in.readInt();
+			for(int e = 0; e < entryCount; e++) {
+				String key = in.readUTF();
+				CacheEntry entry = new CacheEntry();
+
+				int groupingCount = in.readInt();
+				for(int g = 0; g < groupingCount; g++) {
+					int groupCount = in.readInt();
+					int[][] studentIds = new int[groupCount][];
+					boolean[] isFrontGroup = new boolean[groupCount];
+
+					for(int i = 0; i < groupCount; i++) {
+						isFrontGroup[i] = in.readBoolean();
+						studentIds[i] = new int[in.readInt()];
+						for(int j = 0; j < studentIds[i].length; j++)
+							studentIds[i][j] = in.readInt();
+					}
+					entry.groupings.add(new StoredGrouping(studentIds, isFrontGroup));
+				}
+				entries.put(key, entry);
+			}
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package utility;
+
+/**
+ * The GroupingOptions class holds the settings GroupCreator uses when
+ * creating groups. A new instance holds the settings the school has always
+ * used: groups of four, with one or two groups of five or one group of
+ * three taking up any leftover students.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingOptions {
+
+	/** The rules every group must satisfy. */
+	private GroupingRules rules = GroupingRules.getDefault();
+
+	/** Flag for whether or not the rules are the school's rules for the group size. */
+	private boolean defaultRules = true;
+
+	/** The number of students most groups should have. */
+	private int groupSize = 4;
+
+	/** What happens to students left over after forming groups of groupSize. */
+	private RemainderPolicy remainderPolicy = RemainderPolicy.BALANCED;
+
+	/** The number of attempts made before giving up, or zero to never give up. */
+	private int maximumAttempts;
+
+	/** Flag for whether or not each group starts with its most constrained student. */
+	private boolean constrainedFirst = true;
+
+	/** The order in which waiting students are offered to each group. */
+	private OrderingPolicy ordering = OrderingPolicy.STRATIFIED;
+
+	/** Default constructor for the school's usual options. */
+	public GroupingOptions() { }
+
+	/**
+	 * Copy constructor. The rules are shared, not copied.
+	 *
+	 * @param other The options to copy.
+	 */
+	public GroupingOptions(GroupingOptions other) {
+		rules = other.rules;
+		defaultRules = other.defaultRules;
+		groupSize = other.groupSize;
+		remainderPolicy = other.remainderPolicy;
+		maximumAttempts = other.maximumAttempts;
+		constrainedFirst = other.constrainedFirst;
+		ordering = other.ordering;
+	}
+
+	/**
+	 * Returns the rules every group must satisfy.
+	 *
+	 * @return The grouping rules.
+	 */
+	public GroupingRules getRules() {
+		return rules;
+	}
+
+	/**
+	 * Returns the number of students most groups should have.
+	 *
+	 * @return The target group size.
+	 */
+	public int getGroupSize() {
+		return groupSize;
+	}
+
+	/**
+	 * Returns what happens to students left over after forming groups of
+	 * the target size.
+	 *
+	 * @return The remainder policy.
+	 */
+	public RemainderPolicy getRemainderPolicy() {
+		return remainderPolicy;
+	}
+
+	/**
+	 * Returns the number of attempts made before giving up.
+	 *
+	 * @return The maximum number of attempts, or zero to never give up.
+	 */
+	public int getMaximumAttempts() {
+		return maximumAttempts;
+	}
+
+	/**
+	 * Returns whether or not each group is started with the waiting
+	 * student who has the most incompatibilities left.
+	 *
+	 * @return True if constrained students are placed first.
+	 */
+	public boolean getConstrainedFirst() {
+		return constrainedFirst;
+	}
+
+	/**
+	 * Returns the order in which waiting students are offered to each group.
+	 *
+	 * @return The ordering policy.
+	 */
+	public OrderingPolicy getOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Sets the rules every group must satisfy. Until this is called, the
+	 * rules are the school's rules for the target group size.
+	 *
+	 * @param rules The grouping rules.
+	 */
+	public void setRules(GroupingRules rules) {
+		if(rules != null) {
+			this.rules = rules;
+			defaultRules = false;
+		}
+	}
+
+	/**
+	 * Sets the number of students most groups should have. If the rules
+	 * were never set, they become the school's rules for this size.
+	 *
+	 * @param groupSize The target group size, from 2 up.
+	 */
+	public void setGroupSize(int groupSize) {
+		if(groupSize > 1 && groupSize < GroupingRules.MAXIMUM_GROUP_SIZE) {
+			this.groupSize = groupSize;
+			if(defaultRules)
+				rules = GroupingRules.getDefault(groupSize);
+		}
+	}
+
+	/**
+	 * Sets what happens to students left over after forming groups of the
+	 * target size.
+	 *
+	 * @param remainderPolicy The remainder policy.
+	 */
+	public void setRemainderPolicy(RemainderPolicy remainderPolicy) {
+		if(remainderPolicy != null)
+			this.remainderPolicy = remainderPolicy;
+	}
+
+	/**
+	 * Sets the number of attempts made before giving up.
+	 *
+	 * @param maximumAttempts The maximum number of attempts, or zero to never give up.
+	 */
+	public void setMaximumAttempts(int maximumAttempts) {
+		if(maximumAttempts >= 0)
+			this.maximumAttempts = maximumAttempts;
+	}
+
+	/**
+	 * Sets whether or not each group is started with the waiting student
+	 * who has the most incompatibilities left.
+	 *
+	 * @param constrainedFirst True to place constrained students first.
+	 */
+	public void setConstrainedFirst(boolean constrainedFirst) {
+		this.constrainedFirst = constrainedFirst;
+	}
+
+	/**
+	 * Sets the order in which waiting students are offered to each group.
+	 *
+	 * @param ordering The ordering policy.
+	 */
+	public void setOrdering(OrderingPolicy ordering) {
+		if(ordering != null)
+			this.ordering = ordering;
+	}
+
+	/**
+	 * Returns the sizes of the groups a roster is divided into. Groups
+	 * smaller than the target size come first and larger ones last. If the
+	 * remainder policy cannot be followed, the policy is switched, and if
+	 * neither works the students are spread as evenly as possible.
+	 *
+	 * @param studentCount The number of students.
+	 * @return The size of each group.
+	 */
+	public int[] getGroupSizes(int studentCount) {
+		int groups = studentCount / groupSize;
+		int remainder = studentCount % groupSize;
+
+		if(studentCount == 0)
+			return new int[0];
+
+		if(remainder == 0)
+			return getEvenSizes(studentCount, groups);
+
+		boolean larger = remainderPolicy == RemainderPolicy.LARGER_GROUPS ||
+				(remainderPolicy == RemainderPolicy.BALANCED && remainder <= groupSize / 2);
+
+		// Larger groups need a group for each leftover student; smaller
+		// groups need enough groups to give up one seat each
+		boolean largerFits = remainder <= groups;
+		boolean smallerFits = groupSize - remainder <= groups + 1 && groupSize > 2;
+
+		if(larger && largerFits || !smallerFits && largerFits)
+			return getEvenSizes(studentCount, groups);
+
+		if(smallerFits)
+			return getEvenSizes(studentCount, groups + 1);
+
+		return getEvenSizes(studentCount, Math.max(1, Math.round((float) studentCount / groupSize)));
+	}
+
+	/**
+	 * Divides students into a number of groups whose sizes differ by at
+	 * most one, smaller groups first.
+	 *
+	 * @param studentCount The number of students.
+	 * @param groups The number of groups.
+	 * @return The size of each group.
+	 */
+	private static int[] getEvenSizes(int studentCount, int groups) {
+		int[] sizes = new int[groups];
+		int size = studentCount / groups;
+		int larger = studentCount % groups;
+
+		for(int g = 0; g < groups; g++)
+			sizes[g] = g < groups - larger ? size : size + 1;
+		return sizes;
+	}
+
+	/**
+	 * Returns a stable description of these options, used to fingerprint
+	 * requests made with them.
+	 *
+	 * @return The description of the options.
+	 */
+	@Override
+	public String toString() {
+		return new StringBuilder("groupSize=").append(groupSize)
+				.append(";remainder=").append(remainderPolicy.name())
+				.append(";constrainedFirst=").append(constrainedFirst)
+				.append(";ordering=").append(ordering.name())
+				.append(";rules=").append(rules).toString();
+	}
+}
@@ -0,0 +1,581 @@
+package utility;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import model.*;
+
+/**
+ * The GroupingPortfolio class chooses how to group each classroom. Most
+ * rosters are grouped at once by the shuffled attempts of GroupCreator,
+ * but crowded front rows, many incompatibilities, or a lopsided class can
+ * leave those attempts failing for a long time, where the ConstraintSolver
+ * or a LocalSearch finishes quickly.
+ *
+ * A few cheap features of the roster place it in a class of similar
+ * rosters. While a class has too few recorded runs, every strategy is
+ * raced and the first grouping found wins; once it has enough, the
+ * strategy with the lowest expected time to a grouping in that class runs
+ * alone for half of the time budget, and the others are raced for the rest
+ * only if it fails. Every run is recorded, so the choice follows what
+ * actually works for the rosters the school has, and the statistics can
+ * be saved to a file and loaded again.
+ *
+ * No strategy's grouping is trusted: each is checked by the
+ * GroupingValidator before it can win a race, and one that fails the
+ * check is rejected, recorded as a failed run, and counted among the
+ * rejected runs of its strategy. A race returns as soon as it has a
+ * winner; the losers are cancelled and record their runs once they stop.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingPortfolio {
+
+	/** The ways of searching for groups. */
+	public enum Strategy {
+		/** GroupCreator attempts filled purely in the options' random order. */
+		GREEDY_SHUFFLE,
+		/** GroupCreator attempts that start each group with its most constrained student. */
+		ORDERED_GREEDY,
+		/** The complete search of the ConstraintSolver. */
+		BACKTRACKING,
+		/** Repairing a random grouping with the LocalSearch. */
+		LOCAL_SEARCH;
+
+		/**
+		 * A String representation of the strategy.
+		 *
+		 * @return The String representation.
+		 */
+		@Override
+		public String toString() {
+			String strategy = null;
+
+			switch(this) {
+			case GREEDY_SHUFFLE: strategy = "Greedy Shuffle";
+				break;
+			case ORDERED_GREEDY: strategy = "Ordered Greedy";
+				break;
+			case BACKTRACKING: strategy = "Backtracking";
+				break;
+			case LOCAL_SEARCH: strategy = "Local Search";
+				break;
+			}
+			return strategy;
+		}
+	}
+
+	/** The features of a roster that decide which strategy is likely to work best. */
+	public static class Features {
+		private final int size;
+		private final double density;
+		private final double frontRatio;
+		private final double abilitySkew;
+		private final double genderSkew;
+
+		/**
+		 * Constructor which measures a roster.
+		 *
+		 * @param roster The roster.
+		 * @param graph The roster's incompatibility graph.
+		 * @param options The grouping options.
+		 */
+		public Features(Roster roster, IncompatibilityGraph graph, GroupingOptions options) {
+			int n = roster.size();
+			int front = 0;
+			int male = 0;
+			int female = 0;
+			int[] abilities = new int[3];
+
+			for(int i = 0; i < n; i++) {
+				int mask = roster.attributes[i];
+				if(roster.frontSeatNeeded[i])
+					front++;
+				if((mask & GroupingRules.Attribute.MALE.bit()) != 0)
+					male++;
+				if((mask & GroupingRules.Attribute.FEMALE.bit()) != 0)
+					female++;
+				if((mask & GroupingRules.Attribute.LOW.bit()) != 0)
+					abilities[0]++;
+				if((mask & GroupingRules.Attribute.AVERAGE.bit()) != 0)
+					abilities[1]++;
+				if((mask & GroupingRules.Attribute.HIGH.bit()) != 0)
+					abilities[2]++;
+			}
+
+			size = n;
+			density = graph.getDensity();
+
+			// The share of the front seats the students needing one would fill
+			int frontSeats = roster.getMaximumFrontGroups() * options.getGroupSize();
+			frontRatio = front == 0 ? 0 : frontSeats == 0 ? Double.POSITIVE_INFINITY : front / (double) frontSeats;
+
+			double skew = 0;
+			for(int count: abilities)
+				skew = Math.max(skew, n == 0 ? 0 : Math.abs(count / (double) n - 1 / 3.0) * 3);
+			abilitySkew = skew;
+			genderSkew = n == 0 ? 0 : Math.abs(male - female) / (double) n;
+		}
+
+		/**
+		 * Returns the number of students.
+		 *
+		 * @return The roster size.
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * Returns the share of all pairs of students that are incompatible.
+		 *
+		 * @return The incompatibility density.
+		 */
+		public double getDensity() {
+			return density;
+		}
+
+		/**
+		 * Returns the number of students needing a front seat compared with
+		 * the number of seats in the allowed front groups.
+		 *
+		 * @return The front seat ratio.
+		 */
+		public double getFrontRatio() {
+			return frontRatio;
+		}
+
+		/**
+		 * Returns how far the ability levels are from an even split, from
+		 * zero for an even split to two for a single level.
+		 *
+		 * @return The ability skew.
+		 */
+		public double getAbilitySkew() {
+			return abilitySkew;
+		}
+
+		/**
+		 * Returns the difference between the numbers of male and female
+		 * students as a share of the roster.
+		 *
+		 * @return The gender skew.
+		 */
+		public double getGenderSkew() {
+			return genderSkew;
+		}
+
+		/**
+		 * Returns the class of similar rosters these features fall into,
+		 * from the size, the density, and the tightest of the other features.
+		 *
+		 * @return The class, from 0 to CLASS_COUNT - 1.
+		 */
+		public int getRosterClass() {
+			int sizeClass = size < 24 ? 0 : size < 60 ? 1 : 2;
+			int densityClass = density == 0 ? 0 : density < 0.05 ? 1 : 2;
+
+			double tightness = Math.max(frontRatio, Math.max(abilitySkew, genderSkew * 2));
+			int tightnessClass = tightness < 0.3 ? 0 : tightness < 0.7 ? 1 : 2;
+
+			return (sizeClass * 3 + densityClass) * 3 + tightnessClass;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("size=%d;density=%.4f;front=%.2f;ability=%.2f;gender=%.2f",
+					size, density, frontRatio, abilitySkew, genderSkew);
+		}
+	}
+
+	/** The number of roster classes statistics are kept for. */
+	public final static int CLASS_COUNT = 27;
+
+	/** The number of recorded runs of every strategy a class needs before one is chosen. */
+	public final static int MINIMUM_RUNS = 3;
+
+	/** The chance of racing every strategy again once one is chosen. */
+	private final static double EXPLORATION = 0.1;
+
+	/** The number of GroupCreator attempts between checks of the deadline. */
+	private final static int ATTEMPTS_PER_CHECK = 256;
+
+	/** The format version written at the start of a statistics file. */
+	private final static int FILE_VERSION = 2;
+
+	/** The number of runs of each strategy in each class. */
+	private final int[][] runs = new int[CLASS_COUNT][Strategy.values().length];
+
+	/** The number of runs that found a grouping, for each strategy in each class. */
+	private final int[][] solved = new int[CLASS_COUNT][Strategy.values().length];
+
+	/** The total milliseconds spent, for each strategy in each class. */
+	private final long[][] millis = new long[CLASS_COUNT][Strategy.values().length];
+
+	/** The number of runs whose grouping failed validation, for each strategy in each class. */
+	private final int[][] rejected = new int[CLASS_COUNT][Strategy.values().length];
+
+	/** Why the most recently rejected grouping failed validation, or null. */
+	private String lastRejection;
+
+	/** The options groupings are created with. */
+	private final GroupingOptions options;
+
+	/** The time budget of each grouping, in milliseconds. */
+	private final long timeBudgetMillis;
+
+	/** The threads racing strategies. */
+	private final ExecutorService executor;
+
+	/** The source of seeds for each run. */
+	private final Random random = new Random();
+
+	/**
+	 * Constructor which sets the options and time budget of every grouping.
+	 *
+	 * @param options The grouping options.
+	 * @param timeBudgetMillis The time each grouping may take, in milliseconds.
+	 */
+	public GroupingPortfolio(GroupingOptions options, long timeBudgetMillis) {
+		this.options = options;
+		this.timeBudgetMillis = timeBudgetMillis;
+
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "grouping-portfolio");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates groups for a classroom.
+	 *
+	 * @param c The classroom to group.
+	 * @return The groups.
+	 * @throws IllegalStateException Thrown if no grouping exists or none
+	 * 								 was found within the time budget.
+	 */
+	public List<Group> createGroups(Classroom c) {
+		Roster roster = new Roster(c);
+		return roster.toGroups(createGroups(roster));
+	}
+
+	/**
+	 * Creates groups for an indexed roster.
+	 *
+	 * @param roster The roster to group.
+	 * @return The member indexes of each group.
+	 * @throws IllegalStateException Thrown if no grouping exists or none
+	 * 								 was found within the time budget.
+	 */
+	public int[][] createGroups(Roster roster) {
+		long deadline = System.currentTimeMillis() + timeBudgetMillis;
+		int rosterClass = new Features(roster, new IncompatibilityGraph(roster), options).getRosterClass();
+
+		List<Strategy> remaining = new ArrayList<>(Arrays.asList(Strategy.values()));
+		Strategy chosen = getChosenStrategy(rosterClass);
+
+		if(chosen != null && nextDouble() >= EXPLORATION) {
+			int[][] groups = race(roster, rosterClass, Collections.singletonList(chosen), timeBudgetMillis / 2);
+			if(groups != null)
+				return groups;
+			remaining.remove(chosen);
+		}
+
+		int[][] groups = race(roster, rosterClass, remaining, deadline - System.currentTimeMillis());
+		if(groups == null)
+			throw new IllegalStateException("No grouping was found in " + timeBudgetMillis + " ms.");
+		return groups;
+	}
+
+	/**
+	 * Returns the strategy with the lowest expected time to a grouping in a
+	 * class of rosters, counting the time of failed runs against it.
+	 *
+	 * @param rosterClass The class of rosters.
+	 * @return The chosen strategy, or null while any strategy has too few runs.
+	 */
+	public synchronized Strategy getChosenStrategy(int rosterClass) {
+		Strategy chosen = null;
+		double best = Double.POSITIVE_INFINITY;
+
+		for(Strategy s: Strategy.values()) {
+			int k = s.ordinal();
+			if(runs[rosterClass][k] < MINIMUM_RUNS)
+				return null;
+
+			double expected = solved[rosterClass][k] == 0 ? Double.POSITIVE_INFINITY :
+					millis[rosterClass][k] / (double) solved[rosterClass][k];
+			if(chosen == null || expected < best) {
+				chosen = s;
+				best = expected;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * Records one run of a strategy.
+	 *
+	 * @param rosterClass The class of the roster.
+	 * @param strategy The strategy.
+	 * @param found Whether or not the run found a grouping.
+	 * @param elapsedMillis The milliseconds the run took.
+	 */
+	public synchronized void record(int rosterClass, Strategy strategy, boolean found, long elapsedMillis) {
+		runs[rosterClass][strategy.ordinal()]++;
+		if(found)
+			solved[rosterClass][strategy.ordinal()]++;
+		millis[rosterClass][strategy.ordinal()] += elapsedMillis;
+	}
+
+	/**
+	 * Records that a run of a strategy returned a grouping that failed
+	 * validation. The run itself is recorded by record as not found.
+	 *
+	 * @param rosterClass The class of the roster.
+	 * @param strategy The strategy.
+	 * @param violation Why the grouping failed validation.
+	 */
+	private synchronized void recordRejection(int rosterClass, Strategy strategy, String violation) {
+		rejected[rosterClass][strategy.ordinal()]++;
+		lastRejection = strategy + ": " + violation;
+	}
+
+	/**
+	 * Returns the number of runs of a strategy whose grouping failed
+	 * validation and was rejected.
+	 *
+	 * @param rosterClass The class of rosters.
+	 * @param strategy The strategy.
+	 * @return The number of rejected runs.
+	 */
+	public synchronized int getRejectedCount(int rosterClass, Strategy strategy) {
+		return rejected[rosterClass][strategy.ordinal()];
+	}
+
+	/**
+	 * Returns why the most recently rejected grouping failed validation.
+	 *
+	 * @return The strategy and the violation, or null if none was rejected.
+	 */
+	public synchronized String getLastRejection() {
+		return lastRejection;
+	}
+
+	/**
+	 * Runs strategies at the same time until one finds a grouping, one
+	 * proves that none exists, or the time runs out. The others are then
+	 * cancelled without waiting for them to stop; every run records itself
+	 * when it stops. A strategy that throws only ends its own run.
+	 *
+	 * @param roster The roster to group.
+	 * @param rosterClass The class of the roster.
+	 * @param strategies The strategies to run.
+	 * @param timeLimitMillis The time limit in milliseconds.
+	 * @return The member indexes of each group, or null if the time ran out.
+	 * @throws IllegalStateException Thrown if no grouping exists.
+	 */
+	private int[][] race(Roster roster, int rosterClass, List<Strategy> strategies, long timeLimitMillis) {
+		if(timeLimitMillis <= 0 || strategies.isEmpty())
+			return null;
+
+		long deadline = System.currentTimeMillis() + timeLimitMillis;
+		List<Run> running = new ArrayList<>();
+		CompletionService<Run> completion = new ExecutorCompletionService<>(executor);
+		for(Strategy s: strategies) {
+			Run run = new Run(s, roster, rosterClass, timeLimitMillis, nextLong());
+			running.add(run);
+			completion.submit(run, run);
+		}
+
+		int[][] groups = null;
+		boolean infeasible = false;
+		try {
+			for(int done = 0; done < running.size() && groups == null && !infeasible; done++) {
+				Future<Run> finished = completion.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+				if(finished == null)
+					break;
+
+				try {
+					Run run = finished.get();
+					groups = run.groups;
+					infeasible = run.infeasible;
+				} catch (ExecutionException e) {
+					// The failed run is recorded as not found; the others keep racing
+					e.printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for(Run run: running)
+				run.cancel();
+		}
+
+		if(infeasible)
+			throw new IllegalStateException("No grouping exists for this roster.");
+		return groups;
+	}
+
+	/** One strategy running on one roster. */
+	private class Run implements Runnable {
+		final Strategy strategy;
+		final Roster roster;
+		final int rosterClass;
+		final long timeLimitMillis;
+		final Random random;
+		volatile boolean cancelled;
+		volatile ConstraintSolver solver;
+		volatile LocalSearch search;
+		int[][] groups;
+		boolean infeasible;
+
+		Run(Strategy strategy, Roster roster, int rosterClass, long timeLimitMillis, long seed) {
+			this.strategy = strategy;
+			this.roster = roster;
+			this.rosterClass = rosterClass;
+			this.timeLimitMillis = timeLimitMillis;
+			random = new Random(seed);
+		}
+
+		@Override
+		public void run() {
+			long start = System.currentTimeMillis();
+			try {
+				switch(strategy) {
+				case GREEDY_SHUFFLE: groups = runGreedy(false, start);
+					break;
+				case ORDERED_GREEDY: groups = runGreedy(true, start);
+					break;
+				case BACKTRACKING:
+					solver = new ConstraintSolver(roster, options, random);
+					if(cancelled)
+						break;
+					ConstraintSolver.Result result = solver.solve(timeLimitMillis);
+					groups = result.getGroups();
+					infeasible = result.getStatus() == ConstraintSolver.Status.INFEASIBLE;
+					break;
+				case LOCAL_SEARCH:
+					search = new LocalSearch(roster, options, random);
+					if(cancelled)
+						break;
+					groups = search.solve(timeLimitMillis);
+					break;
+				}
+
+				String violation = groups == null ? null : GroupingValidator.getViolation(roster, groups, options.getRules());
+				if(violation != null) {
+					recordRejection(rosterClass, strategy, violation);
+					groups = null;
+				}
+			} finally {
+				record(rosterClass, strategy, groups != null, System.currentTimeMillis() - start);
+			}
+		}
+
+		/**
+		 * Runs GroupCreator attempts in batches until one succeeds, the run
+		 * is cancelled, or the time runs out.
+		 *
+		 * @param constrainedFirst Whether or not groups start with their most constrained student.
+		 * @param start The time the run started.
+		 * @return The member indexes of each group, or null.
+		 */
+		private int[][] runGreedy(boolean constrainedFirst, long start) {
+			GroupingOptions batch = new GroupingOptions(options);
+			batch.setConstrainedFirst(constrainedFirst);
+			batch.setMaximumAttempts(ATTEMPTS_PER_CHECK);
+
+			while(!cancelled && System.currentTimeMillis() - start < timeLimitMillis) {
+				try {
+					return GroupCreator.createGroups(roster, random, batch);
+				} catch (IllegalStateException e) {
+					// No grouping in this batch; try another
+				}
+			}
+			return null;
+		}
+
+		/** Stops the run. */
+		void cancel() {
+			cancelled = true;
+			if(solver != null)
+				solver.cancel();
+			if(search != null)
+				search.cancel();
+		}
+	}
+
+	/**
+	 * Returns a random number for choosing whether to explore.
+	 *
+	 * @return A random number from 0 to 1.
+	 */
+	private synchronized double nextDouble() {
+		return random.nextDouble();
+	}
+
+	/**
+	 * Returns a seed for a run.
+	 *
+	 * @return A random seed.
+	 */
+	private synchronized long nextLong() {
+		return random.nextLong();
+	}
+
+	/**
+	 * Saves the recorded statistics to a file.
+	 *
+	 * @param file The file.
+	 * @throws IOException Thrown if the file cannot be written.
+	 */
+	public synchronized void save(File file) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(FILE_VERSION);
+			out.writeInt(CLASS_COUNT);
+			out.writeInt(Strategy.values().length);
+
+			for(int c = 0; c < CLASS_COUNT; c++) {
+				for(int k = 0; k < Strategy.values().length; k++) {
+					out.writeInt(runs[c][k]);
+					out.writeInt(solved[c][k]);
+					out.writeLong(millis[c][k]);
+					out.writeInt(rejected[c][k]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads statistics saved by save, adding them to those already recorded.
+	 * A file written with other classes or strategies is ignored.
+	 *
+	 * @param file The file.
+	 * @throws IOException Thrown if the file cannot be read.
+	 */
+	public synchronized void load(File file) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != FILE_VERSION || in.readInt() != CLASS_COUNT || in.readInt() != Strategy.values().length)
+				return;
+
+			for(int c = 0; c < CLASS_COUNT; c++) {
+				for(int k = 0; k < Strategy.values().length; k++) {
+					runs[c][k] += in.readInt();
+					solved[c][k] += in.readInt();
+					millis[c][k] += in.readLong();
+					rejected[c][k] += in.readInt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads racing strategies. Runs in progress are cancelled.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,368 @@
+package utility;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The GroupingRules class declares which groups are acceptable. A rule
+ * either limits how many students with an attribute a group may have, or
+ * forbids a combination of attributes from appearing in the same group.
+ * Rules can apply to every group or only to groups of one size; a
+ * size-specific limit replaces the general limit for that attribute.
+ *
+ * Rules are compiled into fixed-size arrays so a RuleCounter can check
+ * and update a group in constant time as students are added or removed.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingRules {
+
+	/**
+	 * The attributes a rule can refer to. Each student has exactly one
+	 * ability level and at most one gender, plus any accommodations.
+	 */
+	public enum Attribute {
+		LOW, AVERAGE, HIGH, MALE, FEMALE, FRONT_SEAT_NEEDED, PREFERRED_GROUP_OF_FIVE;
+
+		/**
+		 * Returns the bit for this attribute in a student's attribute mask.
+		 *
+		 * @return The attribute bit.
+		 */
+		public int bit() {
+			return 1 << ordinal();
+		}
+	}
+
+	/** The number of attributes, which is the length of every counter array. */
+	public final static int ATTRIBUTE_COUNT = Attribute.values().length;
+
+	/** The largest group size size-specific rules can be declared for. */
+	public final static int MAXIMUM_GROUP_SIZE = 64;
+
+	/** No limit on the number of students with an attribute. */
+	public final static int UNLIMITED = Integer.MAX_VALUE;
+
+	/** Minimums for every group, indexed by attribute. */
+	private int[] minimums = new int[ATTRIBUTE_COUNT];
+
+	/** Maximums for every group, indexed by attribute. */
+	private int[] maximums = new int[ATTRIBUTE_COUNT];
+
+	/** Size-specific limits, keyed by group size; each holds a minimum and maximum per attribute, or null. */
+	private Map<Integer, int[][]> sizeLimits = new TreeMap<>();
+
+	/** Forbidden combinations for every group, as attribute masks. */
+	private List<Integer> forbidden = new ArrayList<>();
+
+	/** Size-specific forbidden combinations, keyed by group size. */
+	private Map<Integer, List<Integer>> sizeForbidden = new TreeMap<>();
+
+	/** Default constructor for rules that accept any group. */
+	public GroupingRules() {
+		Arrays.fill(maximums, UNLIMITED);
+	}
+
+	/** The group size the school's limits were written for. */
+	private final static int DEFAULT_GROUP_SIZE = 4;
+
+	/**
+	 * Returns the rules the school has always used: no more than two high,
+	 * two low, or two female students and no more than four male students
+	 * in a group, and groups of three made of one high, one average, and
+	 * one low student with at most one female.
+	 *
+	 * @return The default rules.
+	 */
+	public static GroupingRules getDefault() {
+		return getDefault(DEFAULT_GROUP_SIZE);
+	}
+
+	/**
+	 * Returns the school's rules for a target group size. For groups of
+	 * four these are the usual rules. The rules for groups of three were
+	 * written for the one group of leftover students, so they are left out
+	 * when most groups have three students or fewer. For a larger target
+	 * size the usual limits would leave most students of a gender or
+	 * ability level with no group to join, so in groups of more than four
+	 * each limit grows to keep the share of the group it has in a group of
+	 * four, and male students may fill all but one seat as in a group of
+	 * five.
+	 *
+	 * @param groupSize The target group size.
+	 * @return The default rules for the group size.
+	 */
+	public static GroupingRules getDefault(int groupSize) {
+		GroupingRules rules = new GroupingRules();
+		rules.setMaximum(Attribute.HIGH, 2);
+		rules.setMaximum(Attribute.LOW, 2);
+		rules.setMaximum(Attribute.FEMALE, 2);
+		rules.setMaximum(Attribute.MALE, 4);
+
+		if(groupSize >= DEFAULT_GROUP_SIZE) {
+			rules.setLimit(3, Attribute.HIGH, 1, 1);
+			rules.setLimit(3, Attribute.AVERAGE, 1, 1);
+			rules.setLimit(3, Attribute.LOW, 1, 1);
+			rules.setLimit(3, Attribute.FEMALE, 0, 1);
+		}
+
+		// Leftover students can make groups up to half again the target size
+		int largestSize = groupSize > DEFAULT_GROUP_SIZE ? Math.min(groupSize + groupSize / 2, MAXIMUM_GROUP_SIZE) : 0;
+		for(int size = DEFAULT_GROUP_SIZE + 1; size <= largestSize; size++) {
+			for(Attribute a: new Attribute[] { Attribute.HIGH, Attribute.LOW, Attribute.FEMALE }) {
+				int maximum = rules.maximums[a.ordinal()];
+				rules.setLimit(size, a, 0, (maximum * size + DEFAULT_GROUP_SIZE - 1) / DEFAULT_GROUP_SIZE);
+			}
+			rules.setLimit(size, Attribute.MALE, 0, Math.max(rules.maximums[Attribute.MALE.ordinal()], size - 1));
+		}
+		return rules;
+	}
+
+	/**
+	 * Returns the attribute mask of a student.
+	 *
+	 * @param student The student.
+	 * @return The bits of every attribute the student has.
+	 */
+	public static int getAttributes(Student student) {
+		int mask = 0;
+
+		if(student.getAbilityLevel() != null) {
+			switch(student.getAbilityLevel()) {
+			case LOW: mask |= Attribute.LOW.bit();
+				break;
+			case AVERAGE: mask |= Attribute.AVERAGE.bit();
+				break;
+			case HIGH: mask |= Attribute.HIGH.bit();
+				break;
+			}
+		}
+
+		if(student.getGender() != null) {
+			switch(student.getGender()) {
+			case MALE: mask |= Attribute.MALE.bit();
+				break;
+			case FEMALE: mask |= Attribute.FEMALE.bit();
+				break;
+			}
+		}
+
+		if(student.getFrontSeatNeeded())
+			mask |= Attribute.FRONT_SEAT_NEEDED.bit();
+
+		if(student.getPreferredGroupOfFive())
+			mask |= Attribute.PREFERRED_GROUP_OF_FIVE.bit();
+
+		return mask;
+	}
+
+	/**
+	 * Sets the minimum and maximum number of students with an attribute
+	 * in every group.
+	 *
+	 * @param attribute The attribute.
+	 * @param minimum The minimum number of students.
+	 * @param maximum The maximum number of students.
+	 */
+	public void setLimit(Attribute attribute, int minimum, int maximum) {
+		checkLimit(minimum, maximum);
+		minimums[attribute.ordinal()] = minimum;
+		maximums[attribute.ordinal()] = maximum;
+	}
+
+	/**
+	 * Sets the maximum number of students with an attribute in every group.
+	 *
+	 * @param attribute The attribute.
+	 * @param maximum The maximum number of students.
+	 */
+	public void setMaximum(Attribute attribute, int maximum) {
+		setLimit(attribute, minimums[attribute.ordinal()], maximum);
+	}
+
+	/**
+	 * Sets the minimum and maximum number of students with an attribute in
+	 * groups of one size, replacing the general limit for that size.
+	 *
+	 * @param groupSize The group size the limit applies to.
+	 * @param attribute The attribute.
+	 * @param minimum The minimum number of students.
+	 * @param maximum The maximum number of students.
+	 */
+	public void setLimit(int groupSize, Attribute attribute, int minimum, int maximum) {
+		checkGroupSize(groupSize);
+		checkLimit(minimum, maximum);
+
+		int[][] limits = sizeLimits.get(groupSize);
+		if(limits == null) {
+			limits = new int[ATTRIBUTE_COUNT][];
+			sizeLimits.put(groupSize, limits);
+		}
+		limits[attribute.ordinal()] = new int[] { minimum, maximum };
+	}
+
+	/**
+	 * Forbids a combination of attributes from appearing together in any group.
+	 *
+	 * @param attributes The attributes that may not all be present.
+	 */
+	public void addForbiddenCombination(Attribute... attributes) {
+		forbidden.add(toMask(attributes));
+	}
+
+	/**
+	 * Forbids a combination of attributes in groups of one size.
+	 *
+	 * @param groupSize The group size the rule applies to.
+	 * @param attributes The attributes that may not all be present.
+	 */
+	public void addForbiddenCombination(int groupSize, Attribute... attributes) {
+		checkGroupSize(groupSize);
+
+		List<Integer> combinations = sizeForbidden.get(groupSize);
+		if(combinations == null) {
+			combinations = new ArrayList<>();
+			sizeForbidden.put(groupSize, combinations);
+		}
+		combinations.add(toMask(attributes));
+	}
+
+	/**
+	 * Returns the minimum number of students with an attribute in groups of a size.
+	 *
+	 * @param groupSize The group size.
+	 * @param attribute The attribute.
+	 * @return The minimum.
+	 */
+	public int getMinimum(int groupSize, Attribute attribute) {
+		int[][] limits = sizeLimits.get(groupSize);
+		if(limits != null && limits[attribute.ordinal()] != null)
+			return limits[attribute.ordinal()][0];
+		return minimums[attribute.ordinal()];
+	}
+
+	/**
+	 * Returns the maximum number of students with an attribute in groups of a size.
+	 *
+	 * @param groupSize The group size.
+	 * @param attribute The attribute.
+	 * @return The maximum.
+	 */
+	public int getMaximum(int groupSize, Attribute attribute) {
+		int[][] limits = sizeLimits.get(groupSize);
+		if(limits != null && limits[attribute.ordinal()] != null)
+			return limits[attribute.ordinal()][1];
+		return maximums[attribute.ordinal()];
+	}
+
+	/**
+	 * Returns the forbidden combinations for groups of a size as attribute masks.
+	 *
+	 * @param groupSize The group size.
+	 * @return The forbidden attribute masks.
+	 */
+	public int[] getForbiddenCombinations(int groupSize) {
+		List<Integer> combinations = new ArrayList<>(forbidden);
+		if(sizeForbidden.containsKey(groupSize))
+			combinations.addAll(sizeForbidden.get(groupSize));
+
+		int[] masks = new int[combinations.size()];
+		for(int i = 0; i < masks.length; i++)
+			masks[i] = combinations.get(i);
+		return masks;
+	}
+
+	/**
+	 * Compiles the rules for groups of up to the given size.
+	 *
+	 * @param maximumGroupSize The largest group size that will be checked.
+	 * @return The compiled rules.
+	 */
+	public CompiledRules compile(int maximumGroupSize) {
+		// Sizes with their own rules always get their own slot
+		for(int size: sizeLimits.keySet())
+			maximumGroupSize = Math.max(maximumGroupSize, size);
+		for(int size: sizeForbidden.keySet())
+			maximumGroupSize = Math.max(maximumGroupSize, size);
+
+		return new CompiledRules(this, maximumGroupSize);
+	}
+
+	/**
+	 * Returns a stable description of the rules, used to fingerprint
+	 * requests made with them.
+	 *
+	 * @return The description of the rules.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder description = new StringBuilder("limits=");
+		for(Attribute a: Attribute.values())
+			description.append(a).append(':').append(minimums[a.ordinal()]).append('-').append(maximums[a.ordinal()]).append(',');
+
+		for(Map.Entry<Integer, int[][]> e: sizeLimits.entrySet()) {
+			description.append(";size").append(e.getKey()).append('=');
+			for(Attribute a: Attribute.values()) {
+				int[] limit = e.getValue()[a.ordinal()];
+				if(limit != null)
+					description.append(a).append(':').append(limit[0]).append('-').append(limit[1]).append(',');
+			}
+		}
+
+		description.append(";forbidden=").append(sorted(forbidden));
+		for(Map.Entry<Integer, List<Integer>> e: sizeForbidden.entrySet())
+			description.append(";forbidden").append(e.getKey()).append('=').append(sorted(e.getValue()));
+
+		return description.toString();
+	}
+
+	/**
+	 * Returns a sorted copy of a list of masks.
+	 *
+	 * @param masks The masks.
+	 * @return The sorted masks.
+	 */
+	private static List<Integer> sorted(List<Integer> masks) {
+		List<Integer> copy = new ArrayList<>(masks);
+		Collections.sort(copy);
+		return copy;
+	}
+
+	/**
+	 * Returns the mask of a set of attributes.
+	 *
+	 * @param attributes The attributes.
+	 * @return The attribute mask.
+	 */
+	private static int toMask(Attribute... attributes) {
+		if(attributes.length == 0)
+			throw new IllegalArgumentException("A forbidden combination needs at least one attribute.");
+
+		int mask = 0;
+		for(Attribute a: attributes)
+			mask |= a.bit();
+		return mask;
+	}
+
+	/**
+	 * Checks that a limit is valid.
+	 *
+	 * @param minimum The minimum.
+	 * @param maximum The maximum.
+	 */
+	private static void checkLimit(int minimum, int maximum) {
+		if(minimum < 0 || maximum < minimum)
+			throw new IllegalArgumentException("Invalid limit " + minimum + " to " + maximum + ".");
+	}
+
+	/**
+	 * Checks that a group size can have size-specific rules.
+	 *
+	 * @param groupSize The group size.
+	 */
+	private static void checkGroupSize(int groupSize) {
+		if(groupSize < 1 || groupSize > MAXIMUM_GROUP_SIZE)
+			throw new IllegalArgumentException("Invalid group size " + groupSize + ".");
+	}
+}
@@ -0,0 +1,198 @@
+package utility;
+
+import java.util.*;
+
+/**
+ * The GroupingState class holds a complete grouping of a roster in a form
+ * that can be changed one move at a time. It keeps a RuleCounter for each
+ * group and the number of front groups, so whether two students in
+ * different groups can trade places is checked in time proportional to
+ * their number of incompatibilities.
+ *
+ * @author Joseph Stewart
+ */
+public class GroupingState {
+
+	/** The roster being grouped. */
+	final Roster roster;
+
+	/** The members of each group. */
+	final int[][] members;
+
+	/** The group of each student. */
+	final int[] groupOf;
+
+	/** The position of each student within their group. */
+	final int[] slotOf;
+
+	/** The rule counter of each group. */
+	final RuleCounter[] counters;
+
+	/** The number of students needing a front seat in each group. */
+	final int[] frontCounts;
+
+	/** The number of groups with a student needing a front seat. */
+	int frontGroups;
+
+	/**
+	 * Constructor which takes over a grouping.
+	 *
+	 * @param roster The roster.
+	 * @param groups The member indexes of each group; copied.
+	 * @param rules The rules the groups are checked against.
+	 */
+	public GroupingState(Roster roster, int[][] groups, CompiledRules rules) {
+		this.roster = roster;
+		members = new int[groups.length][];
+		groupOf = new int[roster.size()];
+		slotOf = new int[roster.size()];
+		counters = new RuleCounter[groups.length];
+		frontCounts = new int[groups.length];
+
+		for(int g = 0; g < groups.length; g++) {
+			members[g] = Arrays.copyOf(groups[g], groups[g].length);
+			counters[g] = new RuleCounter(rules);
+			counters[g].reset(groups[g].length);
+
+			for(int s = 0; s < members[g].length; s++) {
+				int i = members[g][s];
+				groupOf[i] = g;
+				slotOf[i] = s;
+				counters[g].add(roster.attributes[i]);
+				if(roster.frontSeatNeeded[i])
+					frontCounts[g]++;
+			}
+			if(frontCounts[g] > 0)
+				frontGroups++;
+		}
+	}
+
+	/**
+	 * Returns whether or not two students in different groups can trade
+	 * places without breaking a rule, an incompatibility, or the front
+	 * group limit.
+	 *
+	 * @param i The index of one student.
+	 * @param j The index of the other student.
+	 * @return True if the swap keeps the grouping valid.
+	 */
+	public boolean canSwap(int i, int j) {
+		int a = groupOf[i];
+		int b = groupOf[j];
+		if(a == b)
+			return false;
+
+		for(int k: roster.incompatibles[i]) {
+			if(groupOf[k] == b && k != j)
+				return false;
+		}
+		for(int k: roster.incompatibles[j]) {
+			if(groupOf[k] == a && k != i)
+				return false;
+		}
+
+		if(!canReplace(a, i, j) || !canReplace(b, j, i))
+			return false;
+
+		return getFrontGroupsAfterSwap(i, j) <= roster.getMaximumFrontGroups();
+	}
+
+	/**
+	 * Returns whether or not a group still satisfies the rules with one
+	 * member replaced.
+	 *
+	 * @param g The group.
+	 * @param out The member leaving.
+	 * @param in The student joining.
+	 * @return True if the rules are still satisfied.
+	 */
+	private boolean canReplace(int g, int out, int in) {
+		RuleCounter counter = counters[g];
+		counter.remove(roster.attributes[out]);
+		boolean allowed = counter.canAdd(roster.attributes[in]);
+		counter.add(roster.attributes[out]);
+		return allowed;
+	}
+
+	/**
+	 * Returns the number of front groups there would be after a swap.
+	 *
+	 * @param i The index of one student.
+	 * @param j The index of the other student.
+	 * @return The number of front groups.
+	 */
+	private int getFrontGroupsAfterSwap(int i, int j) {
+		int change = (roster.frontSeatNeeded[j] ? 1 : 0) - (roster.frontSeatNeeded[i] ? 1 : 0);
+		if(change == 0)
+			return frontGroups;
+
+		int a = groupOf[i];
+		int b = groupOf[j];
+		int result = frontGroups;
+		result += frontState(frontCounts[a] + change) - frontState(frontCounts[a]);
+		result += frontState(frontCounts[b] - change) - frontState(frontCounts[b]);
+		return result;
+	}
+
+	/**
+	 * Returns one if a group with this many front seat students is a front group.
+	 *
+	 * @param count The number of students needing a front seat.
+	 * @return One for a front group, otherwise zero.
+	 */
+	private static int frontState(int count) {
+		return count > 0 ? 1 : 0;
+	}
+
+	/**
+	 * Trades the places of two students in different groups.
+	 *
+	 * @param i The index of one student.
+	 * @param j The index of the other student.
+	 */
+	public void swap(int i, int j) {
+		int a = groupOf[i];
+		int b = groupOf[j];
+
+		frontGroups = getFrontGroupsAfterSwap(i, j);
+		int change = (roster.frontSeatNeeded[j] ? 1 : 0) - (roster.frontSeatNeeded[i] ? 1 : 0);
+		frontCounts[a] += change;
+		frontCounts[b] -= change;
+
+		counters[a].remove(roster.attributes[i]);
+		counters[a].add(roster.attributes[j]);
+		counters[b].remove(roster.attributes[j]);
+		counters[b].add(roster.attributes[i]);
+
+		int slotI = slotOf[i];
+		int slotJ = slotOf[j];
+		members[a][slotI] = j;
+		members[b][slotJ] = i;
+		groupOf[i] = b;
+		groupOf[j] = a;
+		slotOf[i] = slotJ;
+		slotOf[j] = slotI;
+	}
+
+	/**
+	 * Returns the group of a student.
+	 *
+	 * @param student The student's index.
+	 * @return The group.
+	 */
+	public int getGroup(int student) {
+		return groupOf[student];
+	}
+
+	/**
+	 * Returns a copy of the members of each group.
+	 *
+	 * @return The member indexes of each group.
+	 */
+	public int[][] getGroups() {
+		int[][] groups = new int[members.length][];
+		for(int g = 0; g < members.length; g++)
+			groups[g] = Arrays.copyOf(members[g], members[g].length);
+		return groups;
+	}
+}
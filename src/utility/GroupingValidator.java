@@ -0,0 +1,92 @@
+package utility;
+
+/**
+ * The GroupingValidator class checks a finished grouping of a roster from
+ * scratch: every student is in exactly one group, no group holds an
+ * incompatible pair, every group satisfies the rules, and no more groups
+ * need a front seat than the classroom has room for. Searches use it as
+ * a last check on what they return, independent of the bookkeeping they
+ * did while searching.
+ *
+ * @author Joseph Stewart
+ */
+public final class GroupingValidator {
+
+	/** Prevents instantiation. */
+	private GroupingValidator() { }
+
+	/**
+	 * Returns whether or not a grouping is valid.
+	 *
+	 * @param roster The roster that was grouped.
+	 * @param groups The member indexes of each group.
+	 * @param rules The rules every group must satisfy.
+	 * @return True if the grouping is valid, otherwise false.
+	 */
+	public static boolean isValid(Roster roster, int[][] groups, GroupingRules rules) {
+		return getViolation(roster, groups, rules) == null;
+	}
+
+	/**
+	 * Returns the first problem found with a grouping.
+	 *
+	 * @param roster The roster that was grouped.
+	 * @param groups The member indexes of each group.
+	 * @param rules The rules every group must satisfy.
+	 * @return A description of the problem, or null if the grouping is valid.
+	 */
+	public static String getViolation(Roster roster, int[][] groups, GroupingRules rules) {
+		int n = roster.size();
+		if(groups == null)
+			return "There is no grouping.";
+
+		int largestSize = 0;
+		for(int[] group: groups)
+			largestSize = Math.max(largestSize, group.length);
+
+		// groupOf[i] is one more than the group of student i, or 0 if unplaced
+		int[] groupOf = new int[n];
+		for(int g = 0; g < groups.length; g++) {
+			for(int i: groups[g]) {
+				if(i < 0 || i >= n)
+					return "Group " + (g + 1) + " holds an unknown student " + i + ".";
+				if(groupOf[i] != 0)
+					return "Student " + i + " is in groups " + groupOf[i] + " and " + (g + 1) + ".";
+				groupOf[i] = g + 1;
+			}
+		}
+
+		for(int i = 0; i < n; i++) {
+			if(groupOf[i] == 0)
+				return "Student " + i + " is not in any group.";
+			for(int j: roster.incompatibles[i]) {
+				if(groupOf[j] == groupOf[i])
+					return "Incompatible students " + i + " and " + j + " share group " + groupOf[i] + ".";
+			}
+		}
+
+		RuleCounter counter = new RuleCounter(rules.compile(largestSize));
+		int frontGroups = 0;
+		for(int g = 0; g < groups.length; g++) {
+			counter.reset(groups[g].length);
+			boolean isFront = false;
+
+			for(int i: groups[g]) {
+				if(!counter.canAdd(roster.attributes[i]))
+					return "Group " + (g + 1) + " breaks the rules.";
+				counter.add(roster.attributes[i]);
+				isFront |= roster.frontSeatNeeded[i];
+			}
+
+			if(!counter.isSatisfied())
+				return "Group " + (g + 1) + " does not meet the rules' minimums.";
+			if(isFront)
+				frontGroups++;
+		}
+
+		if(frontGroups > roster.getMaximumFrontGroups())
+			return frontGroups + " groups need a front seat but only " + 
+					roster.getMaximumFrontGroups() + " fit at the front.";
+		return null;
+	}
+}
@@ -0,0 +1,173 @@
+package utility;
+
+import java.util.*;
+
+/**
+ * The IncompatibilityGraph class analyzes which students of a roster may
+ * not share a group. It finds each student's degree, the number of
+ * students they are incompatible with, and the connected components of the
+ * graph, and lists the constrained students most constrained first so the
+ * group builders can place them before their choices run out.
+ *
+ * @author Joseph Stewart
+ */
+public class IncompatibilityGraph {
+
+	/** The roster the graph was built from. */
+	private final Roster roster;
+
+	/** The number of incompatible students of each student. */
+	private final int[] degrees;
+
+	/** The component of each student. */
+	private final int[] components;
+
+	/** The size of each component. */
+	private final int[] componentSizes;
+
+	/** The students with at least one incompatibility, most constrained first. */
+	private final int[] constrainedStudents;
+
+	/** The number of incompatible pairs. */
+	private final int edgeCount;
+
+	/**
+	 * Constructor which analyzes the roster's incompatibilities.
+	 *
+	 * @param roster The roster.
+	 */
+	public IncompatibilityGraph(Roster roster) {
+		this.roster = roster;
+		int n = roster.size();
+
+		degrees = new int[n];
+		int edges = 0;
+		for(int i = 0; i < n; i++) {
+			degrees[i] = roster.incompatibles[i].length;
+			edges += degrees[i];
+		}
+		edgeCount = edges / 2;
+
+		// Components by breadth first search
+		components = new int[n];
+		Arrays.fill(components, -1);
+		int[] queue = new int[n];
+		List<Integer> sizes = new ArrayList<>();
+
+		for(int start = 0; start < n; start++) {
+			if(components[start] != -1)
+				continue;
+
+			int component = sizes.size();
+			int headIndex = 0;
+			int tail = 0;
+			queue[tail++] = start;
+			components[start] = component;
+
+			while(headIndex < tail) {
+				int i = queue[headIndex++];
+				for(int j: roster.incompatibles[i]) {
+					if(components[j] == -1) {
+						components[j] = component;
+						queue[tail++] = j;
+					}
+				}
+			}
+			sizes.add(tail);
+		}
+
+		componentSizes = new int[sizes.size()];
+		for(int c = 0; c < componentSizes.length; c++)
+			componentSizes[c] = sizes.get(c);
+
+		List<Integer> constrained = new ArrayList<>();
+		for(int i = 0; i < n; i++) {
+			if(degrees[i] > 0)
+				constrained.add(i);
+		}
+		Collections.sort(constrained, (i, j) -> degrees[i] != degrees[j] ? degrees[j] - degrees[i] :
+				componentSizes[components[j]] - componentSizes[components[i]]);
+
+		constrainedStudents = new int[constrained.size()];
+		for(int k = 0; k < constrainedStudents.length; k++)
+			constrainedStudents[k] = constrained.get(k);
+	}
+
+	/**
+	 * Returns the roster the graph was built from.
+	 *
+	 * @return The roster.
+	 */
+	public Roster getRoster() {
+		return roster;
+	}
+
+	/**
+	 * Returns the number of students a student is incompatible with.
+	 *
+	 * @param student The student's index.
+	 * @return The student's degree.
+	 */
+	public int getDegree(int student) {
+		return degrees[student];
+	}
+
+	/**
+	 * Returns the component a student belongs to.
+	 *
+	 * @param student The student's index.
+	 * @return The component number.
+	 */
+	public int getComponent(int student) {
+		return components[student];
+	}
+
+	/**
+	 * Returns the number of students in a student's component.
+	 *
+	 * @param student The student's index.
+	 * @return The size of the component.
+	 */
+	public int getComponentSize(int student) {
+		return componentSizes[components[student]];
+	}
+
+	/**
+	 * Returns the number of connected components, counting unconstrained
+	 * students as components of one.
+	 *
+	 * @return The number of components.
+	 */
+	public int getComponentCount() {
+		return componentSizes.length;
+	}
+
+	/**
+	 * Returns the number of incompatible pairs.
+	 *
+	 * @return The number of edges.
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Returns the share of all pairs of students that are incompatible.
+	 *
+	 * @return The density, from 0 to 1.
+	 */
+	public double getDensity() {
+		long n = roster.size();
+		return n < 2 ? 0 : edgeCount / (n * (n - 1) / 2.0);
+	}
+
+	/**
+	 * Returns the students with at least one incompatibility, highest
+	 * degree first and larger components first among equal degrees.
+	 *
+	 * @return The constrained students' indexes.
+	 */
+	public int[] getConstrainedStudents() {
+		return constrainedStudents;
+	}
+}
@@ -0,0 +1,411 @@
+package utility;
+
+import java.util.*;
+
+/**
+ * The LocalSearch class looks for groups by repairing a complete but
+ * invalid grouping. Every student starts in a group of the planned size,
+ * and students are traded between groups to bring down the number of
+ * violations: broken rule limits and forbidden combinations, pairs of
+ * incompatible students sharing a group, and front groups beyond the
+ * classroom's maximum.
+ *
+ * Each step takes a student from a group with a violation and makes the
+ * best trade with any student in another group, even one that makes the
+ * grouping worse, so the search can leave a dead end. Students who just
+ * moved may not move back for a few steps, and now and then a random trade
+ * is made instead. The search starts over from a new random grouping when
+ * it stops improving. It cannot prove that no grouping exists, so it runs
+ * until it succeeds, reaches its time limit, or is cancelled.
+ *
+ * @author Joseph Stewart
+ */
+public class LocalSearch {
+
+	/** The number of steps a moved student may not move again. */
+	private final static int TABU_TENURE = 7;
+
+	/** The chance of a random trade instead of the best one. */
+	private final static double NOISE = 0.05;
+
+	/** The steps without a new best grouping, per student, before starting over. */
+	private final static int STEPS_PER_STUDENT = 100;
+
+	/** The roster being grouped. */
+	private final Roster roster;
+
+	/** The size of each group. */
+	private final int[] sizes;
+
+	/** The compiled rules. */
+	private final CompiledRules rules;
+
+	/** The source of randomness. */
+	private final Random random;
+
+	/** The members of each group. */
+	private final int[][] members;
+
+	/** The group of each student. */
+	private final int[] groupOf;
+
+	/** The position of each student within their group. */
+	private final int[] slotOf;
+
+	/** The number of students with each attribute in each group. */
+	private final int[][] counts;
+
+	/** The rule violations of each group. */
+	private final int[] ruleViolations;
+
+	/** The number of students needing a front seat in each group. */
+	private final int[] frontCounts;
+
+	/** The step until which each student may not move. */
+	private final int[] tabuUntil;
+
+	/** The number of front groups. */
+	private int frontGroups;
+
+	/** The number of pairs of incompatible students sharing a group. */
+	private int conflicts;
+
+	/** The total rule violations of all groups. */
+	private int totalRuleViolations;
+
+	/** Flag set to stop the search from another thread. */
+	private volatile boolean cancelled;
+
+	/**
+	 * Constructor which prepares a search over a roster.
+	 *
+	 * @param roster The roster to group.
+	 * @param options The grouping options.
+	 * @param random The source of randomness.
+	 */
+	public LocalSearch(Roster roster, GroupingOptions options, Random random) {
+		this.roster = roster;
+		this.random = random;
+		sizes = options.getGroupSizes(roster.size());
+
+		int largestSize = 0;
+		for(int size: sizes)
+			largestSize = Math.max(largestSize, size);
+		rules = options.getRules().compile(largestSize);
+
+		members = new int[sizes.length][];
+		for(int g = 0; g < sizes.length; g++)
+			members[g] = new int[sizes[g]];
+		groupOf = new int[roster.size()];
+		slotOf = new int[roster.size()];
+		counts = new int[sizes.length][GroupingRules.ATTRIBUTE_COUNT];
+		ruleViolations = new int[sizes.length];
+		frontCounts = new int[sizes.length];
+		tabuUntil = new int[roster.size()];
+	}
+
+	/**
+	 * Runs the search.
+	 *
+	 * @param timeLimitMillis The time limit in milliseconds.
+	 * @return The member indexes of each group, or null if none were found in time.
+	 */
+	public int[][] solve(long timeLimitMillis) {
+		long deadline = System.nanoTime() + timeLimitMillis * 1000000L;
+		int n = roster.size();
+		if(sizes.length == 0)
+			return new int[0][];
+
+		while(!cancelled && System.nanoTime() < deadline) {
+			restart();
+
+			int best = getCost();
+			int stale = 0;
+			for(int step = 1; stale < STEPS_PER_STUDENT * n && !cancelled; step++) {
+				if(getCost() == 0)
+					return getGroups();
+				if((step & 255) == 0 && System.nanoTime() > deadline)
+					return null;
+
+				step(step);
+
+				if(getCost() < best) {
+					best = getCost();
+					stale = 0;
+				} else {
+					stale++;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops a running search, which then returns null.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns the number of violations of the current grouping.
+	 *
+	 * @return The total violations.
+	 */
+	private int getCost() {
+		return totalRuleViolations + conflicts + Math.max(0, frontGroups - roster.getMaximumFrontGroups());
+	}
+
+	/**
+	 * Places every student into a random group of the planned sizes.
+	 */
+	private void restart() {
+		int n = roster.size();
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		for(int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+
+		Arrays.fill(tabuUntil, 0);
+		Arrays.fill(frontCounts, 0);
+		frontGroups = 0;
+		conflicts = 0;
+		totalRuleViolations = 0;
+
+		int next = 0;
+		for(int g = 0; g < sizes.length; g++) {
+			Arrays.fill(counts[g], 0);
+			for(int s = 0; s < sizes[g]; s++) {
+				int i = order[next++];
+				members[g][s] = i;
+				groupOf[i] = g;
+				slotOf[i] = s;
+				addCounts(g, roster.attributes[i], 1);
+				if(roster.frontSeatNeeded[i])
+					frontCounts[g]++;
+			}
+			if(frontCounts[g] > 0)
+				frontGroups++;
+
+			ruleViolations[g] = rules.getViolations(counts[g], sizes[g]);
+			totalRuleViolations += ruleViolations[g];
+		}
+
+		for(int i = 0; i < n; i++) {
+			for(int j: roster.incompatibles[i]) {
+				if(j > i && groupOf[j] == groupOf[i])
+					conflicts++;
+			}
+		}
+	}
+
+	/**
+	 * Makes one trade for a student in a group with a violation.
+	 *
+	 * @param step The number of the step.
+	 */
+	private void step(int step) {
+		int n = roster.size();
+		int i = pickStudent();
+		int a = groupOf[i];
+
+		if(random.nextDouble() < NOISE) {
+			int j = random.nextInt(n);
+			if(groupOf[j] != a)
+				swap(i, j, step);
+			return;
+		}
+
+		int bestJ = -1;
+		int bestDelta = Integer.MAX_VALUE;
+		int ties = 0;
+		int cost = getCost();
+
+		for(int j = 0; j < n; j++) {
+			if(groupOf[j] == a)
+				continue;
+
+			int delta = getDelta(i, j);
+
+			// A tabu student may still move if that gives the best grouping yet
+			if(tabuUntil[j] > step && cost + delta > 0)
+				continue;
+
+			if(delta < bestDelta) {
+				bestDelta = delta;
+				bestJ = j;
+				ties = 1;
+			} else if(delta == bestDelta && random.nextInt(++ties) == 0) {
+				bestJ = j;
+			}
+		}
+
+		if(bestJ != -1)
+			swap(i, bestJ, step);
+	}
+
+	/**
+	 * Returns a random student who is part of a violation, or any random
+	 * student if only the number of front groups is too high and no
+	 * student needing a front seat can be found.
+	 *
+	 * @return The student's index.
+	 */
+	private int pickStudent() {
+		int n = roster.size();
+		boolean frontExcess = frontGroups > roster.getMaximumFrontGroups();
+
+		for(int tries = 0; tries < 4 * n; tries++) {
+			int i = random.nextInt(n);
+			int g = groupOf[i];
+
+			if(ruleViolations[g] > 0 || (frontExcess && frontCounts[g] > 0))
+				return i;
+			for(int j: roster.incompatibles[i]) {
+				if(groupOf[j] == g)
+					return i;
+			}
+		}
+		return random.nextInt(n);
+	}
+
+	/**
+	 * Returns the change in violations if two students in different groups traded places.
+	 *
+	 * @param i The index of one student.
+	 * @param j The index of the other student.
+	 * @return The change in total violations.
+	 */
+	private int getDelta(int i, int j) {
+		int a = groupOf[i];
+		int b = groupOf[j];
+		int maskI = roster.attributes[i];
+		int maskJ = roster.attributes[j];
+		int delta = 0;
+
+		if(maskI != maskJ) {
+			addCounts(a, maskI, -1);
+			addCounts(a, maskJ, 1);
+			addCounts(b, maskJ, -1);
+			addCounts(b, maskI, 1);
+
+			delta += rules.getViolations(counts[a], sizes[a]) - ruleViolations[a];
+			delta += rules.getViolations(counts[b], sizes[b]) - ruleViolations[b];
+
+			addCounts(a, maskJ, -1);
+			addCounts(a, maskI, 1);
+			addCounts(b, maskI, -1);
+			addCounts(b, maskJ, 1);
+		}
+
+		for(int k: roster.incompatibles[i]) {
+			if(groupOf[k] == a)
+				delta--;
+			else if(groupOf[k] == b && k != j)
+				delta++;
+		}
+		for(int k: roster.incompatibles[j]) {
+			if(groupOf[k] == b)
+				delta--;
+			else if(groupOf[k] == a && k != i)
+				delta++;
+		}
+
+		int change = (roster.frontSeatNeeded[j] ? 1 : 0) - (roster.frontSeatNeeded[i] ? 1 : 0);
+		if(change != 0) {
+			int maximum = roster.getMaximumFrontGroups();
+			int after = frontGroups;
+			after += (frontCounts[a] + change > 0 ? 1 : 0) - (frontCounts[a] > 0 ? 1 : 0);
+			after += (frontCounts[b] - change > 0 ? 1 : 0) - (frontCounts[b] > 0 ? 1 : 0);
+			delta += Math.max(0, after - maximum) - Math.max(0, frontGroups - maximum);
+		}
+		return delta;
+	}
+
+	/**
+	 * Trades the places of two students in different groups.
+	 *
+	 * @param i The index of one student.
+	 * @param j The index of the other student.
+	 * @param step The number of the step.
+	 */
+	private void swap(int i, int j, int step) {
+		int a = groupOf[i];
+		int b = groupOf[j];
+
+		// Conflicts are counted from scratch around the two students
+		for(int k: roster.incompatibles[i]) {
+			if(groupOf[k] == a)
+				conflicts--;
+			else if(groupOf[k] == b && k != j)
+				conflicts++;
+		}
+		for(int k: roster.incompatibles[j]) {
+			if(groupOf[k] == b)
+				conflicts--;
+			else if(groupOf[k] == a && k != i)
+				conflicts++;
+		}
+
+		addCounts(a, roster.attributes[i], -1);
+		addCounts(a, roster.attributes[j], 1);
+		addCounts(b, roster.attributes[j], -1);
+		addCounts(b, roster.attributes[i], 1);
+
+		totalRuleViolations -= ruleViolations[a] + ruleViolations[b];
+		ruleViolations[a] = rules.getViolations(counts[a], sizes[a]);
+		ruleViolations[b] = rules.getViolations(counts[b], sizes[b]);
+		totalRuleViolations += ruleViolations[a] + ruleViolations[b];
+
+		int change = (roster.frontSeatNeeded[j] ? 1 : 0) - (roster.frontSeatNeeded[i] ? 1 : 0);
+		if(change != 0) {
+			frontGroups -= (frontCounts[a] > 0 ? 1 : 0) + (frontCounts[b] > 0 ? 1 : 0);
+			frontCounts[a] += change;
+			frontCounts[b] -= change;
+			frontGroups += (frontCounts[a] > 0 ? 1 : 0) + (frontCounts[b] > 0 ? 1 : 0);
+		}
+
+		int slotI = slotOf[i];
+		int slotJ = slotOf[j];
+		members[a][slotI] = j;
+		members[b][slotJ] = i;
+		groupOf[i] = b;
+		groupOf[j] = a;
+		slotOf[i] = slotJ;
+		slotOf[j] = slotI;
+
+		tabuUntil[i] = step + TABU_TENURE;
+		tabuUntil[j] = step + TABU_TENURE;
+	}
+
+	/**
+	 * Adds a student's attributes to a group's counts, or removes them.
+	 *
+	 * @param g The group.
+	 * @param mask The student's attribute mask.
+	 * @param amount One to add, minus one to remove.
+	 */
+	private void addCounts(int g, int mask, int amount) {
+		for(int a = 0; a < GroupingRules.ATTRIBUTE_COUNT; a++) {
+			if((mask & (1 << a)) != 0)
+				counts[g][a] += amount;
+		}
+	}
+
+	/**
+	 * Returns a copy of the members of each group.
+	 *
+	 * @return The member indexes of each group.
+	 */
+	private int[][] getGroups() {
+		int[][] groups = new int[members.length][];
+		for(int g = 0; g < members.length; g++)
+			groups[g] = Arrays.copyOf(members[g], members[g].length);
+		return groups;
+	}
+}
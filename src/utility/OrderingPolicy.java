@@ -0,0 +1,39 @@
+package utility;
+
+/**
+ * The OrderingPolicy enum decides the order in which GroupCreator offers
+ * waiting students to each group during an attempt.
+ * 
+ * @author Joseph Stewart
+ */
+public enum OrderingPolicy {
+	
+	/** The whole roster is shuffled at once. */
+	SHUFFLED,
+	
+	/** 
+	 * Students are shuffled within strata of the same ability level and
+	 * gender, and the strata are interleaved at random offsets so each one
+	 * is spread evenly over the order. High, low, or female students can no
+	 * longer bunch up at the end of an attempt, where the rules reject them.
+	 */
+	STRATIFIED;
+	
+	/**
+	 * A String representation of the policy.
+	 * 
+	 * @return The String representation.
+	 */
+	@Override
+	public String toString() {
+		String policy = null;
+		
+		switch(this) {
+		case SHUFFLED: policy = "Shuffled";
+			break;
+		case STRATIFIED: policy = "Stratified";
+			break;
+		}
+		return policy;
+	}
+}
@@ -0,0 +1,43 @@
+package utility;
+
+/**
+ * The RemainderPolicy enum decides what happens to the students left over
+ * when a roster does not divide evenly into groups of the target size.
+ * 
+ * @author Joseph Stewart
+ */
+public enum RemainderPolicy {
+	
+	/** Leftover students join existing groups, making some groups one larger. */
+	LARGER_GROUPS,
+	
+	/** Some groups are made one smaller so that the leftovers form a group. */
+	SMALLER_GROUPS,
+	
+	/** 
+	 * Larger groups when at most half a group is left over, otherwise smaller
+	 * groups. For groups of four this is the school's usual arrangement: one
+	 * or two groups of five, or one group of three.
+	 */
+	BALANCED;
+	
+	/**
+	 * A String representation of the policy.
+	 * 
+	 * @return The String representation.
+	 */
+	@Override
+	public String toString() {
+		String policy = null;
+		
+		switch(this) {
+		case LARGER_GROUPS: policy = "Larger Groups";
+			break;
+		case SMALLER_GROUPS: policy = "Smaller Groups";
+			break;
+		case BALANCED: policy = "Balanced";
+			break;
+		}
+		return policy;
+	}
+}
@@ -0,0 +1,161 @@
+package utility;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The Roster class is an indexed view of a classroom used while searching
+ * for groups. Students are numbered from zero in id order, and everything
+ * a search checks repeatedly is kept in arrays by that index: each
+ * student's attribute mask, accommodations, and the indexes of the
+ * students they are incompatible with.
+ *
+ * Incompatibility is treated as symmetric and only pairs of students who
+ * are both on the roster are kept.
+ *
+ * @author Joseph Stewart
+ */
+public class Roster {
+
+	/** The students, in id order. */
+	private final Student[] students;
+
+	/** The attribute mask of each student. */
+	final int[] attributes;
+
+	/** The indexes of the students each student is incompatible with. */
+	final int[][] incompatibles;
+
+	/** Whether or not each student needs a front seat. */
+	final boolean[] frontSeatNeeded;
+
+	/** The maximum number of groups at the front of the classroom. */
+	private final int maximumFrontGroups;
+
+	/**
+	 * Constructor which indexes a classroom's students.
+	 *
+	 * @param classroom The classroom.
+	 */
+	public Roster(Classroom classroom) {
+		this(classroom.getStudents(), classroom.getMaximumFrontGroups());
+	}
+
+	/**
+	 * Constructor which indexes a collection of students.
+	 *
+	 * @param roster The students.
+	 * @param maximumFrontGroups The maximum number of front groups.
+	 */
+	public Roster(Collection<Student> roster, int maximumFrontGroups) {
+		this.maximumFrontGroups = maximumFrontGroups;
+
+		students = roster.toArray(new Student[roster.size()]);
+		Arrays.sort(students, (s1, s2) -> Integer.compare(s1.getId(), s2.getId()));
+
+		int n = students.length;
+		attributes = new int[n];
+		frontSeatNeeded = new boolean[n];
+
+		// Student.equals does not match a student with itself, so look up by identity
+		Map<Student, Integer> indexes = new IdentityHashMap<>();
+		for(int i = 0; i < n; i++) {
+			indexes.put(students[i], i);
+			attributes[i] = GroupingRules.getAttributes(students[i]);
+			frontSeatNeeded[i] = students[i].getFrontSeatNeeded();
+		}
+
+		List<List<Integer>> neighbors = new ArrayList<>(n);
+		for(int i = 0; i < n; i++)
+			neighbors.add(new ArrayList<Integer>());
+
+		for(int i = 0; i < n; i++) {
+			for(Student other: students[i].getStudents()) {
+				Integer j = indexes.get(other);
+				if(j != null && j != i) {
+					neighbors.get(i).add(j);
+					neighbors.get(j).add(i);
+				}
+			}
+		}
+
+		incompatibles = new int[n][];
+		for(int i = 0; i < n; i++) {
+			// Each pair may have been listed from both sides
+			SortedSet<Integer> unique = new TreeSet<>(neighbors.get(i));
+			incompatibles[i] = new int[unique.size()];
+
+			int k = 0;
+			for(int j: unique)
+				incompatibles[i][k++] = j;
+		}
+	}
+
+	/**
+	 * Returns the number of students.
+	 *
+	 * @return The roster size.
+	 */
+	public int size() {
+		return students.length;
+	}
+
+	/**
+	 * Returns the student at an index.
+	 *
+	 * @param index The student's index.
+	 * @return The student.
+	 */
+	public Student getStudent(int index) {
+		return students[index];
+	}
+
+	/**
+	 * Returns the maximum number of groups at the front of the classroom.
+	 *
+	 * @return The maximum number of front groups.
+	 */
+	public int getMaximumFrontGroups() {
+		return maximumFrontGroups;
+	}
+
+	/**
+	 * Returns whether or not two students are incompatible.
+	 *
+	 * @param i The index of one student.
+	 * @param j The index of the other student.
+	 * @return True if the students may not share a group.
+	 */
+	public boolean isIncompatible(int i, int j) {
+		return Arrays.binarySearch(incompatibles[i], j) >= 0;
+	}
+
+	/**
+	 * Creates groups from the indexes of their members. Groups are numbered
+	 * from one in the given order and marked as front groups if any member
+	 * needs a front seat.
+	 *
+	 * @param members The member indexes of each group.
+	 * @return The groups.
+	 */
+	public List<Group> toGroups(int[][] members) {
+		List<Group> groups = new ArrayList<>(members.length);
+
+		for(int g = 0; g < members.length; g++) {
+			List<Student> group = new ArrayList<>(members[g].length);
+			boolean isFront = false;
+
+			for(int i: members[g]) {
+				group.add(students[i]);
+				isFront |= frontSeatNeeded[i];
+			}
+
+			Group newGroup = new Group(group);
+			newGroup.setGroupNumber(g + 1);
+			newGroup.setIsFrontGroup(isFront);
+			groups.add(newGroup);
+		}
+		return groups;
+	}
+}
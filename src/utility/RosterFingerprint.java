@@ -0,0 +1,101 @@
+package utility;
+
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.util.*;
+
+import model.*;
+
+/**
+ * The RosterFingerprint class computes a stable fingerprint of everything
+ * that decides the outcome of a grouping: the student ids and attributes,
+ * the incompatible pairs, the classroom's maximum front groups, the rule
+ * settings, and the random seed. Two requests with the same fingerprint
+ * produce the same groups, so the fingerprint can key cached results.
+ *
+ * The fingerprint does not depend on the order of the roster.
+ *
+ * @author Joseph Stewart
+ */
+public final class RosterFingerprint {
+
+	/** Prevents instantiation. */
+	private RosterFingerprint() { }
+
+	/**
+	 * Computes the fingerprint of a classroom's roster, leaving out the seed.
+	 *
+	 * @param classroom The classroom.
+	 * @param rules A stable description of the rule settings.
+	 * @return The fingerprint as a hexadecimal string.
+	 */
+	public static String compute(Classroom classroom, String rules) {
+		return digest(describe(classroom, rules));
+	}
+
+	/**
+	 * Computes the fingerprint of a seeded grouping request.
+	 *
+	 * @param classroom The classroom.
+	 * @param rules A stable description of the rule settings.
+	 * @param seed The random seed.
+	 * @return The fingerprint as a hexadecimal string.
+	 */
+	public static String compute(Classroom classroom, String rules, long seed) {
+		return digest(describe(classroom, rules).append("|seed=").append(seed));
+	}
+
+	/**
+	 * Builds the canonical description the fingerprint is computed from.
+	 *
+	 * @param classroom The classroom.
+	 * @param rules A stable description of the rule settings.
+	 * @return The canonical description.
+	 */
+	private static StringBuilder describe(Classroom classroom, String rules) {
+		List<Student> students = new ArrayList<>(classroom.getStudents());
+		Collections.sort(students, (s1, s2) -> Integer.compare(s1.getId(), s2.getId()));
+
+		StringBuilder description = new StringBuilder("front=").append(classroom.getMaximumFrontGroups())
+				.append("|rules=").append(rules);
+
+		for(Student s: students) {
+			description.append("|s").append(s.getId())
+				.append(',').append(s.getGender() == null ? "-" : s.getGender().name())
+				.append(',').append(s.getAbilityLevel() == null ? "-" : s.getAbilityLevel().name())
+				.append(',').append(s.getFrontSeatNeeded() ? 1 : 0)
+				.append(',').append(s.getPreferredGroupOfFive() ? 1 : 0);
+
+			int[] incompatibles = new int[s.getStudents().size()];
+			int i = 0;
+			for(Student other: s.getStudents())
+				incompatibles[i++] = other.getId();
+			Arrays.sort(incompatibles);
+
+			for(int id: incompatibles)
+				description.append(",x").append(id);
+		}
+		return description;
+	}
+
+	/**
+	 * Returns the SHA-256 digest of the description as hexadecimal.
+	 *
+	 * @param description The canonical description.
+	 * @return The hexadecimal digest.
+	 */
+	private static String digest(CharSequence description) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256")
+					.digest(description.toString().getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for(byte b: hash)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
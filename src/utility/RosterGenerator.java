@@ -0,0 +1,300 @@
+package utility;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The RosterGenerator class creates synthetic classrooms for benchmarks,
+ * soak tests, and capacity planning. The mix of ability levels, genders,
+ * and accommodations, the class sizes, and the number and shape of the
+ * incompatibilities are all configurable, and a generator started with the
+ * same seed and settings always creates the same classrooms.
+ *
+ * Incompatibilities can be spread at random, concentrated inside small
+ * cliques of students, or centered on a few students who clash with many
+ * others. Classrooms can be created one at a time or streamed, for example
+ * into ClassroomStore.saveClassrooms, without holding them all in memory.
+ *
+ * @author Joseph Stewart
+ */
+public class RosterGenerator {
+
+	/** The shapes the incompatibilities of a classroom can take. */
+	public enum GraphStructure {
+		/** Any two students are equally likely to be incompatible. */
+		RANDOM,
+		/** Most incompatibilities are inside small cliques of students. */
+		CLUSTERED,
+		/** Every incompatibility involves one of a few students. */
+		STAR;
+
+		/**
+		 * A String representation of the structure.
+		 *
+		 * @return The String representation.
+		 */
+		@Override
+		public String toString() {
+			String structure = null;
+
+			switch(this) {
+			case RANDOM: structure = "Random";
+				break;
+			case CLUSTERED: structure = "Clustered";
+				break;
+			case STAR: structure = "Star";
+				break;
+			}
+			return structure;
+		}
+	}
+
+	/** The number of students in each clique of a clustered classroom. */
+	private final static int CLUSTER_SIZE = 5;
+
+	/** The share of the incompatibilities inside cliques in a clustered classroom. */
+	private final static double IN_CLUSTER_SHARE = 0.8;
+
+	/** The source of randomness. */
+	private final Random random;
+
+	/** The smallest number of students in a classroom. */
+	private int minimumSize = 20;
+
+	/** The largest number of students in a classroom. */
+	private int maximumSize = 30;
+
+	/** The relative weights of low, average, and high ability levels. */
+	private double[] abilityWeights = { 1, 1, 1 };
+
+	/** The share of female students. */
+	private double femaleShare = 0.5;
+
+	/** The share of students needing a front seat. */
+	private double frontSeatShare = 0.1;
+
+	/** The share of students preferring a group of five. */
+	private double groupOfFiveShare = 0.1;
+
+	/** The average number of incompatible students per student. */
+	private double incompatibilityDegree = 1;
+
+	/** The shape of the incompatibilities. */
+	private GraphStructure graphStructure = GraphStructure.RANDOM;
+
+	/** The maximum number of front groups of each classroom, or zero for one per eight students. */
+	private int maximumFrontGroups;
+
+	/** The id of the next classroom. */
+	private int nextClassroomId = 1;
+
+	/** The id of the next student. */
+	private int nextStudentId = 1;
+
+	/**
+	 * Constructor which sets the seed.
+	 *
+	 * @param seed The random seed.
+	 */
+	public RosterGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Creates the next classroom. Classroom and student ids are numbered
+	 * from one across everything this generator creates.
+	 *
+	 * @return The classroom with its students and incompatibilities.
+	 */
+	public Classroom createClassroom() {
+		int n = minimumSize + random.nextInt(maximumSize - minimumSize + 1);
+		int id = nextClassroomId++;
+
+		Classroom classroom = new Classroom("Classroom " + id,
+				maximumFrontGroups > 0 ? maximumFrontGroups : Math.max(1, (n + 7) / 8));
+		classroom.setId(id);
+
+		List<Student> students = new ArrayList<>(n);
+		for(int i = 0; i < n; i++)
+			students.add(createStudent());
+
+		addIncompatibilities(students);
+		classroom.setStudents(students);
+		return classroom;
+	}
+
+	/**
+	 * Returns a stream of classrooms created one at a time as they are iterated.
+	 *
+	 * @param count The number of classrooms.
+	 * @return The classrooms.
+	 */
+	public Iterable<Classroom> classrooms(final int count) {
+		return () -> new Iterator<Classroom>() {
+			private int created;
+
+			@Override
+			public boolean hasNext() {
+				return created < count;
+			}
+
+			@Override
+			public Classroom next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				created++;
+				return createClassroom();
+			}
+		};
+	}
+
+	/**
+	 * Creates a student with random attributes.
+	 *
+	 * @return The student.
+	 */
+	private Student createStudent() {
+		int id = nextStudentId++;
+
+		double total = abilityWeights[0] + abilityWeights[1] + abilityWeights[2];
+		double pick = random.nextDouble() * total;
+		AbilityLevel abilityLevel = pick < abilityWeights[0] ? AbilityLevel.LOW :
+				pick < abilityWeights[0] + abilityWeights[1] ? AbilityLevel.AVERAGE : AbilityLevel.HIGH;
+
+		Gender gender = random.nextDouble() < femaleShare ? Gender.FEMALE : Gender.MALE;
+
+		Student s = new Student("Student " + id, gender, abilityLevel);
+		s.setId(id);
+		s.setFrontSeatNeeded(random.nextDouble() < frontSeatShare);
+		s.setPreferredGroupOfFive(random.nextDouble() < groupOfFiveShare);
+		return s;
+	}
+
+	/**
+	 * Adds incompatibilities of the configured shape and number, linking
+	 * each pair both ways.
+	 *
+	 * @param students The students of the classroom.
+	 */
+	private void addIncompatibilities(List<Student> students) {
+		int n = students.size();
+		long possible = (long) n * (n - 1) / 2;
+		long edges = Math.min(possible, Math.round(incompatibilityDegree * n / 2));
+
+		int hubs = Math.max(1, n / 10);
+		if(graphStructure == GraphStructure.STAR)
+			edges = Math.min(edges, (long) hubs * (n - hubs) + (long) hubs * (hubs - 1) / 2);
+
+		Set<Long> pairs = new HashSet<>();
+		while(pairs.size() < edges) {
+			int i;
+			int j;
+
+			switch(graphStructure) {
+			case CLUSTERED:
+				i = random.nextInt(n);
+				if(random.nextDouble() < IN_CLUSTER_SHARE) {
+					int start = i / CLUSTER_SIZE * CLUSTER_SIZE;
+					j = start + random.nextInt(Math.min(CLUSTER_SIZE, n - start));
+				} else {
+					j = random.nextInt(n);
+				}
+				break;
+			case STAR:
+				i = random.nextInt(hubs);
+				j = random.nextInt(n);
+				break;
+			default:
+				i = random.nextInt(n);
+				j = random.nextInt(n);
+				break;
+			}
+
+			if(i != j && pairs.add(((long) Math.min(i, j) << 32) | Math.max(i, j))) {
+				students.get(i).getStudents().add(students.get(j));
+				students.get(j).getStudents().add(students.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Sets the range of class sizes.
+	 *
+	 * @param minimumSize The smallest number of students.
+	 * @param maximumSize The largest number of students.
+	 */
+	public void setSizes(int minimumSize, int maximumSize) {
+		if(minimumSize < 0 || maximumSize < minimumSize)
+			throw new IllegalArgumentException("Invalid sizes " + minimumSize + " to " + maximumSize + ".");
+		this.minimumSize = minimumSize;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Sets the relative weights of the ability levels.
+	 *
+	 * @param low The weight of low ability.
+	 * @param average The weight of average ability.
+	 * @param high The weight of high ability.
+	 */
+	public void setAbilityWeights(double low, double average, double high) {
+		if(low < 0 || average < 0 || high < 0 || low + average + high <= 0)
+			throw new IllegalArgumentException("Invalid ability weights.");
+		abilityWeights = new double[] { low, average, high };
+	}
+
+	/**
+	 * Sets the share of female students.
+	 *
+	 * @param femaleShare The share, from 0 to 1.
+	 */
+	public void setFemaleShare(double femaleShare) {
+		this.femaleShare = femaleShare;
+	}
+
+	/**
+	 * Sets the share of students needing a front seat.
+	 *
+	 * @param frontSeatShare The share, from 0 to 1.
+	 */
+	public void setFrontSeatShare(double frontSeatShare) {
+		this.frontSeatShare = frontSeatShare;
+	}
+
+	/**
+	 * Sets the share of students preferring a group of five.
+	 *
+	 * @param groupOfFiveShare The share, from 0 to 1.
+	 */
+	public void setGroupOfFiveShare(double groupOfFiveShare) {
+		this.groupOfFiveShare = groupOfFiveShare;
+	}
+
+	/**
+	 * Sets the average number of incompatible students per student.
+	 *
+	 * @param incompatibilityDegree The average degree.
+	 */
+	public void setIncompatibilityDegree(double incompatibilityDegree) {
+		this.incompatibilityDegree = incompatibilityDegree;
+	}
+
+	/**
+	 * Sets the shape of the incompatibilities.
+	 *
+	 * @param graphStructure The structure.
+	 */
+	public void setGraphStructure(GraphStructure graphStructure) {
+		this.graphStructure = graphStructure;
+	}
+
+	/**
+	 * Sets the maximum number of front groups of every classroom.
+	 *
+	 * @param maximumFrontGroups The maximum, or zero for one per eight students.
+	 */
+	public void setMaximumFrontGroups(int maximumFrontGroups) {
+		this.maximumFrontGroups = maximumFrontGroups;
+	}
+}
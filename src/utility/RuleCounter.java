@@ -0,0 +1,168 @@
+package utility;
+
+/**
+ * The RuleCounter class tracks one group as it is filled. It keeps a count
+ * of the students with each attribute and checks CompiledRules against
+ * those counts, so adding, removing, and checking a student each take
+ * constant time no matter which rules are configured.
+ *
+ * Students are passed as attribute masks from GroupingRules.getAttributes.
+ *
+ * @author Joseph Stewart
+ */
+public class RuleCounter {
+
+	/** The rules being enforced. */
+	private final CompiledRules rules;
+
+	/** The number of students with each attribute. */
+	private final int[] counts = new int[GroupingRules.ATTRIBUTE_COUNT];
+
+	/** The bits of every attribute present in the group. */
+	private int present;
+
+	/** The number of students in the group. */
+	private int size;
+
+	/** The size the group is being filled to. */
+	private int groupSize;
+
+	/** The index of the group size in the rule arrays. */
+	private int index;
+
+	/**
+	 * Constructor which sets the rules to enforce.
+	 *
+	 * @param rules The compiled rules.
+	 */
+	public RuleCounter(CompiledRules rules) {
+		this.rules = rules;
+	}
+
+	/**
+	 * Empties the counter to start filling a group of the given size.
+	 *
+	 * @param groupSize The size of the group.
+	 */
+	public void reset(int groupSize) {
+		for(int a = 0; a < counts.length; a++)
+			counts[a] = 0;
+		present = 0;
+		size = 0;
+		this.groupSize = groupSize;
+		index = rules.index(groupSize);
+	}
+
+	/**
+	 * Returns whether or not a student can be added without breaking a
+	 * maximum or forbidden combination, and without leaving too few seats
+	 * to reach the minimums.
+	 *
+	 * @param mask The student's attribute mask.
+	 * @return True if the student can be added.
+	 */
+	public boolean canAdd(int mask) {
+		if(size >= groupSize)
+			return false;
+
+		int[] maximums = rules.maximums[index];
+		for(int a = 0; a < counts.length; a++) {
+			if((mask & (1 << a)) != 0 && counts[a] + 1 > maximums[a])
+				return false;
+		}
+
+		int newPresent = present | mask;
+		for(int f: rules.forbidden[index]) {
+			if((newPresent & f) == f)
+				return false;
+		}
+
+		int[] minimums = rules.minimums[index];
+		int remainingSeats = groupSize - size - 1;
+		for(int partition: CompiledRules.PARTITIONS) {
+			int deficit = 0;
+			for(int a = 0; a < counts.length; a++) {
+				if((partition & (1 << a)) != 0) {
+					int count = counts[a] + ((mask & (1 << a)) != 0 ? 1 : 0);
+					if(count < minimums[a])
+						deficit += minimums[a] - count;
+				}
+			}
+			if(deficit > remainingSeats)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a student to the counts.
+	 *
+	 * @param mask The student's attribute mask.
+	 */
+	public void add(int mask) {
+		for(int a = 0; a < counts.length; a++) {
+			if((mask & (1 << a)) != 0)
+				counts[a]++;
+		}
+		present |= mask;
+		size++;
+	}
+
+	/**
+	 * Removes a student from the counts.
+	 *
+	 * @param mask The student's attribute mask.
+	 */
+	public void remove(int mask) {
+		for(int a = 0; a < counts.length; a++) {
+			if((mask & (1 << a)) != 0 && --counts[a] == 0)
+				present &= ~(1 << a);
+		}
+		size--;
+	}
+
+	/**
+	 * Returns whether or not the group is full and meets every minimum.
+	 *
+	 * @return True if the group satisfies the rules.
+	 */
+	public boolean isSatisfied() {
+		if(size != groupSize)
+			return false;
+
+		int[] minimums = rules.minimums[index];
+		for(int a = 0; a < counts.length; a++) {
+			if(counts[a] < minimums[a])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of students in the group.
+	 *
+	 * @return The group's current size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the size the group is being filled to.
+	 *
+	 * @return The target group size.
+	 */
+	public int getGroupSize() {
+		return groupSize;
+	}
+
+	/**
+	 * Returns the number of students in the group with an attribute.
+	 *
+	 * @param attribute The attribute.
+	 * @return The count for the attribute.
+	 */
+	public int getCount(GroupingRules.Attribute attribute) {
+		return counts[attribute.ordinal()];
+	}
+}
@@ -0,0 +1,485 @@
+package utility;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import model.*;
+
+/**
+ * The SectionScheduler class splits a grade into class sections and then
+ * groups every section. Students are placed into sections so that
+ * incompatible students are apart where possible, every section has close
+ * to the grade's mix of ability levels and genders, and no section has
+ * more students needing a front seat than its front groups can seat.
+ *
+ * The sections are then grouped at the same time through a
+ * GroupingPortfolio. A section that cannot be grouped is fed back into the
+ * split: its students needing a front seat or with incompatibilities count
+ * for more when placed there, the grade is split again, and only the
+ * sections whose students changed are grouped again.
+ *
+ * @author Joseph Stewart
+ */
+public class SectionScheduler {
+
+	/** The cost of two incompatible students sharing a section. */
+	private final static int CONFLICT_COST = 100;
+
+	/** The cost of each student needing a front seat beyond a section's front seats. */
+	private final static int FRONT_COST = 1000;
+
+	/** The cost of placing a hard to place student into a section that could not be grouped, per failure. */
+	private final static int PRESSURE_COST = 10;
+
+	/** The number of swaps tried while improving a split, per student. */
+	private final static int SWAPS_PER_STUDENT = 50;
+
+	/** The maximum number of times the grade is split. */
+	private final static int MAXIMUM_ROUNDS = 5;
+
+	/** The portfolio grouping each section. */
+	private final GroupingPortfolio portfolio;
+
+	/** The options the sections are grouped with. */
+	private final GroupingOptions options;
+
+	/** The source of randomness for splitting. */
+	private final Random random;
+
+	/** The outcome of scheduling a grade. */
+	public static class Result {
+		private final List<Classroom> infeasibleSections;
+		private final int rounds;
+
+		Result(List<Classroom> infeasibleSections, int rounds) {
+			this.infeasibleSections = infeasibleSections;
+			this.rounds = rounds;
+		}
+
+		/**
+		 * Returns the sections that could not be grouped, which is empty
+		 * when every section has new groups.
+		 *
+		 * @return The sections without new groups.
+		 */
+		public List<Classroom> getInfeasibleSections() {
+			return infeasibleSections;
+		}
+
+		/**
+		 * Returns the number of times the grade was split.
+		 *
+		 * @return The number of rounds.
+		 */
+		public int getRounds() {
+			return rounds;
+		}
+	}
+
+	/**
+	 * Constructor which sets how sections are grouped.
+	 *
+	 * @param options The grouping options.
+	 * @param timeBudgetMillis The time the grouping of each section may take, in milliseconds.
+	 */
+	public SectionScheduler(GroupingOptions options, long timeBudgetMillis) {
+		this(new GroupingPortfolio(options, timeBudgetMillis), options, new Random());
+	}
+
+	/**
+	 * Constructor which groups sections with an existing portfolio.
+	 *
+	 * @param portfolio The portfolio grouping each section.
+	 * @param options The options the portfolio groups with.
+	 * @param random The source of randomness for splitting.
+	 */
+	public SectionScheduler(GroupingPortfolio portfolio, GroupingOptions options, Random random) {
+		this.portfolio = portfolio;
+		this.options = options;
+		this.random = random;
+	}
+
+	/**
+	 * Splits a grade into the given sections and groups each of them. The
+	 * students and groups of every section are set; a section that could
+	 * not be grouped gets its students but its groups are left untouched,
+	 * and it is listed in the result.
+	 *
+	 * @param grade The students of the grade.
+	 * @param sections The sections, each with its title and maximum front groups.
+	 * @return The outcome.
+	 */
+	public Result schedule(Collection<Student> grade, List<Classroom> sections) {
+		Roster roster = new Roster(grade, 0);
+		int n = roster.size();
+		int k = sections.size();
+		if(k == 0)
+			throw new IllegalArgumentException("A grade needs at least one section.");
+
+		int[] capacities = new int[k];
+		int[] frontSeats = new int[k];
+		for(int s = 0; s < k; s++) {
+			capacities[s] = n / k + (s < n % k ? 1 : 0);
+			frontSeats[s] = sections.get(s).getMaximumFrontGroups() * options.getGroupSize();
+		}
+
+		double[] pressure = new double[k];
+		int[][] grouped = new int[k][];
+		List<Classroom> infeasible = new ArrayList<>();
+		int rounds = 0;
+
+		while(rounds < MAXIMUM_ROUNDS) {
+			rounds++;
+			int[] sectionOf = new Split(roster, capacities, frontSeats, pressure).run();
+
+			// Only sections whose students changed are grouped again
+			List<Integer> changed = new ArrayList<>();
+			for(int s = 0; s < k; s++) {
+				int[] members = getMembers(sectionOf, s);
+				if(grouped[s] == null || !Arrays.equals(grouped[s], members)) {
+					List<Student> students = new ArrayList<>(members.length);
+					for(int i: members)
+						students.add(roster.getStudent(i));
+					sections.get(s).setStudents(students);
+					grouped[s] = members;
+					changed.add(s);
+				}
+			}
+
+			for(int s: groupSections(sections, changed)) {
+				pressure[s] += 1;
+				grouped[s] = null;
+			}
+
+			infeasible.clear();
+			for(int s = 0; s < k; s++) {
+				if(grouped[s] == null)
+					infeasible.add(sections.get(s));
+			}
+			if(infeasible.isEmpty())
+				break;
+		}
+		return new Result(infeasible, rounds);
+	}
+
+	/**
+	 * Groups sections at the same time.
+	 *
+	 * @param sections All sections.
+	 * @param indexes The indexes of the sections to group.
+	 * @return The indexes of the sections that could not be grouped.
+	 */
+	private List<Integer> groupSections(final List<Classroom> sections, List<Integer> indexes) {
+		List<Integer> failed = new ArrayList<>();
+		if(indexes.isEmpty())
+			return failed;
+
+		ExecutorService executor = Executors.newFixedThreadPool(indexes.size());
+		try {
+			Map<Integer, CompletableFuture<List<Group>>> futures = new LinkedHashMap<>();
+			for(final int s: indexes)
+				futures.put(s, CompletableFuture.supplyAsync(() -> portfolio.createGroups(sections.get(s)), executor));
+
+			for(Map.Entry<Integer, CompletableFuture<List<Group>>> e: futures.entrySet()) {
+				Classroom section = sections.get(e.getKey());
+				try {
+					section.setGroups(e.getValue().join());
+				} catch (CompletionException ex) {
+					// Setting no groups would record them in the section's history
+					failed.add(e.getKey());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return failed;
+	}
+
+	/**
+	 * Returns the students placed in a section, in index order.
+	 *
+	 * @param sectionOf The section of each student.
+	 * @param s The section.
+	 * @return The students' indexes.
+	 */
+	private static int[] getMembers(int[] sectionOf, int s) {
+		int count = 0;
+		for(int section: sectionOf) {
+			if(section == s)
+				count++;
+		}
+
+		int[] members = new int[count];
+		count = 0;
+		for(int i = 0; i < sectionOf.length; i++) {
+			if(sectionOf[i] == s)
+				members[count++] = i;
+		}
+		return members;
+	}
+
+	/** One split of the grade into sections. */
+	private class Split {
+		final Roster roster;
+		final int[] capacities;
+		final int[] frontSeats;
+		final double[] pressure;
+		final int[] sectionOf;
+		final int[] sizes;
+		final int[] frontCounts;
+		final int[][] abilityCounts;
+		final int[][] genderCounts;
+		final double[][] abilityTargets;
+		final double[][] genderTargets;
+		final double[] frontTargets;
+
+		Split(Roster roster, int[] capacities, int[] frontSeats, double[] pressure) {
+			this.roster = roster;
+			this.capacities = capacities;
+			this.frontSeats = frontSeats;
+			this.pressure = pressure;
+
+			int n = roster.size();
+			int k = capacities.length;
+			sectionOf = new int[n];
+			sizes = new int[k];
+			frontCounts = new int[k];
+			abilityCounts = new int[k][3];
+			genderCounts = new int[k][2];
+			abilityTargets = new double[k][3];
+			genderTargets = new double[k][2];
+			frontTargets = new double[k];
+
+			int[] abilities = new int[3];
+			int[] genders = new int[2];
+			int front = 0;
+			for(int i = 0; i < n; i++) {
+				if(roster.frontSeatNeeded[i])
+					front++;
+				if(getAbility(i) >= 0)
+					abilities[getAbility(i)]++;
+				if(getGender(i) >= 0)
+					genders[getGender(i)]++;
+			}
+
+			int totalFrontSeats = 0;
+			for(int seats: frontSeats)
+				totalFrontSeats += seats;
+
+			for(int s = 0; s < k; s++) {
+				frontTargets[s] = totalFrontSeats == 0 ? 0 : front * frontSeats[s] / (double) totalFrontSeats;
+				double share = n == 0 ? 0 : capacities[s] / (double) n;
+				for(int a = 0; a < 3; a++)
+					abilityTargets[s][a] = abilities[a] * share;
+				for(int g = 0; g < 2; g++)
+					genderTargets[s][g] = genders[g] * share;
+			}
+		}
+
+		/**
+		 * Places every student, hardest first, into the section where they
+		 * cost the least, and then swaps students between sections while
+		 * that lowers the cost.
+		 *
+		 * @return The section of each student.
+		 */
+		int[] run() {
+			int n = roster.size();
+			Arrays.fill(sectionOf, -1);
+
+			Integer[] order = new Integer[n];
+			final int[] tieBreak = new int[n];
+			for(int i = 0; i < n; i++) {
+				order[i] = i;
+				tieBreak[i] = random.nextInt();
+			}
+			Arrays.sort(order, (a, b) -> {
+				int difficulty = Integer.compare(getDifficulty(b), getDifficulty(a));
+				return difficulty != 0 ? difficulty : Integer.compare(tieBreak[a], tieBreak[b]);
+			});
+
+			for(int i: order) {
+				int best = -1;
+				double bestCost = Double.POSITIVE_INFINITY;
+				for(int s = 0; s < capacities.length; s++) {
+					if(sizes[s] >= capacities[s])
+						continue;
+					double cost = getPlacementCost(i, s);
+					if(cost < bestCost) {
+						best = s;
+						bestCost = cost;
+					}
+				}
+				move(i, best, 1);
+			}
+
+			for(int tries = SWAPS_PER_STUDENT * n; tries > 0 && capacities.length > 1; tries--) {
+				int i = random.nextInt(n);
+				int j = random.nextInt(n);
+				if(sectionOf[i] != sectionOf[j] && getSwapDelta(i, j) < 0) {
+					int s = sectionOf[i];
+					int t = sectionOf[j];
+					move(i, s, -1);
+					move(j, t, -1);
+					move(i, t, 1);
+					move(j, s, 1);
+				}
+			}
+			return sectionOf;
+		}
+
+		/**
+		 * Returns how hard a student is to place: needing a front seat
+		 * first, then by number of incompatibilities.
+		 *
+		 * @param i The student's index.
+		 * @return The difficulty.
+		 */
+		int getDifficulty(int i) {
+			return (roster.frontSeatNeeded[i] ? 1 << 20 : 0) + roster.incompatibles[i].length;
+		}
+
+		/**
+		 * Returns the added cost of placing a student into a section.
+		 *
+		 * @param i The student's index.
+		 * @param s The section.
+		 * @return The added cost.
+		 */
+		double getPlacementCost(int i, int s) {
+			double before = getSectionCost(s);
+			move(i, s, 1);
+			double cost = getSectionCost(s) - before + getStudentCost(i, s, -1);
+			move(i, s, -1);
+			return cost;
+		}
+
+		/**
+		 * Returns the change in cost if two students in different sections traded places.
+		 *
+		 * @param i The index of one student.
+		 * @param j The index of the other student.
+		 * @return The change in cost.
+		 */
+		double getSwapDelta(int i, int j) {
+			int s = sectionOf[i];
+			int t = sectionOf[j];
+			double before = getSectionCost(s) + getSectionCost(t) + getStudentCost(i, s, j) + getStudentCost(j, t, i);
+
+			move(i, s, -1);
+			move(j, t, -1);
+			move(i, t, 1);
+			move(j, s, 1);
+
+			double after = getSectionCost(s) + getSectionCost(t) + getStudentCost(i, t, j) + getStudentCost(j, s, i);
+
+			move(i, t, -1);
+			move(j, s, -1);
+			move(i, s, 1);
+			move(j, t, 1);
+			return after - before;
+		}
+
+		/**
+		 * Returns the cost of a section's mix: the squared distance of its
+		 * ability, gender, and front seat counts from their targets, plus
+		 * its students needing a front seat beyond its front seats.
+		 *
+		 * @param s The section.
+		 * @return The cost.
+		 */
+		double getSectionCost(int s) {
+			double cost = 0;
+			for(int a = 0; a < 3; a++)
+				cost += square(abilityCounts[s][a] - abilityTargets[s][a]);
+			for(int g = 0; g < 2; g++)
+				cost += square(genderCounts[s][g] - genderTargets[s][g]);
+			cost += square(frontCounts[s] - frontTargets[s]);
+			cost += Math.max(0, frontCounts[s] - frontSeats[s]) * FRONT_COST * (1 + pressure[s]);
+			return cost;
+		}
+
+		/**
+		 * Returns the cost of a student being in a section: their
+		 * incompatible students there, and, for students who make grouping
+		 * harder, the number of times the section could not be grouped.
+		 *
+		 * @param i The student's index.
+		 * @param s The section.
+		 * @param ignored A student whose incompatibility is not counted, or -1.
+		 * @return The cost.
+		 */
+		double getStudentCost(int i, int s, int ignored) {
+			int conflicts = 0;
+			for(int j: roster.incompatibles[i]) {
+				if(sectionOf[j] == s && j != ignored)
+					conflicts++;
+			}
+
+			double cost = conflicts * CONFLICT_COST;
+			if(getDifficulty(i) > 0)
+				cost += pressure[s] * PRESSURE_COST;
+			return cost;
+		}
+
+		/**
+		 * Adds a student to a section, or removes them.
+		 *
+		 * @param i The student's index.
+		 * @param s The section.
+		 * @param amount One to add, minus one to remove.
+		 */
+		void move(int i, int s, int amount) {
+			sectionOf[i] = amount > 0 ? s : -1;
+			sizes[s] += amount;
+			if(roster.frontSeatNeeded[i])
+				frontCounts[s] += amount;
+			if(getAbility(i) >= 0)
+				abilityCounts[s][getAbility(i)] += amount;
+			if(getGender(i) >= 0)
+				genderCounts[s][getGender(i)] += amount;
+		}
+
+		/**
+		 * Returns a student's ability level as 0 for low, 1 for average, 2 for high.
+		 *
+		 * @param i The student's index.
+		 * @return The ability level, or -1 if not set.
+		 */
+		int getAbility(int i) {
+			int mask = roster.attributes[i];
+			if((mask & GroupingRules.Attribute.LOW.bit()) != 0)
+				return 0;
+			if((mask & GroupingRules.Attribute.AVERAGE.bit()) != 0)
+				return 1;
+			if((mask & GroupingRules.Attribute.HIGH.bit()) != 0)
+				return 2;
+			return -1;
+		}
+
+		/**
+		 * Returns a student's gender as 0 for male, 1 for female.
+		 *
+		 * @param i The student's index.
+		 * @return The gender, or -1 if not set.
+		 */
+		int getGender(int i) {
+			int mask = roster.attributes[i];
+			if((mask & GroupingRules.Attribute.MALE.bit()) != 0)
+				return 0;
+			if((mask & GroupingRules.Attribute.FEMALE.bit()) != 0)
+				return 1;
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the square of a number.
+	 *
+	 * @param x The number.
+	 * @return The square.
+	 */
+	private static double square(double x) {
+		return x * x;
+	}
+}